@@ -0,0 +1,158 @@
+package ma.recrutement.config;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Valeur pgvector échangée au format binaire du protocole PostgreSQL.
+ * Format de {@code vector_send}/{@code vector_recv} : dimension (int16), champ réservé (int16),
+ * puis chaque composante en float4 big-endian. L'encodage et le décodage travaillent directement
+ * sur le tableau primitif, sans flottants boxés ni chaîne intermédiaire ; la représentation texte
+ * n'est produite qu'en repli, lorsque le transfert binaire n'est pas activé sur la connexion.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public class BinaryVector extends PGobject implements PGBinaryObject {
+
+    private static final String TYPE = "vector";
+    private static final int HEADER_BYTES = 4;
+
+    private float[] vector;
+
+    /**
+     * Constructeur utilisé par le driver pour les valeurs reçues.
+     */
+    public BinaryVector() {
+        setType(TYPE);
+    }
+
+    public BinaryVector(float[] vector) {
+        this();
+        this.vector = vector;
+    }
+
+    /**
+     * Active, sur une connexion, l'envoi et la réception binaires du type {@code vector}.
+     * L'activation est propre à la connexion physique et peut être répétée sans effet.
+     *
+     * @param connection la connexion (éventuellement enveloppée par le pool)
+     * @throws SQLException si la connexion n'est pas une connexion PostgreSQL
+     */
+    public static void enableBinaryTransfer(Connection connection) throws SQLException {
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        int oid = pgConnection.getTypeInfo().getPGType(TYPE);
+        if (oid == Oid.UNSPECIFIED) {
+            // Extension not installed: the driver reports the unknown type on bind
+            return;
+        }
+        pgConnection.addDataType(TYPE, BinaryVector.class);
+        pgConnection.getQueryExecutor().addBinarySendOid(oid);
+        pgConnection.getQueryExecutor().addBinaryReceiveOid(oid);
+    }
+
+    /**
+     * Retourne les composantes du vecteur.
+     *
+     * @return le tableau (non copié), ou null pour un vecteur SQL NULL
+     */
+    public float[] toArray() {
+        return vector;
+    }
+
+    @Override
+    public int lengthInBytes() {
+        return vector == null ? 0 : HEADER_BYTES + Float.BYTES * vector.length;
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        writeShort(bytes, offset, vector.length);
+        writeShort(bytes, offset + 2, 0);
+        int position = offset + HEADER_BYTES;
+        for (float component : vector) {
+            int bits = Float.floatToRawIntBits(component);
+            bytes[position++] = (byte) (bits >>> 24);
+            bytes[position++] = (byte) (bits >>> 16);
+            bytes[position++] = (byte) (bits >>> 8);
+            bytes[position++] = (byte) bits;
+        }
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) throws SQLException {
+        int dimensions = ((value[offset] & 0xff) << 8) | (value[offset + 1] & 0xff);
+        float[] components = new float[dimensions];
+        int position = offset + HEADER_BYTES;
+        for (int i = 0; i < dimensions; i++) {
+            components[i] = Float.intBitsToFloat(((value[position] & 0xff) << 24)
+                | ((value[position + 1] & 0xff) << 16)
+                | ((value[position + 2] & 0xff) << 8)
+                | (value[position + 3] & 0xff));
+            position += Float.BYTES;
+        }
+        vector = components;
+    }
+
+    @Override
+    public String getValue() {
+        if (vector == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(vector[i]);
+        }
+        return text.append(']').toString();
+    }
+
+    @Override
+    public void setValue(String value) throws SQLException {
+        if (value == null) {
+            vector = null;
+            return;
+        }
+        String body = value.trim();
+        body = body.substring(1, body.length() - 1).trim();
+        if (body.isEmpty()) {
+            vector = new float[0];
+            return;
+        }
+        String[] components = body.split(",");
+        vector = new float[components.length];
+        for (int i = 0; i < components.length; i++) {
+            vector[i] = Float.parseFloat(components[i].trim());
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof BinaryVector that && Arrays.equals(vector, that.vector);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(vector);
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        BinaryVector copy = (BinaryVector) super.clone();
+        copy.vector = vector != null ? vector.clone() : null;
+        return copy;
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+    }
+}
@@ -0,0 +1,49 @@
+package ma.recrutement.config;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Découpage des documents à indexer en lots d'embedding, bornés en nombre de documents
+ * et en taille cumulée de texte (un appel au modèle par lot).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+final class EmbeddingBatches {
+
+    private EmbeddingBatches() {
+    }
+
+    /**
+     * Découpe les documents en lots, dans leur ordre d'origine.
+     *
+     * @param documents les documents à indexer
+     * @param maxSize le nombre maximal de documents par lot
+     * @param maxChars la taille de texte cumulée maximale par lot (un document plus long forme son propre lot)
+     * @return les lots
+     */
+    static List<List<Document>> plan(List<Document> documents, int maxSize, int maxChars) {
+        List<List<Document>> batches = new ArrayList<>();
+        List<Document> current = new ArrayList<>();
+        long chars = 0;
+        for (Document document : documents) {
+            int length = document.getContent().length();
+            boolean full = current.size() >= maxSize
+                || (!current.isEmpty() && chars + length > maxChars);
+            if (full) {
+                batches.add(current);
+                current = new ArrayList<>();
+                chars = 0;
+            }
+            current.add(document);
+            chars += length;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+}
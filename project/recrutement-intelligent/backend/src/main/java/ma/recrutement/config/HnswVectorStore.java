@@ -0,0 +1,1028 @@
+package ma.recrutement.config;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.service.ai.DocumentVectorStore;
+import ma.recrutement.service.ai.EmbeddingCacheService;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Vector store en mémoire (dans la JVM), alternative à {@link SpringAIConfig.TransactionalPgVectorStore}
+ * pour un matching à faible latence ou un environnement sans pgvector.
+ * Les vecteurs, normalisés (distance cosinus), sont stockés hors tas dans des segments de fichiers
+ * mappés en mémoire et parcourus par un graphe HNSW. Les ajouts et suppressions sont journalisés ;
+ * le graphe est sauvegardé périodiquement et à l'arrêt. Au démarrage, l'index est restauré et seuls
+ * les documents postérieurs à la dernière sauvegarde sont réinsérés dans le graphe.
+ * Un document supprimé ou remplacé (même ID) reste un nœud de navigation du graphe, marqué supprimé,
+ * jusqu'au compactage : dès que la part de nœuds supprimés dépasse le seuil configuré, les documents
+ * vivants sont réécrits (segments, journal, graphe) et les nœuds supprimés disparaissent.
+ * En mode quantifié, une copie int8 des vecteurs (4 fois plus compacte) sert au parcours du graphe ;
+ * les vecteurs en pleine précision ne sont relus que pour réordonner les meilleurs candidats.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+public class HnswVectorStore implements DocumentVectorStore, AutoCloseable {
+
+    private static final String JOURNAL_FILE = "documents.log";
+    private static final String GRAPH_FILE = "graph.bin";
+    private static final String COMPACTION_DIRECTORY = "compaction";
+    private static final String COMPACTION_MARKER = "COMPLETE";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.(vec|q8)");
+    private static final int GRAPH_MAGIC = 0x484E5357;
+    private static final int GRAPH_VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final float INT8_SCALE = 127f;
+    private static final ObjectMapper JOURNAL_MAPPER = new ObjectMapper();
+    private static final Comparator<Candidate> BY_DISTANCE = Comparator.comparingDouble(Candidate::distance);
+
+    /**
+     * Paramètres du store.
+     *
+     * @param directory le répertoire des segments, du journal et de la sauvegarde du graphe
+     * @param dimension la dimension des embeddings
+     * @param segmentCapacity le nombre de vecteurs par segment
+     * @param m le nombre de voisins par nœud (2m au niveau 0)
+     * @param efConstruction la largeur de recherche à l'insertion
+     * @param efSearch la largeur de recherche minimale à la requête
+     * @param snapshotEvery le nombre de modifications entre deux sauvegardes du graphe
+     * @param embeddingBatchSize le nombre maximal de documents par appel d'embedding
+     * @param embeddingBatchMaxChars la taille de texte maximale par appel d'embedding
+     * @param quantized parcours du graphe sur la copie int8 des vecteurs
+     * @param rerankCandidates le nombre de candidats réordonnés en pleine précision (mode quantifié)
+     * @param compactionRatio la part de nœuds supprimés déclenchant un compactage (0 : jamais)
+     */
+    public record Settings(Path directory, int dimension, int segmentCapacity, int m, int efConstruction,
+                           int efSearch, int snapshotEvery, int embeddingBatchSize, int embeddingBatchMaxChars,
+                           boolean quantized, int rerankCandidates, double compactionRatio) {
+    }
+
+    private record Candidate(int node, float distance) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record JournalEntry(String op, int node, String id, String content, Map<String, Object> metadata) {
+    }
+
+    private static final class StoredDocument {
+        private final String id;
+        private final String content;
+        private final Map<String, Object> metadata;
+        private boolean deleted;
+
+        private StoredDocument(String id, String content, Map<String, Object> metadata) {
+            this.id = id;
+            this.content = content;
+            this.metadata = metadata;
+        }
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingCacheService embeddingCacheService;
+    private final Settings settings;
+    private final int maxM0;
+    private final double levelMultiplier;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random(42);
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final List<ByteBuffer> quantizedSegments = new ArrayList<>();
+    // Indexed by node ordinal (append-only)
+    private final List<StoredDocument> documents = new ArrayList<>();
+    // Per node and level: [count, neighbours...]
+    private final List<int[][]> links = new ArrayList<>();
+    // Live node of each document id
+    private final Map<String, Integer> nodesByDocumentId = new HashMap<>();
+    private FileChannel journal;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int mutationsSinceSnapshot;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, EmbeddingCacheService embeddingCacheService, Settings settings) {
+        if ((long) settings.segmentCapacity() * settings.dimension() * Float.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment trop grand: " + settings.segmentCapacity() + " vecteurs de "
+                + settings.dimension() + " dimensions");
+        }
+        this.embeddingModel = embeddingModel;
+        this.embeddingCacheService = embeddingCacheService;
+        this.settings = settings;
+        this.maxM0 = 2 * settings.m();
+        this.levelMultiplier = 1 / Math.log(Math.max(2, settings.m()));
+        try {
+            restore();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'ouvrir le vector store " + settings.directory(), e);
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        for (List<Document> batch : EmbeddingBatches.plan(documents, settings.embeddingBatchSize(),
+                settings.embeddingBatchMaxChars())) {
+            // Embeddings are computed outside the lock: searches keep being served meanwhile
+            List<float[]> embeddings = embeddingCacheService.embed(
+                batch.stream().map(Document::getContent).toList(), embeddingModel::embed);
+            if (embeddings.size() != batch.size()) {
+                throw new IllegalStateException("Embedding model returned " + embeddings.size()
+                    + " vectors for " + batch.size() + " documents");
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Document document = batch.get(i);
+                    int node = this.documents.size();
+                    writeVector(node, normalize(embeddings.get(i)));
+                    appendJournal(new JournalEntry("add", node, document.getId(), document.getContent(),
+                        document.getMetadata()));
+                    applyAdd(node, document.getId(), document.getContent(), new HashMap<>(document.getMetadata()));
+                    insert(node);
+                }
+                flush();
+                mutationsSinceSnapshot += batch.size();
+                maybeCompact();
+                maybeSnapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("Indexed {} document(s) in the in-memory vector store", batch.size());
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer node = nodesByDocumentId.remove(id);
+                if (node != null) {
+                    documents.get(node).deleted = true;
+                    appendJournal(new JournalEntry("del", node, null, null, null));
+                    mutationsSinceSnapshot++;
+                }
+            }
+            journal.force(false);
+            maybeCompact();
+            maybeSnapshot();
+            return Optional.of(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteChunksFrom(String docType, Map<Long, Integer> firstStaleChunks) {
+        if (firstStaleChunks.isEmpty()) {
+            return;
+        }
+        String entityKey = "cv".equals(docType) ? "candidatId" : "offreId";
+        lock.writeLock().lock();
+        try {
+            // The chunk ids are not known here: the live documents are matched on their metadata
+            List<String> stale = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : nodesByDocumentId.entrySet()) {
+                Map<String, Object> metadata = documents.get(entry.getValue()).metadata;
+                if (!docType.equals(metadata.get("type"))) {
+                    continue;
+                }
+                Integer firstStale = firstStaleChunks.get(parseLong(metadata.get(entityKey)));
+                Long chunk = metadata.containsKey("chunk") ? parseLong(metadata.get("chunk")) : Long.valueOf(0);
+                if (firstStale != null && chunk != null && chunk >= firstStale) {
+                    stale.add(entry.getKey());
+                }
+            }
+            // Write lock is reentrant
+            delete(stale);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Long parseLong(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return search(normalize(embeddingCacheService.embed(List.of(request.getQuery()), embeddingModel::embed).get(0)),
+            request);
+    }
+
+    @Override
+    public List<Document> similaritySearch(String query) {
+        return similaritySearch(SearchRequest.query(query).withTopK(10));
+    }
+
+    @Override
+    public List<Document> similaritySearchByDocumentId(String documentId, SearchRequest request) {
+        float[] query = null;
+        lock.readLock().lock();
+        try {
+            Integer node = nodesByDocumentId.get(documentId);
+            if (node != null) {
+                query = readVector(node);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (query == null) {
+            log.debug("No stored embedding for document {}, embedding the query text", documentId);
+            return similaritySearch(request);
+        }
+        return search(query, request);
+    }
+
+    /**
+     * Sauvegarde le graphe et libère le journal.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            flush();
+            writeGraph();
+            journal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Search
+    // ---------------------------------------------------------------------------------------------
+
+    private List<Document> search(float[] query, SearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || nodesByDocumentId.isEmpty()) {
+                return List.of();
+            }
+            int topK = request.getTopK();
+            int candidateCount = settings.quantized() ? Math.max(topK, settings.rerankCandidates()) : topK;
+            Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+
+            int ep = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                ep = greedyClosest(query, ep, level);
+            }
+
+            // Filtered top-K: widen the beam until enough live, matching nodes are found
+            int nodeCount = documents.size();
+            int ef = Math.max(settings.efSearch(), candidateCount);
+            List<Candidate> nearest;
+            List<Candidate> accepted;
+            while (true) {
+                nearest = searchLayer(query, ep, ef, 0);
+                accepted = accept(nearest, filter, candidateCount);
+                if (accepted.size() >= candidateCount || ef >= nodeCount) {
+                    break;
+                }
+                ef = (int) Math.min(nodeCount, ef * 4L);
+            }
+            if (accepted.size() < candidateCount && nearest.size() < nodeCount) {
+                // Part of the graph is unreachable from the entry point: exact scan
+                accepted = exactScan(query, filter, candidateCount);
+            }
+            if (settings.quantized()) {
+                accepted = rerank(query, accepted, topK);
+            }
+
+            List<Document> results = new ArrayList<>(accepted.size());
+            for (Candidate candidate : accepted) {
+                StoredDocument document = documents.get(candidate.node());
+                Map<String, Object> metadata = new HashMap<>(document.metadata);
+                metadata.put("distance", candidate.distance());
+                results.add(new Document(document.id, document.content, metadata));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Candidate> accept(List<Candidate> nearest, Filter.Expression filter, int topK) {
+        List<Candidate> accepted = new ArrayList<>(topK);
+        for (Candidate candidate : nearest) {
+            if (accepted.size() >= topK) {
+                break;
+            }
+            if (isSelectable(candidate.node(), filter)) {
+                accepted.add(candidate);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Réordonne les candidats selon la distance en pleine précision.
+     */
+    private List<Candidate> rerank(float[] query, List<Candidate> candidates, int topK) {
+        List<Candidate> reranked = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            reranked.add(new Candidate(candidate.node(), exactDistance(candidate.node(), query)));
+        }
+        reranked.sort(BY_DISTANCE);
+        return reranked.size() > topK ? reranked.subList(0, topK) : reranked;
+    }
+
+    private List<Candidate> exactScan(float[] query, Filter.Expression filter, int topK) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(BY_DISTANCE.reversed());
+        for (int node = 0; node < documents.size(); node++) {
+            if (!isSelectable(node, filter)) {
+                continue;
+            }
+            best.add(new Candidate(node, distance(node, query)));
+            if (best.size() > topK) {
+                best.poll();
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(BY_DISTANCE);
+        return sorted;
+    }
+
+    private boolean isSelectable(int node, Filter.Expression filter) {
+        StoredDocument document = documents.get(node);
+        return !document.deleted && (filter == null || MetadataFilterEvaluator.matches(filter, document.metadata));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // HNSW graph
+    // ---------------------------------------------------------------------------------------------
+
+    private void insert(int node) {
+        float[] vector = readVector(node);
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + maxConnections(l)];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vector, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> nearest = searchLayer(vector, ep, settings.efConstruction(), l);
+            List<Candidate> selected = selectNeighbours(nearest, settings.m());
+            int[] own = nodeLinks[l];
+            for (Candidate neighbour : selected) {
+                own[++own[0]] = neighbour.node();
+            }
+            for (Candidate neighbour : selected) {
+                connect(neighbour.node(), node, neighbour.distance(), l);
+            }
+            ep = nearest.get(0).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Ajoute un lien target → node ; une liste pleine est réélaguée par l'heuristique de sélection.
+     */
+    private void connect(int target, int node, float distance, int level) {
+        int[] list = links.get(target)[level];
+        int count = list[0];
+        if (count < list.length - 1) {
+            list[++list[0]] = node;
+            return;
+        }
+
+        float[] targetVector = readVector(target);
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new Candidate(list[i], distance(list[i], targetVector)));
+        }
+        candidates.add(new Candidate(node, distance));
+        candidates.sort(BY_DISTANCE);
+        List<Candidate> kept = selectNeighbours(candidates, list.length - 1);
+        list[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            list[i + 1] = kept.get(i).node();
+        }
+    }
+
+    /**
+     * Heuristique de sélection des voisins (HNSW) : un candidat n'est retenu que s'il est plus proche
+     * de la cible que des voisins déjà retenus, puis la liste est complétée par les plus proches écartés.
+     *
+     * @param candidates les candidats, par distance croissante à la cible
+     * @param max le nombre maximal de voisins
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = readVector(candidate.node());
+            boolean diverse = true;
+            for (Candidate kept : selected) {
+                if (distance(kept.node(), vector) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    private int greedyClosest(float[] query, int ep, int level) {
+        int current = ep;
+        float currentDistance = distance(current, query);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links.get(current)[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float d = distance(neighbours[i], query);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbours[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Recherche en faisceau sur un niveau du graphe.
+     *
+     * @return au plus ef nœuds, par distance croissante
+     */
+    private List<Candidate> searchLayer(float[] query, int ep, int ef, int level) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BY_DISTANCE);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_DISTANCE.reversed());
+        Candidate start = new Candidate(ep, distance(ep, query));
+        visited.set(ep);
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.distance() > results.peek().distance()) {
+                break;
+            }
+            int[] neighbours = links.get(current.node())[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(neighbour, query);
+                if (results.size() < ef || d < results.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbour, d);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_DISTANCE);
+        return sorted;
+    }
+
+    private int randomLevel() {
+        double level = -Math.log(1.0 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(MAX_LEVEL, Math.floor(level));
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : settings.m();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Off-heap vectors
+    // ---------------------------------------------------------------------------------------------
+
+    private float distance(int node, float[] query) {
+        return settings.quantized() ? quantizedDistance(node, query) : exactDistance(node, query);
+    }
+
+    private float quantizedDistance(int node, float[] query) {
+        ByteBuffer segment = quantizedSegments.get(node / settings.segmentCapacity());
+        int base = (node % settings.segmentCapacity()) * settings.dimension();
+        float dot = 0;
+        for (int i = 0; i < query.length; i++) {
+            dot += segment.get(base + i) * query[i];
+        }
+        return 1 - dot / INT8_SCALE;
+    }
+
+    private float exactDistance(int node, float[] query) {
+        ByteBuffer segment = segments.get(node / settings.segmentCapacity());
+        int base = (node % settings.segmentCapacity()) * settings.dimension() * Float.BYTES;
+        float dot = 0;
+        for (int i = 0; i < query.length; i++) {
+            dot += segment.getFloat(base + i * Float.BYTES) * query[i];
+        }
+        // Cosine distance of normalized vectors
+        return 1 - dot;
+    }
+
+    private float[] readVector(int node) {
+        ByteBuffer segment = segments.get(node / settings.segmentCapacity());
+        int base = (node % settings.segmentCapacity()) * settings.dimension() * Float.BYTES;
+        float[] vector = new float[settings.dimension()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = segment.getFloat(base + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    private void writeVector(int node, float[] vector) throws IOException {
+        if (vector.length != settings.dimension()) {
+            throw new IllegalArgumentException("Embedding de dimension " + vector.length
+                + ", attendu " + settings.dimension());
+        }
+        int segmentIndex = node / settings.segmentCapacity();
+        while (segments.size() <= segmentIndex) {
+            segments.add(mapSegment(segments.size(), "vec", Float.BYTES));
+            if (settings.quantized()) {
+                quantizedSegments.add(mapSegment(quantizedSegments.size(), "q8", 1));
+            }
+        }
+        ByteBuffer segment = segments.get(segmentIndex);
+        int base = (node % settings.segmentCapacity()) * settings.dimension() * Float.BYTES;
+        for (int i = 0; i < vector.length; i++) {
+            segment.putFloat(base + i * Float.BYTES, vector[i]);
+        }
+        if (settings.quantized()) {
+            writeQuantized(node, vector);
+        }
+    }
+
+    /**
+     * Écrit la copie int8 d'un vecteur normalisé (composantes dans [-1, 1]).
+     */
+    private void writeQuantized(int node, float[] vector) {
+        ByteBuffer segment = quantizedSegments.get(node / settings.segmentCapacity());
+        int base = (node % settings.segmentCapacity()) * settings.dimension();
+        for (int i = 0; i < vector.length; i++) {
+            segment.put(base + i, (byte) Math.max(-127, Math.min(127, Math.round(vector[i] * INT8_SCALE))));
+        }
+    }
+
+    private ByteBuffer mapSegment(int index, String extension, int bytesPerComponent) throws IOException {
+        return mapSegment(settings.directory(), index, extension, bytesPerComponent);
+    }
+
+    private ByteBuffer mapSegment(Path directory, int index, String extension, int bytesPerComponent) throws IOException {
+        Path path = directory.resolve(String.format("segment-%05d.%s", index, extension));
+        long size = (long) settings.segmentCapacity() * settings.dimension() * bytesPerComponent;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Journal and snapshot
+    // ---------------------------------------------------------------------------------------------
+
+    private void restore() throws IOException {
+        Files.createDirectories(settings.directory());
+        recoverCompaction();
+        Path journalPath = settings.directory().resolve(JOURNAL_FILE);
+        if (Files.exists(journalPath)) {
+            replayJournal(journalPath);
+        }
+        int segmentCount = (documents.size() + settings.segmentCapacity() - 1) / settings.segmentCapacity();
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(mapSegment(i, "vec", Float.BYTES));
+            if (settings.quantized()) {
+                boolean existed = Files.exists(settings.directory().resolve(String.format("segment-%05d.q8", i)));
+                quantizedSegments.add(mapSegment(i, "q8", 1));
+                if (!existed) {
+                    // Quantization enabled on an existing store: derive the int8 copy once
+                    int last = Math.min(documents.size(), (i + 1) * settings.segmentCapacity());
+                    for (int node = i * settings.segmentCapacity(); node < last; node++) {
+                        writeQuantized(node, readVector(node));
+                    }
+                }
+            }
+        }
+
+        int restored = readGraph();
+        for (int node = restored; node < documents.size(); node++) {
+            insert(node);
+        }
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (restored < documents.size()) {
+            mutationsSinceSnapshot = documents.size() - restored;
+            maybeSnapshot();
+        }
+        log.info("In-memory vector store restored from {}: {} document(s), {} node(s) from snapshot",
+            settings.directory(), nodesByDocumentId.size(), restored);
+    }
+
+    private void replayJournal(Path journalPath) throws IOException {
+        byte[] content = Files.readAllBytes(journalPath);
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end++;
+            }
+            try {
+                if (end == content.length) {
+                    throw new IOException("Entrée incomplète");
+                }
+                if (end > start) {
+                    JournalEntry entry = JOURNAL_MAPPER.readValue(content, start, end - start, JournalEntry.class);
+                    replay(entry);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Write interrupted by a crash: the tail of the journal is dropped
+                log.warn("Vector store journal truncated at byte {}: {}", start, e.getMessage());
+                try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                    channel.truncate(start);
+                }
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    private void replay(JournalEntry entry) {
+        switch (entry.op()) {
+            case "add" -> {
+                if (entry.node() != documents.size()) {
+                    throw new IllegalStateException("Nœud " + entry.node() + " hors séquence");
+                }
+                applyAdd(entry.node(), entry.id(), entry.content(),
+                    entry.metadata() != null ? new HashMap<>(entry.metadata()) : new HashMap<>());
+            }
+            case "del" -> {
+                StoredDocument document = documents.get(entry.node());
+                document.deleted = true;
+                nodesByDocumentId.remove(document.id, entry.node());
+            }
+            default -> throw new IllegalStateException("Opération de journal inconnue: " + entry.op());
+        }
+    }
+
+    private void applyAdd(int node, String id, String content, Map<String, Object> metadata) {
+        documents.add(new StoredDocument(id, content, metadata));
+        // Same document id: the previous vector is superseded
+        Integer previous = nodesByDocumentId.put(id, node);
+        if (previous != null) {
+            documents.get(previous).deleted = true;
+        }
+    }
+
+    private void appendJournal(JournalEntry entry) throws IOException {
+        writeJournal(journal, entry);
+    }
+
+    private static void writeJournal(FileChannel channel, JournalEntry entry) throws IOException {
+        byte[] line;
+        try {
+            line = (JOURNAL_MAPPER.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Métadonnées non sérialisables en JSON", e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void flush() throws IOException {
+        for (ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        for (ByteBuffer segment : quantizedSegments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        journal.force(false);
+    }
+
+    private void maybeSnapshot() throws IOException {
+        if (mutationsSinceSnapshot >= settings.snapshotEvery()) {
+            writeGraph();
+        }
+    }
+
+    private void writeGraph() throws IOException {
+        writeGraph(settings.directory());
+    }
+
+    private void writeGraph(Path directory) throws IOException {
+        Path target = directory.resolve(GRAPH_FILE);
+        Path tmp = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(GRAPH_MAGIC);
+            out.writeInt(GRAPH_VERSION);
+            out.writeInt(settings.dimension());
+            out.writeInt(settings.m());
+            out.writeInt(links.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int[][] nodeLinks : links) {
+                out.writeInt(nodeLinks.length);
+                for (int[] levelLinks : nodeLinks) {
+                    out.writeInt(levelLinks[0]);
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        out.writeInt(levelLinks[i]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mutationsSinceSnapshot = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Compaction
+    // ---------------------------------------------------------------------------------------------
+
+    private void maybeCompact() throws IOException {
+        int deleted = documents.size() - nodesByDocumentId.size();
+        if (settings.compactionRatio() > 0 && deleted >= settings.snapshotEvery()
+                && deleted >= settings.compactionRatio() * documents.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Réécrit le store sans ses nœuds supprimés : les vecteurs et le journal des documents vivants sont
+     * écrits dans un répertoire de travail, le graphe y est reconstruit et sauvegardé, puis un marqueur
+     * valide le tout avant le remplacement des fichiers. Un remplacement interrompu est terminé au
+     * démarrage ; un compactage interrompu avant le marqueur est abandonné.
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        int before = documents.size();
+        Path work = settings.directory().resolve(COMPACTION_DIRECTORY);
+        deleteRecursively(work);
+        Files.createDirectories(work);
+
+        // Live nodes keep their relative order
+        List<ByteBuffer> compactedSegments = new ArrayList<>();
+        List<ByteBuffer> compactedQuantized = new ArrayList<>();
+        List<StoredDocument> compactedDocuments = new ArrayList<>(nodesByDocumentId.size());
+        try (FileChannel compactedJournal = FileChannel.open(work.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int node = 0; node < documents.size(); node++) {
+                StoredDocument document = documents.get(node);
+                if (document.deleted) {
+                    continue;
+                }
+                int target = compactedDocuments.size();
+                if (target % settings.segmentCapacity() == 0) {
+                    compactedSegments.add(mapSegment(work, compactedSegments.size(), "vec", Float.BYTES));
+                    if (settings.quantized()) {
+                        compactedQuantized.add(mapSegment(work, compactedQuantized.size(), "q8", 1));
+                    }
+                }
+                int length = settings.dimension() * Float.BYTES;
+                copy(segments, node, compactedSegments, target, length);
+                if (settings.quantized()) {
+                    copy(quantizedSegments, node, compactedQuantized, target, settings.dimension());
+                }
+                writeJournal(compactedJournal, new JournalEntry("add", target, document.id, document.content,
+                    document.metadata));
+                compactedDocuments.add(new StoredDocument(document.id, document.content, document.metadata));
+            }
+            compactedJournal.force(false);
+        }
+        for (ByteBuffer segment : compactedSegments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        for (ByteBuffer segment : compactedQuantized) {
+            ((MappedByteBuffer) segment).force();
+        }
+
+        // The graph is rebuilt on the live nodes: the deleted ones no longer route searches
+        segments.clear();
+        segments.addAll(compactedSegments);
+        quantizedSegments.clear();
+        quantizedSegments.addAll(compactedQuantized);
+        documents.clear();
+        documents.addAll(compactedDocuments);
+        nodesByDocumentId.clear();
+        for (int node = 0; node < documents.size(); node++) {
+            nodesByDocumentId.put(documents.get(node).id, node);
+        }
+        links.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int node = 0; node < documents.size(); node++) {
+            insert(node);
+        }
+        writeGraph(work);
+
+        try (FileChannel marker = FileChannel.open(work.resolve(COMPACTION_MARKER),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            marker.write(ByteBuffer.wrap(String.valueOf(compactedSegments.size()).getBytes(StandardCharsets.UTF_8)));
+            marker.force(true);
+        }
+        journal.close();
+        finishCompaction(work);
+        journal = FileChannel.open(settings.directory().resolve(JOURNAL_FILE), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        mutationsSinceSnapshot = 0;
+        log.info("In-memory vector store compacted: {} -> {} node(s) in {} ms",
+            before, documents.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void copy(List<ByteBuffer> from, int fromNode, List<ByteBuffer> to, int toNode, int length) {
+        ByteBuffer source = from.get(fromNode / settings.segmentCapacity()).duplicate();
+        int sourceBase = (fromNode % settings.segmentCapacity()) * length;
+        source.limit(sourceBase + length).position(sourceBase);
+        ByteBuffer target = to.get(toNode / settings.segmentCapacity()).duplicate();
+        target.position((toNode % settings.segmentCapacity()) * length);
+        target.put(source);
+    }
+
+    /**
+     * Termine un compactage validé par son marqueur, ou abandonne un compactage interrompu avant.
+     */
+    private void recoverCompaction() throws IOException {
+        Path work = settings.directory().resolve(COMPACTION_DIRECTORY);
+        if (Files.exists(work.resolve(COMPACTION_MARKER))) {
+            log.warn("Interrupted vector store compaction found in {}, completing it", work);
+            finishCompaction(work);
+        } else {
+            deleteRecursively(work);
+        }
+    }
+
+    /**
+     * Remplace les fichiers du store par ceux du compactage (opération rejouable), puis supprime
+     * les segments devenus inutiles.
+     */
+    private void finishCompaction(Path work) throws IOException {
+        Path marker = work.resolve(COMPACTION_MARKER);
+        int segmentCount = Integer.parseInt(Files.readString(marker, StandardCharsets.UTF_8).trim());
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(work)) {
+            files = listing.filter(file -> !file.equals(marker)).toList();
+        }
+        for (Path file : files) {
+            Files.move(file, settings.directory().resolve(file.getFileName()),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        try (Stream<Path> listing = Files.list(settings.directory())) {
+            for (Path file : listing.toList()) {
+                Matcher segment = SEGMENT_FILE.matcher(file.getFileName().toString());
+                // The int8 copies are dropped when quantization is off: they would be stale if it is re-enabled
+                if (segment.matches() && (Integer.parseInt(segment.group(1)) >= segmentCount
+                        || ("q8".equals(segment.group(2)) && !settings.quantized()))) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.delete(marker);
+        Files.delete(work);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Recharge la sauvegarde du graphe, si elle est compatible avec le journal et les paramètres.
+     *
+     * @return le nombre de nœuds restaurés (0 : graphe à reconstruire)
+     */
+    private int readGraph() {
+        Path path = settings.directory().resolve(GRAPH_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != GRAPH_MAGIC || in.readInt() != GRAPH_VERSION
+                    || in.readInt() != settings.dimension() || in.readInt() != settings.m()) {
+                log.warn("Vector store graph snapshot ignored: incompatible format or settings");
+                return 0;
+            }
+            int nodeCount = in.readInt();
+            if (nodeCount > documents.size()) {
+                log.warn("Vector store graph snapshot ignored: {} nodes for {} journaled documents",
+                    nodeCount, documents.size());
+                return 0;
+            }
+            int snapshotEntryPoint = in.readInt();
+            int snapshotMaxLevel = in.readInt();
+            List<int[][]> snapshotLinks = new ArrayList<>(nodeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                int[][] nodeLinks = new int[in.readInt()][];
+                for (int level = 0; level < nodeLinks.length; level++) {
+                    int count = in.readInt();
+                    nodeLinks[level] = new int[1 + maxConnections(level)];
+                    nodeLinks[level][0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        nodeLinks[level][i] = in.readInt();
+                    }
+                }
+                snapshotLinks.add(nodeLinks);
+            }
+            links.addAll(snapshotLinks);
+            entryPoint = snapshotEntryPoint;
+            maxLevel = snapshotMaxLevel;
+            return nodeCount;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Vector store graph snapshot unreadable, rebuilding: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
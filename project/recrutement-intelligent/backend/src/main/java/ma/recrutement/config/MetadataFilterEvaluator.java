@@ -0,0 +1,103 @@
+package ma.recrutement.config;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Évalue une expression de filtre Spring AI ({@link Filter.Expression}) sur les métadonnées
+ * d'un document en mémoire, avec la même sémantique que {@link MetadataFilterSqlConverter}
+ * (comparaison textuelle, ou numérique si la valeur du filtre est un nombre ; une clé absente
+ * ne satisfait que NE et NIN).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+final class MetadataFilterEvaluator {
+
+    private MetadataFilterEvaluator() {
+    }
+
+    /**
+     * Indique si les métadonnées satisfont l'expression.
+     *
+     * @param expression l'expression de filtre
+     * @param metadata les métadonnées du document
+     * @return true si le document est retenu
+     * @throws IllegalArgumentException si l'expression n'est pas supportée
+     */
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case EQ -> compare(expression, metadata, c -> c == 0);
+            case NE -> metadataValue(expression, metadata) == null || compare(expression, metadata, c -> c != 0);
+            case GT -> compare(expression, metadata, c -> c > 0);
+            case GTE -> compare(expression, metadata, c -> c >= 0);
+            case LT -> compare(expression, metadata, c -> c < 0);
+            case LTE -> compare(expression, metadata, c -> c <= 0);
+            case IN -> {
+                Object value = metadataValue(expression, metadata);
+                yield value != null && values(expression).contains(value);
+            }
+            case NIN -> {
+                // A missing key is "not in" any list
+                Object value = metadataValue(expression, metadata);
+                yield value == null || !values(expression).contains(value);
+            }
+            default -> throw new IllegalArgumentException("Opérateur de filtre non supporté: " + expression.type());
+        };
+    }
+
+    private static boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Expression expression) {
+            return matches(expression, metadata);
+        }
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        throw new IllegalArgumentException("Opérande de filtre non supporté: " + operand);
+    }
+
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate test) {
+        String actual = metadataValue(expression, metadata);
+        if (actual == null) {
+            return false;
+        }
+        Object expected = filterValue(expression);
+        if (expected instanceof Number number) {
+            try {
+                return test.test(new BigDecimal(actual.trim()).compareTo(new BigDecimal(number.toString())));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return test.test(actual.compareTo(String.valueOf(expected)));
+    }
+
+    private static String metadataValue(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("Clé de filtre invalide: " + expression.left());
+        }
+        Object value = metadata.get(key.key());
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static Object filterValue(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Valeur de filtre invalide: " + expression.right());
+        }
+        return value.value();
+    }
+
+    private static Collection<String> values(Filter.Expression expression) {
+        if (!(filterValue(expression) instanceof Collection<?> values) || values.isEmpty()) {
+            throw new IllegalArgumentException("IN/NIN attend une liste de valeurs non vide");
+        }
+        return values.stream().map(String::valueOf).toList();
+    }
+}
@@ -0,0 +1,188 @@
+package ma.recrutement.config;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Traduit une expression de filtre Spring AI ({@link Filter.Expression}) en condition SQL
+ * paramétrée sur la colonne JSONB {@code metadata} du vector store.
+ * Les valeurs sont toujours liées en paramètres ; les clés, insérées dans le SQL,
+ * sont restreintes aux identifiants simples. Une égalité sur une chaîne est exprimée
+ * par inclusion ({@code @>}) afin d'utiliser l'index GIN de la colonne.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+final class MetadataFilterSqlConverter {
+
+    private static final Pattern SAFE_KEY = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private MetadataFilterSqlConverter() {
+    }
+
+    /**
+     * Condition SQL et paramètres associés, dans l'ordre des marqueurs {@code ?}.
+     */
+    record SqlFilter(String sql, List<Object> params) {
+    }
+
+    /**
+     * Convertit une expression de filtre en condition SQL.
+     *
+     * @param expression l'expression de filtre
+     * @return la condition et ses paramètres
+     * @throws IllegalArgumentException si l'expression n'est pas supportée
+     */
+    static SqlFilter convert(Filter.Expression expression) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        appendExpression(expression, sql, params);
+        return new SqlFilter(sql.toString(), params);
+    }
+
+    /**
+     * Valeur imposée à une clé par le filtre : égalité sur la clé, seule ou dans une conjonction (AND).
+     *
+     * @param expression l'expression de filtre
+     * @param key la clé de métadonnée
+     * @return la valeur imposée, ou null si le filtre admet plusieurs valeurs pour la clé
+     */
+    static String pinnedValue(Filter.Expression expression, String key) {
+        return switch (expression.type()) {
+            case EQ -> expression.left() instanceof Filter.Key k && k.key().equals(key)
+                && expression.right() instanceof Filter.Value v && v.value() instanceof String value ? value : null;
+            case AND -> {
+                String left = pinnedValue(expression.left(), key);
+                yield left != null ? left : pinnedValue(expression.right(), key);
+            }
+            default -> null;
+        };
+    }
+
+    private static String pinnedValue(Filter.Operand operand, String key) {
+        if (operand instanceof Filter.Expression expression) {
+            return pinnedValue(expression, key);
+        }
+        return operand instanceof Filter.Group group ? pinnedValue(group.content(), key) : null;
+    }
+
+    private static void appendOperand(Filter.Operand operand, StringBuilder sql, List<Object> params) {
+        if (operand instanceof Filter.Expression expression) {
+            appendExpression(expression, sql, params);
+        } else if (operand instanceof Filter.Group group) {
+            sql.append('(');
+            appendExpression(group.content(), sql, params);
+            sql.append(')');
+        } else {
+            throw new IllegalArgumentException("Opérande de filtre non supporté: " + operand);
+        }
+    }
+
+    private static void appendExpression(Filter.Expression expression, StringBuilder sql, List<Object> params) {
+        switch (expression.type()) {
+            case AND, OR -> {
+                sql.append('(');
+                appendOperand(expression.left(), sql, params);
+                sql.append(expression.type() == Filter.ExpressionType.AND ? " AND " : " OR ");
+                appendOperand(expression.right(), sql, params);
+                sql.append(')');
+            }
+            case NOT -> {
+                sql.append("NOT (");
+                appendOperand(expression.left(), sql, params);
+                sql.append(')');
+            }
+            case EQ -> appendEquals(expression, sql, params);
+            case NE -> appendComparison(expression, "IS DISTINCT FROM", sql, params);
+            case GT -> appendComparison(expression, ">", sql, params);
+            case GTE -> appendComparison(expression, ">=", sql, params);
+            case LT -> appendComparison(expression, "<", sql, params);
+            case LTE -> appendComparison(expression, "<=", sql, params);
+            case IN -> appendIn(expression, false, sql, params);
+            case NIN -> appendIn(expression, true, sql, params);
+            default -> throw new IllegalArgumentException("Opérateur de filtre non supporté: " + expression.type());
+        }
+    }
+
+    private static void appendEquals(Filter.Expression expression, StringBuilder sql, List<Object> params) {
+        if (!(value(expression) instanceof String value)) {
+            appendComparison(expression, "=", sql, params);
+            return;
+        }
+        // {"key": "value"} containment, served by the jsonb_path_ops GIN index
+        String key = key(expression);
+        sql.append("metadata @> ?::jsonb");
+        params.add("{\"" + key + "\":\"" + jsonEscape(value) + "\"}");
+    }
+
+    private static void appendComparison(Filter.Expression expression, String operator,
+                                         StringBuilder sql, List<Object> params) {
+        Object value = value(expression);
+        boolean numeric = value instanceof Number;
+        sql.append(column(expression, numeric)).append(' ').append(operator).append(" ?");
+        params.add(numeric ? value : String.valueOf(value));
+    }
+
+    private static void appendIn(Filter.Expression expression, boolean negate,
+                                 StringBuilder sql, List<Object> params) {
+        if (!(value(expression) instanceof Collection<?> values) || values.isEmpty()) {
+            throw new IllegalArgumentException("IN/NIN attend une liste de valeurs non vide");
+        }
+
+        String column = column(expression, false);
+        if (negate) {
+            // A missing key is "not in" any list
+            sql.append('(').append(column).append(" IS NULL OR ").append(column).append(" NOT IN (");
+        } else {
+            sql.append(column).append(" IN (");
+        }
+        boolean first = true;
+        for (Object value : values) {
+            sql.append(first ? "?" : ", ?");
+            params.add(String.valueOf(value));
+            first = false;
+        }
+        sql.append(negate ? "))" : ")");
+    }
+
+    private static String column(Filter.Expression expression, boolean numeric) {
+        String column = "metadata->>'" + key(expression) + "'";
+        return numeric ? "(" + column + ")::numeric" : column;
+    }
+
+    private static String key(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key key) || !SAFE_KEY.matcher(key.key()).matches()) {
+            throw new IllegalArgumentException("Clé de filtre invalide: " + expression.left());
+        }
+        return key.key();
+    }
+
+    private static String jsonEscape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static Object value(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Valeur de filtre invalide: " + expression.right());
+        }
+        return value.value();
+    }
+}
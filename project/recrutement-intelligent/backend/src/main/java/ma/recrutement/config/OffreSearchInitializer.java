@@ -0,0 +1,85 @@
+package ma.recrutement.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Prépare la recherche plein texte des offres d'emploi : colonne tsvector
+ * générée (configuration française, champs pondérés) et index GIN.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Component
+public class OffreSearchInitializer {
+
+    /**
+     * Colonnes texte longues alimentant le vecteur de recherche.
+     */
+    private static final List<String> TEXT_COLUMNS = List.of("description", "competences_requises", "profil_recherche");
+
+    /**
+     * Vecteur pondéré : titre (A), compétences (B), description et profil (C), localisation (D).
+     * Recalculé par PostgreSQL à chaque INSERT/UPDATE, quel que soit le chemin d'écriture.
+     */
+    private static final String SEARCH_VECTOR_SQL = """
+        ALTER TABLE offres_emploi ADD COLUMN IF NOT EXISTS search_vector tsvector
+        GENERATED ALWAYS AS (
+            setweight(to_tsvector('french'::regconfig, coalesce(titre, '')), 'A') ||
+            setweight(to_tsvector('french'::regconfig, coalesce(competences_requises, '')), 'B') ||
+            setweight(to_tsvector('french'::regconfig, coalesce(description, '') || ' ' || coalesce(profil_recherche, '')), 'C') ||
+            setweight(to_tsvector('french'::regconfig, coalesce(localisation, '') || ' ' || coalesce(ville, '')), 'D')
+        ) STORED
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate schemaTransaction;
+
+    public OffreSearchInitializer(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.schemaTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    /**
+     * Crée la colonne de recherche et son index une fois le schéma JPA en place.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeSearch() {
+        try {
+            schemaTransaction.executeWithoutResult(status -> {
+                convertLargeObjectColumns();
+                jdbcTemplate.execute(SEARCH_VECTOR_SQL);
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_offre_search_vector ON offres_emploi USING GIN (search_vector)");
+            });
+            log.info("Recherche plein texte des offres prête (search_vector + index GIN)");
+        } catch (Exception e) {
+            log.warn("Impossible de préparer la recherche plein texte des offres: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Les colonnes autrefois mappées en @Lob peuvent avoir été créées en oid
+     * (large objects) : elles sont converties en TEXT, indexable par to_tsvector.
+     */
+    private void convertLargeObjectColumns() {
+        for (String column : TEXT_COLUMNS) {
+            String type = jdbcTemplate.query(
+                "SELECT data_type FROM information_schema.columns WHERE table_name = 'offres_emploi' AND column_name = ?",
+                rs -> rs.next() ? rs.getString(1) : null, column);
+            if ("oid".equals(type)) {
+                jdbcTemplate.execute(String.format(
+                    "ALTER TABLE offres_emploi ALTER COLUMN %1$s TYPE TEXT USING convert_from(lo_get(%1$s), 'UTF8')", column));
+                log.info("Colonne offres_emploi.{} convertie de oid en TEXT", column);
+            }
+        }
+    }
+}
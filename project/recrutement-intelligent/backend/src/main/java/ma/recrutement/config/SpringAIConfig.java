@@ -3,24 +3,40 @@ package ma.recrutement.config;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ai.autoconfigure.vectorstore.pgvector.PgVectorStoreAutoConfiguration;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.service.ai.DocumentVectorStore;
+import ma.recrutement.service.ai.EmbeddingCacheService;
+import ma.recrutement.service.ai.VectorIndexService;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
  * Configuration de Spring AI pour l'intégration avec OpenAI.
@@ -38,6 +54,51 @@ public class SpringAIConfig {
     @Value("${spring.ai.openai.chat.options.model:gpt-4}")
     private String chatModel;
 
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}")
+    private String embeddingModelName;
+
+    @Value("${spring.ai.openai.embedding.options.dimensions:1536}")
+    private int embeddingModelDimensions;
+
+    @Value("${matching.indexing.embedding-batch-size:100}")
+    private int embeddingBatchSize;
+
+    @Value("${matching.indexing.embedding-batch-max-chars:200000}")
+    private int embeddingBatchMaxChars;
+
+    @Value("${matching.vectorstore.provider:pgvector}")
+    private String vectorStoreProvider;
+
+    @Value("${matching.vectorstore.memory.directory:data/vector-store}")
+    private String memoryStoreDirectory;
+
+    @Value("${matching.vectorstore.memory.segment-capacity:4096}")
+    private int memoryStoreSegmentCapacity;
+
+    @Value("${matching.vectorstore.memory.snapshot-every:500}")
+    private int memoryStoreSnapshotEvery;
+
+    @Value("${matching.vectorstore.memory.quantization:NONE}")
+    private String memoryStoreQuantization;
+
+    @Value("${matching.vectorstore.memory.compaction-ratio:0.3}")
+    private double memoryStoreCompactionRatio;
+
+    @Value("${matching.vectorstore.rerank-candidates:200}")
+    private int rerankCandidates;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:1536}")
+    private int embeddingDimension;
+
+    @Value("${matching.vectorstore.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${matching.vectorstore.hnsw.ef-construction:64}")
+    private int hnswEfConstruction;
+
+    @Value("${matching.vectorstore.hnsw.ef-search:40}")
+    private int hnswEfSearch;
+
     private final DataSource dataSource;
 
     public SpringAIConfig(DataSource dataSource) {
@@ -72,163 +133,449 @@ public class SpringAIConfig {
      */
     @Bean
     public EmbeddingModel embeddingModel() {
-        return new OpenAiEmbeddingModel(new OpenAiApi(openaiApiKey));
+        // Configured model (text-embedding-3-* vectors can be truncated for the first-pass index)
+        return new OpenAiEmbeddingModel(new OpenAiApi(openaiApiKey), MetadataMode.EMBED,
+            OpenAiEmbeddingOptions.builder()
+                .withModel(embeddingModelName)
+                .withDimensions(embeddingModelDimensions)
+                .build());
     }
 
     /**
      * Configure un VectorStore transactionnel qui utilise le même datasource que l'application.
      * Cela permet de garantir que les opérations d'indexage sont commitées dans la même transaction.
+     * Avec {@code matching.vectorstore.provider=memory}, un index HNSW dans la JVM est utilisé à la place.
      *
      * @param embeddingModel le modèle d'embedding
+     * @param vectorIndexService la gestion de l'index ANN
+     * @param embeddingCacheService le cache des embeddings
      * @return le VectorStore
      */
     @Bean
-    public org.springframework.ai.vectorstore.VectorStore vectorStore(EmbeddingModel embeddingModel) {
-        return new TransactionalPgVectorStore(dataSource, embeddingModel);
+    public DocumentVectorStore vectorStore(EmbeddingModel embeddingModel, VectorIndexService vectorIndexService,
+                                           EmbeddingCacheService embeddingCacheService) {
+        if ("memory".equalsIgnoreCase(vectorStoreProvider.trim())) {
+            return new HnswVectorStore(embeddingModel, embeddingCacheService, new HnswVectorStore.Settings(
+                Path.of(memoryStoreDirectory), embeddingDimension, memoryStoreSegmentCapacity,
+                hnswM, hnswEfConstruction, hnswEfSearch, Math.max(1, memoryStoreSnapshotEvery),
+                Math.max(1, embeddingBatchSize), Math.max(1, embeddingBatchMaxChars),
+                "INT8".equalsIgnoreCase(memoryStoreQuantization.trim()), Math.max(1, rerankCandidates),
+                Math.max(0, memoryStoreCompactionRatio)));
+        }
+        return new TransactionalPgVectorStore(dataSource, embeddingModel, vectorIndexService, embeddingCacheService,
+            embeddingDimension, embeddingBatchSize, embeddingBatchMaxChars);
     }
 
     /**
      * VectorStore personnalisé qui utilise JdbcTemplate pour garantir la transaction.
      */
     @Slf4j
-    public static class TransactionalPgVectorStore implements org.springframework.ai.vectorstore.VectorStore {
+    public static class TransactionalPgVectorStore implements DocumentVectorStore {
+        private static final ObjectMapper METADATA_MAPPER = new ObjectMapper();
+        private static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS cv_embeddings (
+                id SERIAL,
+                document_id VARCHAR(64),
+                doc_type VARCHAR(20),
+                entity_id BIGINT,
+                chunk_no INT NOT NULL DEFAULT 0,
+                content TEXT,
+                metadata JSONB,
+                embedding vector(%d)
+            ) PARTITION BY LIST (doc_type)
+            """;
+
         private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate schemaTransaction;
         private final EmbeddingModel embeddingModel;
+        private final VectorIndexService vectorIndexService;
+        private final EmbeddingCacheService embeddingCacheService;
+        private final int dimension;
+        private final int embeddingBatchSize;
+        private final int embeddingBatchMaxChars;
 
-        public TransactionalPgVectorStore(DataSource dataSource, EmbeddingModel embeddingModel) {
+        public TransactionalPgVectorStore(DataSource dataSource, EmbeddingModel embeddingModel,
+                                          VectorIndexService vectorIndexService,
+                                          EmbeddingCacheService embeddingCacheService, int dimension,
+                                          int embeddingBatchSize, int embeddingBatchMaxChars) {
             this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.schemaTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
             this.embeddingModel = embeddingModel;
+            this.vectorIndexService = vectorIndexService;
+            this.embeddingCacheService = embeddingCacheService;
+            this.dimension = dimension;
+            this.embeddingBatchSize = Math.max(1, embeddingBatchSize);
+            this.embeddingBatchMaxChars = Math.max(1, embeddingBatchMaxChars);
             initializeSchema();
         }
 
         private void initializeSchema() {
+            executeSchemaStep("CREATE EXTENSION IF NOT EXISTS vector");
+            // One partition per document type: each has its own ANN index, sized on its own rows,
+            // and a search on one type only reads its partition
+            executeSchemaStep(CREATE_TABLE_SQL.formatted(dimension));
+
+            // Upgrade steps of tables created before partitioning (no-ops on the partitioned table)
+            // JSONB metadata (tables created as JSON are converted once)
+            executeSchemaStep("""
+                DO $$
+                BEGIN
+                    IF EXISTS (SELECT 1 FROM information_schema.columns
+                               WHERE table_name = 'cv_embeddings' AND column_name = 'metadata' AND data_type = 'json') THEN
+                        ALTER TABLE cv_embeddings ALTER COLUMN metadata TYPE jsonb USING metadata::jsonb;
+                    END IF;
+                END
+                $$
+            """);
+            executeSchemaStep("ALTER TABLE cv_embeddings ADD COLUMN IF NOT EXISTS document_id VARCHAR(64)");
+            // Rows indexed before document_id existed are addressed by their serial id, once
+            executeSchemaStep("UPDATE cv_embeddings SET document_id = id::text WHERE document_id IS NULL");
+
+            // Natural key (type, entity id) replaces the unique index on the full content
+            executeSchemaStep("ALTER TABLE cv_embeddings ADD COLUMN IF NOT EXISTS doc_type VARCHAR(20)");
+            executeSchemaStep("ALTER TABLE cv_embeddings ADD COLUMN IF NOT EXISTS entity_id BIGINT");
+            executeSchemaStep("""
+                UPDATE cv_embeddings SET
+                    doc_type = metadata->>'type',
+                    entity_id = CASE
+                        WHEN metadata->>'type' = 'cv' AND metadata->>'candidatId' ~ '^[0-9]+$'
+                            THEN (metadata->>'candidatId')::bigint
+                        WHEN metadata->>'type' = 'offre' AND metadata->>'offreId' ~ '^[0-9]+$'
+                            THEN (metadata->>'offreId')::bigint
+                    END
+                WHERE doc_type IS NULL
+            """);
+            // One row per chunk of an entity: (type, entity id, chunk number)
+            executeSchemaStep("ALTER TABLE cv_embeddings ADD COLUMN IF NOT EXISTS chunk_no INT NOT NULL DEFAULT 0");
+            // Keep only the latest vector of each chunk
+            executeSchemaStep("""
+                DELETE FROM cv_embeddings stale USING cv_embeddings latest
+                WHERE stale.doc_type = latest.doc_type AND stale.entity_id = latest.entity_id
+                    AND stale.chunk_no = latest.chunk_no AND stale.id < latest.id
+            """);
+            executeSchemaStep("ALTER TABLE cv_embeddings DROP CONSTRAINT IF EXISTS cv_embeddings_content_key");
+            executeSchemaStep("DROP INDEX IF EXISTS cv_embeddings_doc_key");
+
+            migrateToPartitions();
+
+            // Partitioned indexes (created on each partition): containment filters, document ids, natural key
+            executeSchemaStep("CREATE INDEX IF NOT EXISTS cv_embeddings_metadata_idx ON cv_embeddings USING GIN (metadata jsonb_path_ops)");
+            executeSchemaStep("CREATE INDEX IF NOT EXISTS cv_embeddings_document_id_idx ON cv_embeddings (document_id)");
+            executeSchemaStep("CREATE UNIQUE INDEX IF NOT EXISTS cv_embeddings_chunk_key ON cv_embeddings (doc_type, entity_id, chunk_no)");
+
+            checkDimension();
+
+            // ANN index of each typed partition
+            try {
+                schemaTransaction.executeWithoutResult(status -> vectorIndexService.ensureIndexes(jdbcTemplate, "cv_embeddings"));
+            } catch (Exception e) {
+                log.warn("Vector store index step failed: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Crée la table partitionnée et ses partitions. Une table créée avant le partitionnement est
+         * mise de côté (ses noms d'index sont libérés) puis copiée dans la table partitionnée.
+         * Tout se fait dans une seule transaction : en cas d'échec, l'ancienne table reste intacte
+         * et le démarrage est interrompu.
+         */
+        private void migrateToPartitions() {
+            try {
+                schemaTransaction.executeWithoutResult(status -> {
+                    jdbcTemplate.execute("""
+                        DO $$
+                        BEGIN
+                            IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'cv_embeddings' AND relkind = 'r') THEN
+                                DROP INDEX IF EXISTS cv_embeddings_metadata_idx, cv_embeddings_document_id_idx,
+                                    cv_embeddings_chunk_key, cv_embeddings_embedding_idx;
+                                ALTER TABLE cv_embeddings DROP CONSTRAINT IF EXISTS cv_embeddings_pkey;
+                                ALTER TABLE cv_embeddings RENAME TO cv_embeddings_unpartitioned;
+                            END IF;
+                        END
+                        $$
+                    """);
+                    jdbcTemplate.execute(CREATE_TABLE_SQL.formatted(dimension));
+                    for (String docType : VectorIndexService.PARTITIONED_TYPES) {
+                        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS "
+                            + VectorIndexService.partitionTable("cv_embeddings", docType)
+                            + " PARTITION OF cv_embeddings FOR VALUES IN ('" + docType + "')");
+                    }
+                    jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS cv_embeddings_autres PARTITION OF cv_embeddings DEFAULT");
+                    jdbcTemplate.execute("""
+                        DO $$
+                        BEGIN
+                            IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'cv_embeddings_unpartitioned' AND relkind = 'r') THEN
+                                INSERT INTO cv_embeddings (id, document_id, doc_type, entity_id, chunk_no, content, metadata, embedding)
+                                    SELECT id, document_id, doc_type, entity_id, chunk_no, content, metadata::jsonb, embedding
+                                    FROM cv_embeddings_unpartitioned;
+                                PERFORM setval(pg_get_serial_sequence('cv_embeddings', 'id'),
+                                    GREATEST((SELECT MAX(id) FROM cv_embeddings), 1));
+                                DROP TABLE cv_embeddings_unpartitioned;
+                            END IF;
+                        END
+                        $$
+                    """);
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException("Vector store partition migration failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Signale une colonne d'embeddings créée avec une autre dimension que celle configurée
+         * (changement de modèle d'embedding) : les insertions échoueraient jusqu'à sa migration.
+         */
+        private void checkDimension() {
+            try {
+                Integer existing = jdbcTemplate.query(
+                    "SELECT atttypmod FROM pg_attribute WHERE attrelid = 'cv_embeddings'::regclass AND attname = 'embedding'",
+                    rs -> rs.next() ? rs.getInt(1) : null);
+                if (existing != null && existing > 0 && existing != dimension) {
+                    log.warn("cv_embeddings.embedding has {} dimensions but {} are configured: "
+                        + "migrate the column and re-index the documents", existing, dimension);
+                }
+            } catch (Exception e) {
+                log.warn("Vector store dimension check failed: {}", e.getMessage());
+            }
+        }
+
+        private void executeSchemaStep(String sql) {
             try {
-                jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
-                jdbcTemplate.execute("""
-                    CREATE TABLE IF NOT EXISTS cv_embeddings (
-                        id SERIAL PRIMARY KEY,
-                        content TEXT,
-                        metadata JSON,
-                        embedding vector(1536),
-                        UNIQUE(content)
-                    )
-                """);
-                jdbcTemplate.execute("""
-                    CREATE INDEX IF NOT EXISTS cv_embeddings_embedding_idx
-                    ON cv_embeddings
-                    USING ivfflat (embedding vector_cosine_ops)
-                    WITH (lists = 100)
-                """);
+                // Committed step by step: pooled connections are not in auto-commit mode
+                schemaTransaction.executeWithoutResult(status -> jdbcTemplate.execute(sql));
             } catch (Exception e) {
-                // Table might already exist
+                log.warn("Vector store schema step failed: {}", e.getMessage());
             }
         }
 
         @Override
         @Transactional
         public void add(List<Document> documents) {
-            for (Document document : documents) {
-                // Generate embedding
-                float[] embedding = embeddingModel.embed(document.getContent());
-
-                // Convert to PostgreSQL vector format
-                StringBuilder vectorStr = new StringBuilder("[");
-                for (int i = 0; i < embedding.length; i++) {
-                    if (i > 0) vectorStr.append(",");
-                    vectorStr.append(embedding[i]);
-                }
-                vectorStr.append("]");
-
-                // Build metadata JSON
-                StringBuilder metadataJson = new StringBuilder("{");
-                boolean first = true;
-                for (Map.Entry<String, Object> entry : document.getMetadata().entrySet()) {
-                    if (!first) metadataJson.append(",");
-                    first = false;
-                    metadataJson.append("\"").append(entry.getKey()).append("\":");
-                    Object value = entry.getValue();
-                    if (value instanceof String) {
-                        metadataJson.append("\"").append(value).append("\"");
-                    } else {
-                        metadataJson.append(value);
-                    }
+            List<List<Document>> batches = EmbeddingBatches.plan(documents, embeddingBatchSize, embeddingBatchMaxChars);
+            for (List<Document> batch : batches) {
+                // One embedding call for the texts of the batch missing from the cache (results in input order)
+                List<float[]> embeddings = embeddingCacheService.embed(
+                    batch.stream().map(Document::getContent).toList(), embeddingModel::embed);
+                if (embeddings.size() != batch.size()) {
+                    throw new IllegalStateException("Embedding model returned " + embeddings.size()
+                        + " vectors for " + batch.size() + " documents");
                 }
-                metadataJson.append("}");
 
-                // Insert - delete existing if any (simpler than ON CONFLICT)
-                int deleted = jdbcTemplate.update("DELETE FROM cv_embeddings WHERE content = ?", document.getContent());
-                int inserted = jdbcTemplate.update(
-                    "INSERT INTO cv_embeddings (content, metadata, embedding) VALUES (?::text, ?::json, ?::vector)",
-                    document.getContent(),
-                    metadataJson.toString(),
-                    vectorStr.toString()
-                );
-                log.info("Inserted document: deleted={}, inserted=1, type={}, id={}",
-                    deleted, document.getMetadata().get("type"), document.getId());
+                // Upsert on the (type, entity id, chunk) natural key: the previous vector of the chunk
+                // is replaced atomically, as JDBC batches
+                withBinaryVectors(jdbc -> jdbc.batchUpdate("""
+                    INSERT INTO cv_embeddings (document_id, doc_type, entity_id, chunk_no, content, metadata, embedding)
+                    VALUES (?, ?, ?, ?, ?::text, ?::jsonb, ?)
+                    ON CONFLICT (doc_type, entity_id, chunk_no) DO UPDATE SET
+                        document_id = EXCLUDED.document_id,
+                        content = EXCLUDED.content,
+                        metadata = EXCLUDED.metadata,
+                        embedding = EXCLUDED.embedding
+                    """,
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            Document document = batch.get(i);
+                            String type = (String) document.getMetadata().get("type");
+                            ps.setString(1, document.getId());
+                            ps.setString(2, type);
+                            ps.setObject(3, entityId(type, document.getMetadata()), java.sql.Types.BIGINT);
+                            ps.setInt(4, chunkNo(document.getMetadata()));
+                            ps.setString(5, document.getContent());
+                            ps.setString(6, toMetadataJson(document.getMetadata()));
+                            ps.setObject(7, new BinaryVector(embeddings.get(i)));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return batch.size();
+                        }
+                    }));
+                log.debug("Upserted {} document(s), types={}", batch.size(),
+                    batch.stream().map(document -> document.getMetadata().get("type")).distinct().toList());
+            }
+        }
+
+        /**
+         * Extrait l'ID de l'entité indexée (candidat ou offre) des métadonnées.
+         * Un document sans entité identifiable n'a pas de clé naturelle et est simplement inséré.
+         */
+        private static Long entityId(String type, Map<String, Object> metadata) {
+            Object id = "cv".equals(type) ? metadata.get("candidatId")
+                : "offre".equals(type) ? metadata.get("offreId") : null;
+            if (id == null) {
+                return null;
+            }
+            try {
+                return Long.valueOf(id.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Numéro du segment d'un document découpé (0 pour un document entier).
+         */
+        private static int chunkNo(Map<String, Object> metadata) {
+            Object chunk = metadata.get("chunk");
+            if (chunk == null) {
+                return 0;
+            }
+            try {
+                return Integer.parseInt(chunk.toString());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * Sérialise les métadonnées d'un document en JSON.
+         */
+        private static String toMetadataJson(Map<String, Object> metadata) throws SQLException {
+            try {
+                return METADATA_MAPPER.writeValueAsString(metadata);
+            } catch (JsonProcessingException e) {
+                throw new SQLException("Métadonnées non sérialisables en JSON", e);
             }
         }
 
         @Override
         @Transactional
         public java.util.Optional<Boolean> delete(List<String> idList) {
-            for (String id : idList) {
-                jdbcTemplate.update("DELETE FROM cv_embeddings WHERE id = ?", Integer.parseInt(id));
+            if (idList.isEmpty()) {
+                return java.util.Optional.of(true);
             }
+            jdbcTemplate.batchUpdate("DELETE FROM cv_embeddings WHERE document_id = ?",
+                idList.stream().map(id -> new Object[] {id}).toList());
             return java.util.Optional.of(true);
         }
 
         @Override
+        @Transactional
+        public void deleteChunksFrom(String docType, Map<Long, Integer> firstStaleChunks) {
+            if (firstStaleChunks.isEmpty()) {
+                return;
+            }
+            // One range delete per entity on the (type, entity id, chunk) key, in the type's partition only
+            jdbcTemplate.batchUpdate("DELETE FROM cv_embeddings WHERE doc_type = ? AND entity_id = ? AND chunk_no >= ?",
+                firstStaleChunks.entrySet().stream()
+                    .map(entry -> new Object[] {docType, entry.getKey(), entry.getValue()})
+                    .toList());
+        }
+
+        @Override
+        @Transactional(readOnly = true)
         public List<Document> similaritySearch(SearchRequest request) {
-            // Generate embedding for the query
-            float[] embedding = embeddingModel.embed(request.getQuery());
+            // Generate embedding for the query (or reuse the cached one)
+            float[] embedding = embeddingCacheService.embed(List.of(request.getQuery()), embeddingModel::embed).get(0);
+
+            // Bound as a binary vector parameter, encoded from the primitive array
+            return search("?", new BinaryVector(embedding), request);
+        }
+
+        @Override
+        @Transactional(readOnly = true)
+        public List<Document> similaritySearchByDocumentId(String documentId, SearchRequest request) {
+            // Only a missing reference row falls back to embedding the query text: an empty result
+            // of a selective filter is a valid answer and must not cost an embedding call
+            Boolean stored = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM cv_embeddings WHERE document_id = ?)", Boolean.class, documentId);
+            if (!Boolean.TRUE.equals(stored)) {
+                log.debug("No stored embedding for document {}, embedding the query text", documentId);
+                return similaritySearch(request);
+            }
+            // The reference embedding is read in Postgres: no embedding call, no vector transfer
+            return search("(SELECT embedding FROM cv_embeddings WHERE document_id = ? LIMIT 1)", documentId, request);
+        }
+
+        /**
+         * Recherche les documents les plus proches d'un vecteur de requête.
+         *
+         * @param queryVectorSql l'expression SQL du vecteur de requête (un seul paramètre)
+         * @param queryVectorParam le paramètre de cette expression
+         * @param request la requête (topK et filtre de métadonnées)
+         * @return les documents, par distance croissante
+         */
+        private List<Document> search(String queryVectorSql, Object queryVectorParam, SearchRequest request) {
+            // Truncated/quantized index: candidates are picked on the compact copy, then re-ranked with the full vector
+            boolean rerank = vectorIndexService.isTwoTier();
+            int candidates = rerank ? vectorIndexService.candidateCount(request.getTopK()) : request.getTopK();
+
+            List<Object> params = new java.util.ArrayList<>();
+            params.add(queryVectorParam);
 
-            // Convert to PostgreSQL vector format
-            StringBuilder vectorStr = new StringBuilder("[");
-            for (int i = 0; i < embedding.length; i++) {
-                if (i > 0) vectorStr.append(",");
-                vectorStr.append(embedding[i]);
+            // Push the metadata filter into SQL so that the top-K only holds usable rows
+            List<String> conditions = new java.util.ArrayList<>();
+            if (request.hasFilterExpression()) {
+                MetadataFilterSqlConverter.SqlFilter filter = MetadataFilterSqlConverter.convert(request.getFilterExpression());
+                conditions.add(filter.sql());
+                params.addAll(filter.params());
             }
-            vectorStr.append("]");
+            String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+
+            // Filter pinned to one document type: only its partition (and its ANN index) is searched
+            String docType = request.hasFilterExpression()
+                ? MetadataFilterSqlConverter.pinnedValue(request.getFilterExpression(), "type") : null;
+            String table = VectorIndexService.partitionTable("cv_embeddings", docType);
+            if (rerank) {
+                // Inner ORDER BY on the indexed copy, then its candidate LIMIT
+                params.add(queryVectorParam);
+                params.add(candidates);
+            }
+            params.add(request.getTopK());
+
+
+            String projection = "document_id AS id, content,"
+                + " metadata->>'type' AS meta_type, metadata->>'candidatId' AS meta_candidat_id,"
+                + " metadata->>'offreId' AS meta_offre_id";
+            String sql = rerank
+                ? "SELECT id, content, meta_type, meta_candidat_id, meta_offre_id, embedding <=> " + queryVectorSql
+                    + " AS distance FROM (SELECT " + projection + ", embedding FROM " + table + where
+                    + " ORDER BY " + vectorIndexService.indexedDistanceSql(queryVectorSql) + " LIMIT ?) candidates"
+                    + " ORDER BY distance LIMIT ?"
+                : "SELECT " + projection + ", embedding <=> " + queryVectorSql + " AS distance FROM " + table
+                    + where + " ORDER BY distance LIMIT ?";
 
             // Search for similar documents
-            List<Document> results = jdbcTemplate.query(
-                "SELECT *, embedding <=> ?::vector AS distance FROM cv_embeddings ORDER BY distance LIMIT ?",
-                rs -> {
-                    List<Document> docs = new java.util.ArrayList<>();
-                    while (rs.next()) {
-                        Map<String, Object> metadata = new java.util.HashMap<>();
-                        String metadataJson = rs.getString("metadata");
-                        log.info("Raw metadata JSON: {}", metadataJson);
-                        if (metadataJson != null && !metadataJson.equals("null")) {
-                            // Simple JSON parsing (you might want to use a proper JSON library)
-                            metadata.put("raw_metadata", metadataJson);
-                            // Parse type if available
-                            if (metadataJson.contains("\"type\"")) {
-                                String type = metadataJson.replaceAll(".*\"type\"\\s*:\\s*\"([^\"]+)\".*", "$1");
-                                metadata.put("type", type);
-                            }
-                            if (metadataJson.contains("\"candidatId\"")) {
-                                String candidatId = metadataJson.replaceAll(".*\"candidatId\"\\s*:\\s*\"([^\"]+)\".*", "$1");
-                                metadata.put("candidatId", candidatId);
-                            }
-                            if (metadataJson.contains("\"offreId\"")) {
-                                String offreId = metadataJson.replaceAll(".*\"offreId\"\\s*:\\s*\"([^\"]+)\".*", "$1");
-                                metadata.put("offreId", offreId);
-                            }
+            return withBinaryVectors(jdbc -> {
+                // Recall/latency knobs of the ANN index, local to the current transaction
+                vectorIndexService.applySearchSettings(jdbc, table, candidates);
+                return jdbc.query(
+                    sql,
+                    rs -> {
+                        List<Document> docs = new java.util.ArrayList<>();
+                        while (rs.next()) {
+                            // Keys are projected by Postgres: no JSON parsing on this side
+                            Map<String, Object> metadata = new java.util.HashMap<>();
+                            putIfPresent(metadata, "type", rs.getString("meta_type"));
+                            putIfPresent(metadata, "candidatId", rs.getString("meta_candidat_id"));
+                            putIfPresent(metadata, "offreId", rs.getString("meta_offre_id"));
+                            metadata.put("distance", rs.getFloat("distance"));
+                            docs.add(new Document(rs.getString("id"), rs.getString("content"), metadata));
                         }
-                        Document doc = new Document(rs.getString("id"), rs.getString("content"), metadata);
-                        log.debug("Parsed document: id={}, type={}, metadata={}",
-                            doc.getId(), metadata.get("type"), metadata);
-                        docs.add(doc);
-                    }
-                    log.info("SimilaritySearch returned {} results (with types: {})",
-                        docs.size(), docs.stream().map(d -> d.getMetadata().get("type")).toList());
-                    return docs;
-                },
-                vectorStr.toString(),
-                request.getTopK()
-            );
-            return results;
+                        log.debug("SimilaritySearch returned {} results (with types: {})",
+                            docs.size(), docs.stream().map(d -> d.getMetadata().get("type")).toList());
+                        return docs;
+                    },
+                    params.toArray());
+            });
+        }
+
+        /**
+         * Exécute des requêtes sur une même connexion, avec le transfert binaire des vecteurs activé :
+         * connexion de la transaction en cours, ou connexion empruntée au pool pour la durée de l'appel.
+         */
+        private <T> T withBinaryVectors(Function<JdbcTemplate, T> work) {
+            return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+                BinaryVector.enableBinaryTransfer(connection);
+                return work.apply(new JdbcTemplate(new SingleConnectionDataSource(connection, true)));
+            });
+        }
+
+        private static void putIfPresent(Map<String, Object> metadata, String key, String value) {
+            if (value != null) {
+                metadata.put(key, value);
+            }
         }
 
         // Other required methods
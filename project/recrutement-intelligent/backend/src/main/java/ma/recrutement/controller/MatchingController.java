@@ -3,11 +3,24 @@ package ma.recrutement.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import ma.recrutement.dto.MatchingJobDTO;
 import ma.recrutement.dto.MatchingResultDTO;
+import ma.recrutement.dto.PaginationResponseDTO;
+import ma.recrutement.dto.ReindexRunDTO;
+import ma.recrutement.entity.ReindexRun.ModeReindex;
+import ma.recrutement.service.CandidatService;
+import ma.recrutement.service.ai.IndexOutboxService;
 import ma.recrutement.service.ai.MatchingEngineService;
+import ma.recrutement.service.ai.MatchingJobService;
+import ma.recrutement.service.ai.MatchingStreamService;
+import ma.recrutement.service.ai.ReindexService;
+import ma.recrutement.service.ai.VectorIndexService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +40,12 @@ import java.util.Map;
 public class MatchingController {
 
     private final MatchingEngineService matchingEngineService;
+    private final MatchingStreamService matchingStreamService;
+    private final MatchingJobService matchingJobService;
+    private final VectorIndexService vectorIndexService;
+    private final ReindexService reindexService;
+    private final IndexOutboxService indexOutboxService;
+    private final CandidatService candidatService;
 
     /**
      * Trouve les candidats correspondants pour une offre.
@@ -48,32 +67,172 @@ public class MatchingController {
     }
 
     /**
-     * Indexe le CV du candidat connecté pour le matching AI.
+     * Diffuse en continu (SSE) les candidats correspondants pour une offre.
+     * Événements : "shortlist" (présélection), "match" (chaque analyse terminée),
+     * "summary" (classement final) ou "error".
      *
-     * @return confirmation de l'indexation
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre maximum de résultats (défaut 10)
+     * @return le flux d'événements
+     */
+    @Operation(summary = "Candidats pour une offre (flux)", description = "Diffuse les résultats de matching au fil des analyses IA (Recruteurs/Admins uniquement)")
+    @GetMapping(value = "/offres/{offreId}/candidats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('RECRUTEUR', 'ADMINISTRATEUR')")
+    public SseEmitter streamMatchingCandidates(
+            @PathVariable Long offreId,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return matchingStreamService.streamMatchingCandidates(offreId, limit);
+    }
+
+    /**
+     * Démarre un job de matching asynchrone pour une offre.
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre maximum de résultats (défaut 10)
+     * @return l'état initial du job (à suivre via son ID)
+     */
+    @Operation(summary = "Démarrer un job de matching", description = "Lance le matching d'une offre en arrière-plan et retourne l'ID du job")
+    @PostMapping("/offres/{offreId}/jobs")
+    @PreAuthorize("hasAnyRole('RECRUTEUR', 'ADMINISTRATEUR')")
+    public ResponseEntity<MatchingJobDTO> createMatchingJob(
+            @PathVariable Long offreId,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        MatchingJobDTO job = matchingJobService.createJob(offreId, limit);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Récupère l'état et la progression d'un job de matching.
+     *
+     * @param jobId l'ID du job
+     * @return l'état du job
+     */
+    @Operation(summary = "État d'un job de matching", description = "Retourne le statut et la progression (traités/total) d'un job")
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasAnyRole('RECRUTEUR', 'ADMINISTRATEUR')")
+    public ResponseEntity<MatchingJobDTO> getMatchingJob(@PathVariable Long jobId) {
+        return ResponseEntity.ok(matchingJobService.getJob(jobId));
+    }
+
+    /**
+     * Récupère les résultats paginés d'un job de matching terminé.
+     *
+     * @param jobId l'ID du job
+     * @param page le numéro de page (défaut 0)
+     * @param size la taille de page (défaut 10)
+     * @return la page de résultats
+     */
+    @Operation(summary = "Résultats d'un job de matching", description = "Retourne les résultats paginés d'un job terminé")
+    @GetMapping("/jobs/{jobId}/resultats")
+    @PreAuthorize("hasAnyRole('RECRUTEUR', 'ADMINISTRATEUR')")
+    public ResponseEntity<PaginationResponseDTO<MatchingResultDTO>> getMatchingJobResultats(
+            @PathVariable Long jobId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        return ResponseEntity.ok(matchingJobService.getResultats(jobId, page, size));
+    }
+
+    /**
+     * Demande l'indexation du CV du candidat connecté pour le matching AI.
+     * Les demandes répétées dans la fenêtre de regroupement ne produisent qu'une indexation.
+     *
+     * @return confirmation de la prise en compte
      */
-    @Operation(summary = "Indexer mon CV", description = "Indexe le CV du candidat dans le vector store pour le matching AI")
+    @Operation(summary = "Indexer mon CV", description = "Planifie l'indexation du CV du candidat dans le vector store pour le matching AI")
     @PostMapping("/cv/indexer")
     public ResponseEntity<Map<String, String>> indexMyCv() {
-        matchingEngineService.indexMyCv();
+        candidatService.indexMyCv();
         Map<String, String> response = new HashMap<>();
-        response.put("message", "CV indexé avec succès pour le matching AI");
-        return ResponseEntity.ok(response);
+        response.put("message", "Indexation du CV planifiée pour le matching AI");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
     }
 
     /**
-     * Indexe une offre d'emploi pour le matching AI.
+     * Demande l'indexation d'une offre d'emploi pour le matching AI.
+     * Les demandes répétées dans la fenêtre de regroupement ne produisent qu'une indexation.
      *
      * @param offreId l'ID de l'offre
-     * @return confirmation de l'indexation
+     * @return confirmation de la prise en compte
      */
-    @Operation(summary = "Indexer une offre", description = "Indexe une offre dans le vector store pour le matching AI")
+    @Operation(summary = "Indexer une offre", description = "Planifie l'indexation d'une offre dans le vector store pour le matching AI")
     @PostMapping("/offres/{offreId}/indexer")
     @PreAuthorize("hasAnyRole('RECRUTEUR', 'ADMINISTRATEUR')")
     public ResponseEntity<Map<String, String>> indexOffre(@PathVariable Long offreId) {
-        matchingEngineService.indexOffre(offreId);
+        indexOutboxService.enqueueOffre(offreId);
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Indexation de l'offre planifiée pour le matching AI");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * Reconstruit l'index vectoriel des embeddings (un index par partition CV / offre) sans bloquer les écritures.
+     * Accessible uniquement par les administrateurs.
+     *
+     * @return description de l'index reconstruit
+     */
+    @Operation(summary = "Reconstruire l'index vectoriel", description = "Reconstruit l'index ANN (HNSW/IVFFLAT) des embeddings en CONCURRENTLY (Admins uniquement)")
+    @PostMapping("/admin/index/rebuild")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<Map<String, String>> rebuildVectorIndex() {
+        String index = vectorIndexService.rebuildIndexes("cv_embeddings");
         Map<String, String> response = new HashMap<>();
-        response.put("message", "Offre indexée avec succès pour le matching AI");
+        response.put("message", "Index vectoriel reconstruit avec succès");
+        response.put("index", index);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Démarre une ré-indexation en masse des CV et des offres, avec reprise sur point de contrôle.
+     * Accessible uniquement par les administrateurs.
+     *
+     * @param mode MANQUANTS (entités sans vecteur, défaut) ou COMPLET (après un changement de modèle ou de schéma)
+     * @return l'état initial de la ré-indexation (à suivre via son ID)
+     */
+    @Operation(summary = "Démarrer une ré-indexation", description = "Ré-indexe en arrière-plan les CV et offres manquants ou tous (Admins uniquement)")
+    @PostMapping("/admin/reindex")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<ReindexRunDTO> startReindex(@RequestParam(defaultValue = "MANQUANTS") ModeReindex mode) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reindexService.demarrer(mode));
+    }
+
+    /**
+     * Liste les ré-indexations les plus récentes.
+     *
+     * @return les ré-indexations, de la plus récente à la plus ancienne
+     */
+    @Operation(summary = "Ré-indexations", description = "Liste les ré-indexations récentes et leur progression (Admins uniquement)")
+    @GetMapping("/admin/reindex")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<List<ReindexRunDTO>> getReindexRuns() {
+        return ResponseEntity.ok(reindexService.getRuns());
+    }
+
+    /**
+     * Récupère l'état et la progression d'une ré-indexation.
+     *
+     * @param runId l'ID de la ré-indexation
+     * @return l'état de la ré-indexation
+     */
+    @Operation(summary = "État d'une ré-indexation", description = "Retourne le statut et la progression d'une ré-indexation (Admins uniquement)")
+    @GetMapping("/admin/reindex/{runId}")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<ReindexRunDTO> getReindexRun(@PathVariable Long runId) {
+        return ResponseEntity.ok(reindexService.getRun(runId));
+    }
+
+    /**
+     * Relance une ré-indexation en échec à partir de son dernier point de contrôle.
+     *
+     * @param runId l'ID de la ré-indexation
+     * @return l'état de la ré-indexation
+     */
+    @Operation(summary = "Reprendre une ré-indexation", description = "Relance une ré-indexation en échec depuis son point de contrôle (Admins uniquement)")
+    @PostMapping("/admin/reindex/{runId}/reprendre")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<ReindexRunDTO> resumeReindex(@PathVariable Long runId) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reindexService.reprendre(runId));
+    }
 }
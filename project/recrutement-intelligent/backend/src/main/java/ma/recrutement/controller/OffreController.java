@@ -6,6 +6,7 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import ma.recrutement.dto.OffreCreateDTO;
 import ma.recrutement.dto.OffreEmploiDTO;
+import ma.recrutement.dto.OffreSearchResultDTO;
 import ma.recrutement.dto.PaginationResponseDTO;
 import ma.recrutement.service.OffreEmploiService;
 import org.springframework.http.HttpStatus;
@@ -111,4 +112,23 @@ public class OffreController {
         PaginationResponseDTO<OffreEmploiDTO> result = offreEmploiService.searchOffres(page, size, titre, localisation);
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * Recherche plein texte des offres publiées, classée par pertinence.
+     *
+     * @param q le texte recherché (syntaxe web : "expression", OR, -exclusion)
+     * @param page le numéro de page (défaut 0)
+     * @param size la taille de la page (défaut 10)
+     * @return les résultats paginés avec score et extraits surlignés
+     */
+    @Operation(summary = "Recherche plein texte", description = "Recherche classée par pertinence dans le titre, les compétences, la description et la localisation des offres")
+    @GetMapping("/recherche")
+    public ResponseEntity<PaginationResponseDTO<OffreSearchResultDTO>> rechercherPleinTexte(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        PaginationResponseDTO<OffreSearchResultDTO> result = offreEmploiService.rechercherPleinTexte(q, page, size);
+        return ResponseEntity.ok(result);
+    }
 }
@@ -0,0 +1,34 @@
+package ma.recrutement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO pour l'état d'un job de matching asynchrone.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchingJobDTO {
+
+    private Long id;
+    private Long offreId;
+    private Integer limite;
+    private String statut;
+    private Integer total;
+    private Integer traites;
+    private Integer progression;
+    private Integer nombreResultats;
+    private String messageErreur;
+    private LocalDateTime dateCreation;
+    private LocalDateTime dateDebut;
+    private LocalDateTime dateFin;
+}
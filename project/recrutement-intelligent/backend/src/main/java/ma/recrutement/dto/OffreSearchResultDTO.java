@@ -0,0 +1,25 @@
+package ma.recrutement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO pour un résultat de recherche plein texte sur les offres.
+ * Les fragments surlignés sont du HTML échappé où seuls les termes trouvés sont encadrés par &lt;mark&gt;.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OffreSearchResultDTO {
+
+    private OffreEmploiDTO offre;
+    private Double score;
+    private String titreSurligne;
+    private String extrait;
+}
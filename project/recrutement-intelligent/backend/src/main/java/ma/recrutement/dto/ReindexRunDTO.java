@@ -0,0 +1,35 @@
+package ma.recrutement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO pour l'état d'une ré-indexation en masse du vector store.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexRunDTO {
+
+    private Long id;
+    private String mode;
+    private String statut;
+    private Long totalCandidats;
+    private Long candidatsTraites;
+    private Long totalOffres;
+    private Long offresTraitees;
+    private Integer progression;
+    private String messageErreur;
+    private String creePar;
+    private LocalDateTime dateCreation;
+    private LocalDateTime dateDebut;
+    private LocalDateTime dateFin;
+}
@@ -0,0 +1,79 @@
+package ma.recrutement.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant une demande d'indexation (CV ou offre) en attente dans l'outbox.
+ * La demande est écrite dans la transaction qui modifie l'entité : elle n'existe que si
+ * la modification est validée, et survit à un arrêt de l'application jusqu'à son traitement.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Entity
+@Table(name = "index_outbox", indexes = {
+    @Index(name = "idx_index_outbox_statut", columnList = "statut, prochaine_tentative")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class IndexOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type_entite", nullable = false, length = 20)
+    private TypeEntite typeEntite;
+
+    @Column(name = "entite_id", nullable = false)
+    private Long entiteId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    @Builder.Default
+    private StatutOutbox statut = StatutOutbox.EN_ATTENTE;
+
+    @Column(name = "tentatives", nullable = false)
+    @Builder.Default
+    private Integer tentatives = 0;
+
+    @Column(name = "prochaine_tentative", nullable = false)
+    private LocalDateTime prochaineTentative;
+
+    @Column(name = "message_erreur", length = 1000)
+    private String messageErreur;
+
+    @CreationTimestamp
+    @Column(name = "date_creation", nullable = false, updatable = false)
+    private LocalDateTime dateCreation;
+
+    @Column(name = "date_reservation")
+    private LocalDateTime dateReservation;
+
+    /**
+     * Enumération des types d'entités indexées
+     */
+    public enum TypeEntite {
+        CV,
+        OFFRE
+    }
+
+    /**
+     * Enumération des statuts d'une demande d'indexation
+     */
+    public enum StatutOutbox {
+        EN_ATTENTE,
+        EN_COURS,
+        ECHEC
+    }
+}
@@ -0,0 +1,98 @@
+package ma.recrutement.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Résultat d'analyse IA mémorisé pour un couple offre/candidat.
+ * L'empreinte des entrées du prompt permet d'invalider le résultat dès que
+ * l'offre ou le profil du candidat change.
+ * Le score final pondéré est également stocké : la table constitue la matrice
+ * de matching pré-calculée lue directement par les recherches de top-K.
+ * L'appartenance au top-K est portée par un indicateur par sens (offre et candidat) :
+ * chaque recalcul ne modifie que son propre indicateur, et une analyse sortie des
+ * deux classements reste disponible comme cache.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Entity
+@Table(name = "match_results",
+    uniqueConstraints = @UniqueConstraint(name = "uk_match_result_offre_candidat", columnNames = {"offre_id", "candidat_id"}),
+    indexes = {
+        @Index(name = "idx_match_result_candidat", columnList = "candidat_id"),
+        @Index(name = "idx_match_result_offre_score", columnList = "offre_id, score_matching"),
+        @Index(name = "idx_match_result_candidat_score", columnList = "candidat_id, score_matching")
+    })
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class MatchResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "offre_id", nullable = false)
+    private Long offreId;
+
+    @Column(name = "candidat_id", nullable = false)
+    private Long candidatId;
+
+    @Column(name = "empreinte", nullable = false, length = 64)
+    private String empreinte;
+
+    @Column(name = "score_matching")
+    private Integer scoreMatching;
+
+    @Column(name = "score_localisation")
+    private Integer scoreLocalisation;
+
+    @Column(name = "score_competences")
+    private Integer scoreCompetences;
+
+    @Column(name = "score_experience")
+    private Integer scoreExperience;
+
+    @Column(name = "score_formation")
+    private Integer scoreFormation;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "competences_match")
+    @Builder.Default
+    private List<String> competencesMatch = new ArrayList<>();
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "competences_manquantes")
+    @Builder.Default
+    private List<String> competencesManquantes = new ArrayList<>();
+
+    @Column(name = "recommendation", columnDefinition = "TEXT")
+    private String recommendation;
+
+    @ColumnDefault("false")
+    @Column(name = "top_offre", nullable = false)
+    @Builder.Default
+    private Boolean topOffre = false;
+
+    @ColumnDefault("false")
+    @Column(name = "top_candidat", nullable = false)
+    @Builder.Default
+    private Boolean topCandidat = false;
+
+    @UpdateTimestamp
+    @Column(name = "date_analyse")
+    private LocalDateTime dateAnalyse;
+}
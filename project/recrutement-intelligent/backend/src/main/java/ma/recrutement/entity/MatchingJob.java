@@ -0,0 +1,107 @@
+package ma.recrutement.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import ma.recrutement.dto.MatchingResultDTO;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entité représentant un job de matching asynchrone (candidats pour une offre).
+ * Le job est persisté dès sa création : il survit à la déconnexion du client.
+ * Pendant l'exécution, l'instance qui le traite renouvelle son bail ({@code date_heartbeat}) :
+ * un job dont le bail a expiré (instance arrêtée) est remis en attente et relancé.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Entity
+@Table(name = "matching_jobs", indexes = {
+    @Index(name = "idx_matching_job_statut", columnList = "statut"),
+    @Index(name = "idx_matching_job_offre", columnList = "offre_id")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "resultats")
+public class MatchingJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "offre_id", nullable = false)
+    private Long offreId;
+
+    @Column(name = "limite", nullable = false)
+    private Integer limite;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    @Builder.Default
+    private StatutJob statut = StatutJob.EN_ATTENTE;
+
+    @Column(name = "total")
+    @Builder.Default
+    private Integer total = 0;
+
+    @Column(name = "traites")
+    @Builder.Default
+    private Integer traites = 0;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "resultats")
+    @Builder.Default
+    private List<MatchingResultDTO> resultats = new ArrayList<>();
+
+    @Column(name = "message_erreur", length = 1000)
+    private String messageErreur;
+
+    @Column(name = "cree_par", length = 100)
+    private String creePar;
+
+    @CreationTimestamp
+    @Column(name = "date_creation", nullable = false, updatable = false)
+    private LocalDateTime dateCreation;
+
+    @Column(name = "date_debut")
+    private LocalDateTime dateDebut;
+
+    @Column(name = "date_fin")
+    private LocalDateTime dateFin;
+
+    @Column(name = "date_heartbeat")
+    private LocalDateTime dateHeartbeat;
+
+    @UpdateTimestamp
+    @Column(name = "date_modification")
+    private LocalDateTime dateModification;
+
+    /**
+     * Enumération des statuts possibles d'un job de matching
+     */
+    public enum StatutJob {
+        EN_ATTENTE,
+        EN_COURS,
+        TERMINE,
+        ECHEC
+    }
+
+    /**
+     * Indique si le job est terminé (avec succès ou en échec)
+     *
+     * @return true si le job ne sera plus exécuté
+     */
+    public boolean isFini() {
+        return statut == StatutJob.TERMINE || statut == StatutJob.ECHEC;
+    }
+}
@@ -44,16 +44,13 @@ public class OffreEmploi {
     @Column(name = "reference", unique = true, length = 50)
     private String reference;
 
-    @Lob
-    @Column(name = "description", nullable = false)
+    @Column(name = "description", nullable = false, columnDefinition = "TEXT")
     private String description;
 
-    @Lob
-    @Column(name = "competences_requises")
+    @Column(name = "competences_requises", columnDefinition = "TEXT")
     private String competencesRequises;
 
-    @Lob
-    @Column(name = "profil_recherche")
+    @Column(name = "profil_recherche", columnDefinition = "TEXT")
     private String profilRecherche;
 
     @Column(name = "salaire_min")
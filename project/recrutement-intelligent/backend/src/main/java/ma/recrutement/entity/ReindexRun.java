@@ -0,0 +1,111 @@
+package ma.recrutement.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant une ré-indexation en masse du vector store (CV puis offres).
+ * Le dernier ID traité de chaque type est enregistré après chaque lot validé :
+ * une ré-indexation interrompue reprend à ce point de contrôle. Pendant l'exécution, l'instance qui la traite
+ * renouvelle son bail ({@code date_heartbeat}) : seule une ré-indexation dont le bail a expiré est reprise.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Entity
+@Table(name = "reindex_runs", indexes = {
+    @Index(name = "idx_reindex_run_statut", columnList = "statut")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ReindexRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "mode", nullable = false, length = 20)
+    private ModeReindex mode;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    @Builder.Default
+    private StatutReindex statut = StatutReindex.EN_ATTENTE;
+
+    @Column(name = "total_candidats")
+    @Builder.Default
+    private Long totalCandidats = 0L;
+
+    @Column(name = "candidats_traites")
+    @Builder.Default
+    private Long candidatsTraites = 0L;
+
+    @Column(name = "dernier_candidat_id")
+    @Builder.Default
+    private Long dernierCandidatId = 0L;
+
+    @Column(name = "total_offres")
+    @Builder.Default
+    private Long totalOffres = 0L;
+
+    @Column(name = "offres_traitees")
+    @Builder.Default
+    private Long offresTraitees = 0L;
+
+    @Column(name = "dernier_offre_id")
+    @Builder.Default
+    private Long dernierOffreId = 0L;
+
+    @Column(name = "message_erreur", length = 1000)
+    private String messageErreur;
+
+    @Column(name = "cree_par", length = 100)
+    private String creePar;
+
+    @CreationTimestamp
+    @Column(name = "date_creation", nullable = false, updatable = false)
+    private LocalDateTime dateCreation;
+
+    @Column(name = "date_debut")
+    private LocalDateTime dateDebut;
+
+    @Column(name = "date_fin")
+    private LocalDateTime dateFin;
+
+    @Column(name = "date_heartbeat")
+    private LocalDateTime dateHeartbeat;
+
+    @UpdateTimestamp
+    @Column(name = "date_modification")
+    private LocalDateTime dateModification;
+
+    /**
+     * Enumération des modes de ré-indexation
+     */
+    public enum ModeReindex {
+        /** Seuls les CV et offres sans vecteur sont indexés */
+        MANQUANTS,
+        /** Tous les CV et offres sont ré-indexés (changement de modèle ou de schéma) */
+        COMPLET
+    }
+
+    /**
+     * Enumération des statuts possibles d'une ré-indexation
+     */
+    public enum StatutReindex {
+        EN_ATTENTE,
+        EN_COURS,
+        TERMINE,
+        ECHEC
+    }
+}
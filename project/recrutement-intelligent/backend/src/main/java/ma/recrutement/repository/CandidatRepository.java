@@ -2,6 +2,8 @@ package ma.recrutement.repository;
 
 import ma.recrutement.entity.Candidat;
 import ma.recrutement.entity.Competence;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -9,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -122,12 +125,40 @@ public interface CandidatRepository extends JpaRepository<Candidat, Long>, JpaSp
     List<Candidat> recherchePleinText(@Param("terme") String terme);
 
     /**
-     * Trouve les candidats qui n'ont pas de CV indexé dans le vector store.
+     * Trouve, par pagination sur clé, les IDs des candidats qui n'ont pas de CV indexé dans le vector store.
      *
-     * @return la liste des candidats sans CV indexé
+     * @param afterId l'ID après lequel reprendre (0 pour commencer)
+     * @param pageable la taille de page
+     * @return les IDs des candidats sans CV indexé, par ID croissant
      */
-    @Query("SELECT c FROM Candidat c WHERE c.cvText IS NOT NULL AND c.cvVectorId IS NULL")
-    List<Candidat> findCandidatsWithCvTextButNoVectorId();
+    @Query("SELECT c.id FROM Candidat c WHERE c.id > :afterId AND c.cvText IS NOT NULL AND c.cvVectorId IS NULL ORDER BY c.id")
+    List<Long> findCandidatsWithCvTextButNoVectorId(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Compte les candidats qui n'ont pas de CV indexé dans le vector store.
+     *
+     * @return le nombre de candidats sans CV indexé
+     */
+    @Query("SELECT COUNT(c) FROM Candidat c WHERE c.cvText IS NOT NULL AND c.cvVectorId IS NULL")
+    long countCandidatsWithCvTextButNoVectorId();
+
+    /**
+     * Trouve, par pagination sur clé, les IDs des candidats ayant un texte de CV (ré-indexation complète).
+     *
+     * @param afterId l'ID après lequel reprendre (0 pour commencer)
+     * @param pageable la taille de page
+     * @return les IDs des candidats avec CV, par ID croissant
+     */
+    @Query("SELECT c.id FROM Candidat c WHERE c.id > :afterId AND c.cvText IS NOT NULL ORDER BY c.id")
+    List<Long> findCandidatsWithCvText(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Compte les candidats ayant un texte de CV.
+     *
+     * @return le nombre de candidats avec CV
+     */
+    @Query("SELECT COUNT(c) FROM Candidat c WHERE c.cvText IS NOT NULL")
+    long countCandidatsWithCvText();
 
     /**
      * Compte le nombre de candidats inscrits par mois.
@@ -137,4 +168,27 @@ public interface CandidatRepository extends JpaRepository<Candidat, Long>, JpaSp
     @Query("SELECT FUNCTION('DATE_TRUNC', 'month', c.dateCreation), COUNT(c) " +
            "FROM Candidat c GROUP BY FUNCTION('DATE_TRUNC', 'month', c.dateCreation)")
     List<Object[]> countByMonth();
+
+    /**
+     * Charge des candidats avec leurs compétences, en une seule requête.
+     * Les compétences et les expériences étant deux listes, elles ne peuvent pas être
+     * jointes dans la même requête : appeler ensuite {@link #findWithExperiencesByIdIn}
+     * dans la même transaction complète les entités déjà chargées.
+     *
+     * @param ids les IDs des candidats
+     * @return les candidats trouvés (ordre non garanti)
+     */
+    @EntityGraph(attributePaths = "competences")
+    @Query("SELECT c FROM Candidat c WHERE c.id IN :ids")
+    List<Candidat> findWithCompetencesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Charge des candidats avec leurs expériences, en une seule requête.
+     *
+     * @param ids les IDs des candidats
+     * @return les candidats trouvés (ordre non garanti)
+     */
+    @EntityGraph(attributePaths = "experiences")
+    @Query("SELECT c FROM Candidat c WHERE c.id IN :ids")
+    List<Candidat> findWithExperiencesByIdIn(@Param("ids") Collection<Long> ids);
 }
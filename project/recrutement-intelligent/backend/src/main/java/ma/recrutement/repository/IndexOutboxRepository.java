@@ -0,0 +1,169 @@
+package ma.recrutement.repository;
+
+import ma.recrutement.entity.IndexOutboxEvent;
+import ma.recrutement.entity.IndexOutboxEvent.StatutOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository pour l'outbox des demandes d'indexation.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Repository
+public interface IndexOutboxRepository extends JpaRepository<IndexOutboxEvent, Long> {
+
+    /**
+     * Verrouille les prochaines demandes prêtes à être traitées, en ignorant celles déjà verrouillées
+     * par une autre transaction (plusieurs instances peuvent vider l'outbox en parallèle).
+     * Une demande dont l'entité est déjà en cours d'indexation attend la fin de celle-ci.
+     * Doit être appelée dans une transaction.
+     *
+     * @param maintenant la date courante
+     * @param limite le nombre maximum de demandes
+     * @return les IDs des demandes verrouillées, de la plus ancienne à la plus récente
+     */
+    @Query(value = "SELECT o.id FROM index_outbox o WHERE o.statut = 'EN_ATTENTE' AND o.prochaine_tentative <= :maintenant " +
+                   "AND NOT EXISTS (SELECT 1 FROM index_outbox c WHERE c.type_entite = o.type_entite " +
+                   "AND c.entite_id = o.entite_id AND c.statut = 'EN_COURS') " +
+                   "ORDER BY o.id LIMIT :limite FOR UPDATE OF o SKIP LOCKED", nativeQuery = true)
+    List<Long> verrouillerDisponibles(@Param("maintenant") LocalDateTime maintenant, @Param("limite") int limite);
+
+    /**
+     * Réserve des demandes verrouillées pour traitement (passage EN_ATTENTE -> EN_COURS).
+     *
+     * @param ids les IDs des demandes
+     * @param maintenant la date de réservation
+     * @return le nombre de demandes réservées
+     */
+    @Modifying
+    @Query("UPDATE IndexOutboxEvent e SET e.statut = ma.recrutement.entity.IndexOutboxEvent.StatutOutbox.EN_COURS, " +
+           "e.dateReservation = :maintenant WHERE e.id IN :ids")
+    int reserver(@Param("ids") Collection<Long> ids, @Param("maintenant") LocalDateTime maintenant);
+
+    /**
+     * Renouvelle la réservation des demandes en cours de traitement sur cette instance.
+     *
+     * @param ids les IDs des demandes
+     * @param maintenant la date du renouvellement
+     * @return le nombre de demandes renouvelées
+     */
+    @Modifying
+    @Query("UPDATE IndexOutboxEvent e SET e.dateReservation = :maintenant " +
+           "WHERE e.id IN :ids AND e.statut = ma.recrutement.entity.IndexOutboxEvent.StatutOutbox.EN_COURS")
+    int renouvelerBail(@Param("ids") Collection<Long> ids, @Param("maintenant") LocalDateTime maintenant);
+
+    /**
+     * Supprime une demande traitée, uniquement si elle est encore en cours : une demande remise en attente
+     * entre-temps (réservation expirée) n'est pas supprimée.
+     *
+     * @param id l'ID de la demande
+     * @return 1 si la demande a été supprimée, 0 sinon
+     */
+    @Modifying
+    @Query("DELETE FROM IndexOutboxEvent e " +
+           "WHERE e.id = :id AND e.statut = ma.recrutement.entity.IndexOutboxEvent.StatutOutbox.EN_COURS")
+    int supprimerTraitee(@Param("id") Long id);
+
+    /**
+     * Enregistre une demande d'indexation, ou la regroupe avec la demande en attente de la même entité :
+     * l'échéance est repoussée à {@code prochaineTentative}, sans dépasser {@code maxWaitMs} après
+     * la première demande regroupée.
+     *
+     * @param typeEntite le type d'entité
+     * @param entiteId l'ID de l'entité
+     * @param maintenant la date de la demande
+     * @param prochaineTentative l'échéance de traitement (fin de la fenêtre de regroupement)
+     * @param maxWaitMs le délai maximal de regroupement, en millisecondes
+     */
+    @Modifying
+    @Query(value = "INSERT INTO index_outbox (type_entite, entite_id, statut, tentatives, prochaine_tentative, date_creation) " +
+                   "VALUES (:typeEntite, :entiteId, 'EN_ATTENTE', 0, :prochaineTentative, :maintenant) " +
+                   "ON CONFLICT (type_entite, entite_id) WHERE statut = 'EN_ATTENTE' DO UPDATE SET " +
+                   "prochaine_tentative = LEAST(EXCLUDED.prochaine_tentative, " +
+                   "index_outbox.date_creation + :maxWaitMs * INTERVAL '1 millisecond'), " +
+                   "tentatives = 0, message_erreur = NULL", nativeQuery = true)
+    void enregistrerOuRegrouper(@Param("typeEntite") String typeEntite, @Param("entiteId") Long entiteId,
+                                @Param("maintenant") LocalDateTime maintenant,
+                                @Param("prochaineTentative") LocalDateTime prochaineTentative,
+                                @Param("maxWaitMs") long maxWaitMs);
+
+    /**
+     * Replanifie une demande en échec, en une seule instruction : la demande est supprimée, puis remise
+     * en attente sauf si une demande est déjà en attente pour la même entité (y compris une demande
+     * enregistrée en concurrence), qui la remplace alors. Une demande qui n'est plus en cours
+     * (réservation expirée) n'est pas touchée.
+     *
+     * @param id l'ID de la demande en échec
+     * @param tentatives le nombre de tentatives effectuées
+     * @param prochaineTentative la date de la prochaine tentative
+     * @param messageErreur le message de la dernière erreur
+     * @return 1 si la demande est remise en attente, 0 si elle est remplacée ou n'est plus en cours
+     */
+    @Modifying
+    @Query(value = "WITH echec AS (DELETE FROM index_outbox WHERE id = :id AND statut = 'EN_COURS' " +
+                   "RETURNING type_entite, entite_id, date_creation) " +
+                   "INSERT INTO index_outbox (type_entite, entite_id, statut, tentatives, prochaine_tentative, " +
+                   "message_erreur, date_creation) " +
+                   "SELECT type_entite, entite_id, 'EN_ATTENTE', :tentatives, :prochaineTentative, :messageErreur, " +
+                   "date_creation FROM echec " +
+                   "ON CONFLICT (type_entite, entite_id) WHERE statut = 'EN_ATTENTE' DO NOTHING", nativeQuery = true)
+    int replanifierOuRemplacer(@Param("id") Long id, @Param("tentatives") int tentatives,
+                               @Param("prochaineTentative") LocalDateTime prochaineTentative,
+                               @Param("messageErreur") String messageErreur);
+
+    /**
+     * Indique si une demande est en attente pour une entité.
+     *
+     * @param typeEntite le type d'entité
+     * @param entiteId l'ID de l'entité
+     * @param statut le statut recherché
+     * @return true si une telle demande existe
+     */
+    boolean existsByTypeEntiteAndEntiteIdAndStatut(IndexOutboxEvent.TypeEntite typeEntite, Long entiteId, StatutOutbox statut);
+
+    /**
+     * Supprime les demandes interrompues (réservation expirée) dont l'entité a depuis une nouvelle
+     * demande en attente (celle-ci indexera la version la plus récente).
+     *
+     * @param expiration les réservations antérieures à cette date sont expirées
+     * @return le nombre de demandes supprimées
+     */
+    @Modifying
+    @Query(value = "DELETE FROM index_outbox c WHERE c.statut = 'EN_COURS' " +
+                   "AND (c.date_reservation IS NULL OR c.date_reservation < :expiration) " +
+                   "AND EXISTS (SELECT 1 FROM index_outbox p " +
+                   "WHERE p.type_entite = c.type_entite AND p.entite_id = c.entite_id AND p.statut = 'EN_ATTENTE')",
+           nativeQuery = true)
+    int supprimerInterrompuesRegroupees(@Param("expiration") LocalDateTime expiration);
+
+    /**
+     * Remet en attente les demandes interrompues : réservées avant {@code expiration} et jamais terminées
+     * (instance arrêtée pendant leur traitement). Les demandes en cours sur une instance active,
+     * réservées plus récemment, ne sont pas reprises.
+     *
+     * @param expiration les réservations antérieures à cette date sont expirées
+     * @return le nombre de demandes remises en attente
+     */
+    @Modifying
+    @Query("UPDATE IndexOutboxEvent e SET e.statut = ma.recrutement.entity.IndexOutboxEvent.StatutOutbox.EN_ATTENTE " +
+           "WHERE e.statut = ma.recrutement.entity.IndexOutboxEvent.StatutOutbox.EN_COURS " +
+           "AND (e.dateReservation IS NULL OR e.dateReservation < :expiration)")
+    int remettreEnAttenteInterrompues(@Param("expiration") LocalDateTime expiration);
+
+    /**
+     * Compte les demandes par statut.
+     *
+     * @param statut le statut
+     * @return le nombre de demandes
+     */
+    long countByStatut(StatutOutbox statut);
+}
@@ -0,0 +1,198 @@
+package ma.recrutement.repository;
+
+import ma.recrutement.entity.MatchResult;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository pour les résultats d'analyse IA mémorisés.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Repository
+public interface MatchResultRepository extends JpaRepository<MatchResult, Long> {
+
+    /**
+     * Trouve le résultat mémorisé pour un couple offre/candidat.
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatId l'ID du candidat
+     * @return le résultat trouvé ou Optional vide
+     */
+    Optional<MatchResult> findByOffreIdAndCandidatId(Long offreId, Long candidatId);
+
+    /**
+     * Trouve les meilleurs candidats pré-calculés (top-K de l'offre) pour une offre publiée et active.
+     * Chaque ligne contient : le résultat, le nom et le prénom du candidat,
+     * le titre de l'offre et le nom de l'entreprise.
+     *
+     * @param offreId l'ID de l'offre
+     * @param pageable la limite (top-K)
+     * @return les lignes, par score décroissant
+     */
+    @Query("SELECT m, c.nom, c.prenom, o.titre, e.nom FROM MatchResult m " +
+           "JOIN Candidat c ON c.id = m.candidatId " +
+           "JOIN OffreEmploi o ON o.id = m.offreId LEFT JOIN o.entreprise e " +
+           "WHERE m.offreId = :offreId AND m.topOffre = true AND m.scoreMatching IS NOT NULL " +
+           "AND o.statut = ma.recrutement.entity.OffreEmploi.StatutOffre.PUBLIEE AND o.actif = true " +
+           "ORDER BY m.scoreMatching DESC, m.id")
+    List<Object[]> findTopCandidats(@Param("offreId") Long offreId, Pageable pageable);
+
+    /**
+     * Trouve les meilleures offres publiées et actives pré-calculées (top-K du candidat) pour un candidat.
+     * Chaque ligne contient : le résultat, le nom et le prénom du candidat,
+     * le titre de l'offre et le nom de l'entreprise.
+     *
+     * @param candidatId l'ID du candidat
+     * @param pageable la limite (top-K)
+     * @return les lignes, par score décroissant
+     */
+    @Query("SELECT m, c.nom, c.prenom, o.titre, e.nom FROM MatchResult m " +
+           "JOIN Candidat c ON c.id = m.candidatId " +
+           "JOIN OffreEmploi o ON o.id = m.offreId LEFT JOIN o.entreprise e " +
+           "WHERE m.candidatId = :candidatId AND m.topCandidat = true AND m.scoreMatching IS NOT NULL " +
+           "AND o.statut = ma.recrutement.entity.OffreEmploi.StatutOffre.PUBLIEE AND o.actif = true " +
+           "ORDER BY m.scoreMatching DESC, m.id")
+    List<Object[]> findTopOffres(@Param("candidatId") Long candidatId, Pageable pageable);
+
+    /**
+     * Trouve les candidats du top-K d'une offre avec leur score, du plus faible au plus élevé
+     * (ordre inverse de {@link #findTopCandidats}).
+     *
+     * @param offreId l'ID de l'offre
+     * @return les lignes {ID du candidat, score}
+     */
+    @Query("SELECT m.candidatId, m.scoreMatching FROM MatchResult m " +
+           "WHERE m.offreId = :offreId AND m.topOffre = true AND m.scoreMatching IS NOT NULL " +
+           "ORDER BY m.scoreMatching ASC, m.id DESC")
+    List<Object[]> findTopOffreScores(@Param("offreId") Long offreId);
+
+    /**
+     * Trouve les offres du top-K d'un candidat avec leur score, du plus faible au plus élevé
+     * (ordre inverse de {@link #findTopOffres}).
+     *
+     * @param candidatId l'ID du candidat
+     * @return les lignes {ID de l'offre, score}
+     */
+    @Query("SELECT m.offreId, m.scoreMatching FROM MatchResult m " +
+           "WHERE m.candidatId = :candidatId AND m.topCandidat = true AND m.scoreMatching IS NOT NULL " +
+           "ORDER BY m.scoreMatching ASC, m.id DESC")
+    List<Object[]> findTopCandidatScores(@Param("candidatId") Long candidatId);
+
+    /**
+     * Place les couples des candidats donnés dans le top-K d'une offre.
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatIds les candidats du top-K (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topOffre = true WHERE m.offreId = :offreId AND m.candidatId IN :candidatIds")
+    int markTopOffre(@Param("offreId") Long offreId, @Param("candidatIds") Collection<Long> candidatIds);
+
+    /**
+     * Retire du top-K d'une offre les couples des autres candidats (les analyses sont conservées).
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatIds les candidats du top-K (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topOffre = false " +
+           "WHERE m.offreId = :offreId AND m.topOffre = true AND m.candidatId NOT IN :candidatIds")
+    int unmarkTopOffreExcept(@Param("offreId") Long offreId, @Param("candidatIds") Collection<Long> candidatIds);
+
+    /**
+     * Retire du top-K d'une offre les couples des candidats donnés (les analyses sont conservées).
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatIds les candidats à retirer (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topOffre = false WHERE m.offreId = :offreId AND m.candidatId IN :candidatIds")
+    int unmarkTopOffreFor(@Param("offreId") Long offreId, @Param("candidatIds") Collection<Long> candidatIds);
+
+    /**
+     * Vide le top-K d'une offre (les analyses sont conservées).
+     *
+     * @param offreId l'ID de l'offre
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topOffre = false WHERE m.offreId = :offreId AND m.topOffre = true")
+    int unmarkTopOffre(@Param("offreId") Long offreId);
+
+    /**
+     * Place les couples des offres données dans le top-K d'un candidat.
+     *
+     * @param candidatId l'ID du candidat
+     * @param offreIds les offres du top-K (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topCandidat = true WHERE m.candidatId = :candidatId AND m.offreId IN :offreIds")
+    int markTopCandidat(@Param("candidatId") Long candidatId, @Param("offreIds") Collection<Long> offreIds);
+
+    /**
+     * Retire du top-K d'un candidat les couples des autres offres (les analyses sont conservées).
+     *
+     * @param candidatId l'ID du candidat
+     * @param offreIds les offres du top-K (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topCandidat = false " +
+           "WHERE m.candidatId = :candidatId AND m.topCandidat = true AND m.offreId NOT IN :offreIds")
+    int unmarkTopCandidatExcept(@Param("candidatId") Long candidatId, @Param("offreIds") Collection<Long> offreIds);
+
+    /**
+     * Retire du top-K d'un candidat les couples des offres données (les analyses sont conservées).
+     *
+     * @param candidatId l'ID du candidat
+     * @param offreIds les offres à retirer (non vide)
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topCandidat = false WHERE m.candidatId = :candidatId AND m.offreId IN :offreIds")
+    int unmarkTopCandidatFor(@Param("candidatId") Long candidatId, @Param("offreIds") Collection<Long> offreIds);
+
+    /**
+     * Vide le top-K d'un candidat (les analyses sont conservées).
+     *
+     * @param candidatId l'ID du candidat
+     * @return le nombre de lignes modifiées
+     */
+    @Modifying
+    @Query("UPDATE MatchResult m SET m.topCandidat = false WHERE m.candidatId = :candidatId AND m.topCandidat = true")
+    int unmarkTopCandidat(@Param("candidatId") Long candidatId);
+
+    /**
+     * Supprime tous les résultats d'une offre.
+     *
+     * @param offreId l'ID de l'offre
+     * @return le nombre de lignes supprimées
+     */
+    @Modifying
+    @Query("DELETE FROM MatchResult m WHERE m.offreId = :offreId")
+    int deleteByOffreId(@Param("offreId") Long offreId);
+
+    /**
+     * Supprime tous les résultats d'un candidat.
+     *
+     * @param candidatId l'ID du candidat
+     * @return le nombre de lignes supprimées
+     */
+    @Modifying
+    @Query("DELETE FROM MatchResult m WHERE m.candidatId = :candidatId")
+    int deleteByCandidatId(@Param("candidatId") Long candidatId);
+}
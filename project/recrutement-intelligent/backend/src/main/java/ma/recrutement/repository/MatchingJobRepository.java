@@ -0,0 +1,97 @@
+package ma.recrutement.repository;
+
+import jakarta.persistence.LockModeType;
+import ma.recrutement.entity.MatchingJob;
+import ma.recrutement.entity.MatchingJob.StatutJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository pour les jobs de matching asynchrones.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Repository
+public interface MatchingJobRepository extends JpaRepository<MatchingJob, Long> {
+
+    /**
+     * Trouve les IDs des jobs dans l'un des statuts donnés, du plus ancien au plus récent.
+     *
+     * @param statuts les statuts recherchés
+     * @return les IDs des jobs
+     */
+    @Query("SELECT j.id FROM MatchingJob j WHERE j.statut IN :statuts ORDER BY j.id")
+    List<Long> findIdsByStatutIn(@Param("statuts") Collection<StatutJob> statuts);
+
+    /**
+     * Réserve un job en attente pour exécution (passage atomique EN_ATTENTE -> EN_COURS) et ouvre son bail.
+     *
+     * @param id l'ID du job
+     * @param dateDebut la date de démarrage
+     * @return 1 si le job a été réservé, 0 s'il l'était déjà
+     */
+    @Modifying
+    @Query("UPDATE MatchingJob j SET j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_COURS, " +
+           "j.dateDebut = :dateDebut, j.dateHeartbeat = :dateDebut " +
+           "WHERE j.id = :id AND j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_ATTENTE")
+    int reserver(@Param("id") Long id, @Param("dateDebut") LocalDateTime dateDebut);
+
+    /**
+     * Trouve et verrouille un job encore en cours sous la réservation donnée. Un job dont le bail a expiré
+     * entre-temps (remis en attente ou réservé par une autre instance) n'est pas retourné.
+     *
+     * @param id l'ID du job
+     * @param dateDebut la date de démarrage enregistrée par {@link #reserver}
+     * @return le job verrouillé, ou vide si la réservation n'est plus valable
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM MatchingJob j WHERE j.id = :id " +
+           "AND j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_COURS AND j.dateDebut = :dateDebut")
+    Optional<MatchingJob> findReservation(@Param("id") Long id, @Param("dateDebut") LocalDateTime dateDebut);
+
+    /**
+     * Renouvelle le bail des jobs en cours d'exécution sur cette instance.
+     *
+     * @param ids les IDs des jobs
+     * @param dateHeartbeat la date du renouvellement
+     * @return le nombre de jobs renouvelés
+     */
+    @Modifying
+    @Query("UPDATE MatchingJob j SET j.dateHeartbeat = :dateHeartbeat " +
+           "WHERE j.id IN :ids AND j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_COURS")
+    int renouvelerBail(@Param("ids") Collection<Long> ids, @Param("dateHeartbeat") LocalDateTime dateHeartbeat);
+
+    /**
+     * Remet en attente les jobs interrompus, c'est-à-dire en cours mais dont le bail a expiré
+     * (instance arrêtée pendant leur exécution). Les jobs en cours sur une autre instance active ne sont pas touchés.
+     *
+     * @param expiration les jobs dont le dernier renouvellement est antérieur à cette date sont repris
+     * @return le nombre de jobs remis en attente
+     */
+    @Modifying
+    @Query("UPDATE MatchingJob j SET j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_ATTENTE, " +
+           "j.traites = 0 WHERE j.statut = ma.recrutement.entity.MatchingJob.StatutJob.EN_COURS " +
+           "AND (j.dateHeartbeat IS NULL OR j.dateHeartbeat < :expiration)")
+    int remettreEnAttenteJobsInterrompus(@Param("expiration") LocalDateTime expiration);
+
+    /**
+     * Met à jour la progression d'un job.
+     *
+     * @param id l'ID du job
+     * @param total le nombre de candidats à analyser
+     * @param traites le nombre de candidats déjà analysés
+     */
+    @Modifying
+    @Query("UPDATE MatchingJob j SET j.total = :total, j.traites = :traites WHERE j.id = :id")
+    void updateProgression(@Param("id") Long id, @Param("total") int total, @Param("traites") int traites);
+}
@@ -3,6 +3,7 @@ package ma.recrutement.repository;
 import ma.recrutement.entity.OffreEmploi;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -10,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -148,26 +150,43 @@ public interface OffreEmploiRepository extends JpaRepository<OffreEmploi, Long>,
     Optional<OffreEmploi> findByReference(String reference);
 
     /**
-     * Recherche plein texte sur les offres.
+     * Recherche plein texte sur les offres publiées (colonne search_vector, index GIN),
+     * classée par pertinence avec extraits surlignés.
+     * La syntaxe web est acceptée : "expression exacte", OR, -exclusion.
+     * Les termes trouvés sont encadrés par chr(2)/chr(3) et non par du HTML : les extraits
+     * contiennent le texte brut du recruteur et doivent passer par {@link ma.recrutement.util.HighlightUtil}.
      *
      * @param terme le terme de recherche
-     * @param pageable les informations de pagination
-     * @return la page des offres correspondantes
+     * @param pageable les informations de pagination (le tri est imposé par le rang)
+     * @return la page des résultats classés
      */
-    @Query(value = "SELECT * FROM offres_emploi o WHERE " +
-           "o.statut = 'PUBLIEE' AND o.actif = true AND (" +
-           "o.titre ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.description ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.competences_requises ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.localisation ILIKE CONCAT('%', :terme, '%'))",
+    @Query(value = "SELECT o.id AS \"id\", " +
+           "CAST(ts_rank(o.search_vector, q.requete, 1) AS double precision) AS \"rang\", " +
+           "ts_headline('french', o.titre, q.requete, " +
+           "'HighlightAll=true, StartSel=' || chr(2) || ', StopSel=' || chr(3)) AS \"titreSurligne\", " +
+           "ts_headline('french', coalesce(o.competences_requises, '') || ' ' || coalesce(o.description, ''), q.requete, " +
+           "'StartSel=' || chr(2) || ', StopSel=' || chr(3) || ', MaxFragments=2, MaxWords=30, MinWords=10') AS \"extrait\" " +
+           "FROM offres_emploi o, websearch_to_tsquery('french', :terme) AS q(requete) " +
+           "WHERE o.statut = 'PUBLIEE' AND o.actif = true AND o.search_vector @@ q.requete " +
+           "ORDER BY \"rang\" DESC, o.id DESC",
            countQuery = "SELECT COUNT(*) FROM offres_emploi o WHERE " +
-           "o.statut = 'PUBLIEE' AND o.actif = true AND (" +
-           "o.titre ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.description ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.competences_requises ILIKE CONCAT('%', :terme, '%') OR " +
-           "o.localisation ILIKE CONCAT('%', :terme, '%'))",
+           "o.statut = 'PUBLIEE' AND o.actif = true AND o.search_vector @@ websearch_to_tsquery('french', :terme)",
            nativeQuery = true)
-    Page<OffreEmploi> recherchePleinText(@Param("terme") String terme, Pageable pageable);
+    Page<ResultatRecherche> recherchePleinText(@Param("terme") String terme, Pageable pageable);
+
+    /**
+     * Ligne de résultat de la recherche plein texte.
+     */
+    interface ResultatRecherche {
+
+        Long getId();
+
+        Double getRang();
+
+        String getTitreSurligne();
+
+        String getExtrait();
+    }
 
     /**
      * Trouve les offres dont la date limite est passée.
@@ -200,12 +219,41 @@ public interface OffreEmploiRepository extends JpaRepository<OffreEmploi, Long>,
     long countByStatut(OffreEmploi.StatutOffre statut);
 
     /**
-     * Trouve les offres qui ne sont pas encore indexées dans le vector store.
+     * Trouve, par pagination sur clé, les IDs des offres publiées qui ne sont pas encore indexées dans le vector store.
+     *
+     * @param afterId l'ID après lequel reprendre (0 pour commencer)
+     * @param pageable la taille de page
+     * @return les IDs des offres sans vector_id, par ID croissant
+     */
+    @Query("SELECT o.id FROM OffreEmploi o WHERE o.id > :afterId AND o.statut = 'PUBLIEE' AND o.vectorId IS NULL ORDER BY o.id")
+    List<Long> findOffresNonIndexees(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Compte les offres publiées qui ne sont pas encore indexées.
      *
-     * @return la liste des offres sans vector_id
+     * @return le nombre d'offres sans vector_id
      */
-    @Query("SELECT o FROM OffreEmploi o WHERE o.statut = 'PUBLIEE' AND o.vectorId IS NULL")
-    List<OffreEmploi> findOffresNonIndexees();
+    @Query("SELECT COUNT(o) FROM OffreEmploi o WHERE o.statut = 'PUBLIEE' AND o.vectorId IS NULL")
+    long countOffresNonIndexees();
+
+    /**
+     * Trouve, par pagination sur clé, les IDs des offres à indexer lors d'une ré-indexation complète
+     * (offres publiées et offres déjà présentes dans le vector store).
+     *
+     * @param afterId l'ID après lequel reprendre (0 pour commencer)
+     * @param pageable la taille de page
+     * @return les IDs des offres, par ID croissant
+     */
+    @Query("SELECT o.id FROM OffreEmploi o WHERE o.id > :afterId AND (o.statut = 'PUBLIEE' OR o.vectorId IS NOT NULL) ORDER BY o.id")
+    List<Long> findOffresIndexables(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Compte les offres à indexer lors d'une ré-indexation complète.
+     *
+     * @return le nombre d'offres
+     */
+    @Query("SELECT COUNT(o) FROM OffreEmploi o WHERE o.statut = 'PUBLIEE' OR o.vectorId IS NOT NULL")
+    long countOffresIndexables();
 
     /**
      * Trouve les offres récentes (publiées depuis une date).
@@ -232,4 +280,14 @@ public interface OffreEmploiRepository extends JpaRepository<OffreEmploi, Long>,
      */
     @Query("SELECT o FROM OffreEmploi o LEFT JOIN FETCH o.entreprise WHERE o.id = :offreId")
     OffreEmploi findByIdWithEntreprise(@Param("offreId") Long offreId);
+
+    /**
+     * Charge des offres avec leur entreprise, en une seule requête.
+     *
+     * @param ids les IDs des offres
+     * @return les offres trouvées (ordre non garanti)
+     */
+    @EntityGraph(attributePaths = "entreprise")
+    @Query("SELECT o FROM OffreEmploi o WHERE o.id IN :ids")
+    List<OffreEmploi> findWithEntrepriseByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,102 @@
+package ma.recrutement.repository;
+
+import ma.recrutement.entity.ReindexRun;
+import ma.recrutement.entity.ReindexRun.StatutReindex;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository pour les ré-indexations en masse du vector store.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Repository
+public interface ReindexRunRepository extends JpaRepository<ReindexRun, Long> {
+
+    /**
+     * Trouve les IDs des ré-indexations dans l'un des statuts donnés, de la plus ancienne à la plus récente.
+     *
+     * @param statuts les statuts recherchés
+     * @return les IDs des ré-indexations
+     */
+    @Query("SELECT r.id FROM ReindexRun r WHERE r.statut IN :statuts ORDER BY r.id")
+    List<Long> findIdsByStatutIn(@Param("statuts") Collection<StatutReindex> statuts);
+
+    /**
+     * Trouve les 20 ré-indexations les plus récentes.
+     *
+     * @return les ré-indexations, de la plus récente à la plus ancienne
+     */
+    List<ReindexRun> findTop20ByOrderByIdDesc();
+
+    /**
+     * Réserve une ré-indexation en attente pour exécution (passage atomique EN_ATTENTE -> EN_COURS) et ouvre son bail.
+     *
+     * @param id l'ID de la ré-indexation
+     * @param dateDebut la date de démarrage
+     * @return 1 si la ré-indexation a été réservée, 0 si elle l'était déjà
+     */
+    @Modifying
+    @Query("UPDATE ReindexRun r SET r.statut = ma.recrutement.entity.ReindexRun.StatutReindex.EN_COURS, " +
+           "r.dateDebut = :dateDebut, r.dateHeartbeat = :dateDebut " +
+           "WHERE r.id = :id AND r.statut = ma.recrutement.entity.ReindexRun.StatutReindex.EN_ATTENTE")
+    int reserver(@Param("id") Long id, @Param("dateDebut") LocalDateTime dateDebut);
+
+    /**
+     * Renouvelle le bail des ré-indexations en cours d'exécution sur cette instance.
+     *
+     * @param ids les IDs des ré-indexations
+     * @param dateHeartbeat la date du renouvellement
+     * @return le nombre de ré-indexations renouvelées
+     */
+    @Modifying
+    @Query("UPDATE ReindexRun r SET r.dateHeartbeat = :dateHeartbeat " +
+           "WHERE r.id IN :ids AND r.statut = ma.recrutement.entity.ReindexRun.StatutReindex.EN_COURS")
+    int renouvelerBail(@Param("ids") Collection<Long> ids, @Param("dateHeartbeat") LocalDateTime dateHeartbeat);
+
+    /**
+     * Remet en attente les ré-indexations interrompues, c'est-à-dire en cours mais dont le bail a expiré
+     * (instance arrêtée pendant leur exécution). Les points de contrôle sont conservés : l'exécution reprend
+     * après le dernier lot validé. Une ré-indexation en cours sur une autre instance active n'est pas touchée.
+     *
+     * @param expiration les ré-indexations dont le dernier renouvellement est antérieur à cette date sont reprises
+     * @return le nombre de ré-indexations remises en attente
+     */
+    @Modifying
+    @Query("UPDATE ReindexRun r SET r.statut = ma.recrutement.entity.ReindexRun.StatutReindex.EN_ATTENTE " +
+           "WHERE r.statut = ma.recrutement.entity.ReindexRun.StatutReindex.EN_COURS " +
+           "AND (r.dateHeartbeat IS NULL OR r.dateHeartbeat < :expiration)")
+    int remettreEnAttenteInterrompues(@Param("expiration") LocalDateTime expiration);
+
+    /**
+     * Enregistre le point de contrôle des CV après un lot validé.
+     *
+     * @param id l'ID de la ré-indexation
+     * @param dernierId le dernier ID de candidat traité
+     * @param traites le nombre de candidats traités dans le lot
+     */
+    @Modifying
+    @Query("UPDATE ReindexRun r SET r.dernierCandidatId = :dernierId, " +
+           "r.candidatsTraites = r.candidatsTraites + :traites WHERE r.id = :id")
+    void checkpointCandidats(@Param("id") Long id, @Param("dernierId") Long dernierId, @Param("traites") long traites);
+
+    /**
+     * Enregistre le point de contrôle des offres après un lot validé.
+     *
+     * @param id l'ID de la ré-indexation
+     * @param dernierId le dernier ID d'offre traité
+     * @param traites le nombre d'offres traitées dans le lot
+     */
+    @Modifying
+    @Query("UPDATE ReindexRun r SET r.dernierOffreId = :dernierId, " +
+           "r.offresTraitees = r.offresTraitees + :traites WHERE r.id = :id")
+    void checkpointOffres(@Param("id") Long id, @Param("dernierId") Long dernierId, @Param("traites") long traites);
+}
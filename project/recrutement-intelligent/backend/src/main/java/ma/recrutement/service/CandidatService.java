@@ -34,7 +34,8 @@ public class CandidatService {
     private final CandidatRepository candidatRepository;
     private final CandidatureRepository candidatureRepository;
     private final FileStorageUtil fileStorageUtil;
-    private final ma.recrutement.service.ai.MatchingEngineService matchingEngineService;
+    private final ma.recrutement.service.ai.IndexOutboxService indexOutboxService;
+    private final ma.recrutement.service.ai.MatchResultCacheService matchResultCacheService;
 
     /**
      * Obtient le profil du candidat connecté.
@@ -70,6 +71,9 @@ public class CandidatService {
         if (dto.getPresentation() != null) candidat.setPresentation(dto.getPresentation());
 
         candidat = candidatRepository.save(candidat);
+
+        // The profile feeds the match prompt: re-index, which refreshes the precomputed matches
+        requestMatchRefresh(candidat);
         return mapToDTO(candidat);
     }
 
@@ -94,16 +98,8 @@ public class CandidatService {
 
             candidat = candidatRepository.save(candidat);
 
-            // Auto-index the CV for AI matching (async to not block the response)
-            final Long candidatId = candidat.getId();
-            new Thread(() -> {
-                try {
-                    matchingEngineService.indexCv(candidatId);
-                    log.info("CV auto-indexed for candidat: {}", candidatId);
-                } catch (Exception e) {
-                    log.error("Failed to auto-index CV for candidat: {}", candidatId, e);
-                }
-            }).start();
+            // Auto-index the CV for AI matching, through the outbox (processed after commit)
+            indexOutboxService.enqueueCv(candidat.getId());
 
             return CvUploadDTO.builder()
                 .cvPath(cvPath)
@@ -134,16 +130,17 @@ public class CandidatService {
         candidat.setCvText(cvText);
         candidat = candidatRepository.save(candidat);
 
-        // Auto-index the CV for AI matching
-        final Long candidatId = candidat.getId();
-        new Thread(() -> {
-            try {
-                matchingEngineService.indexCv(candidatId);
-                log.info("CV auto-indexed for candidat: {}", candidatId);
-            } catch (Exception e) {
-                log.error("Failed to auto-index CV for candidat: {}", candidatId, e);
-            }
-        }).start();
+        // Auto-index the CV for AI matching, through the outbox (processed after commit)
+        indexOutboxService.enqueueCv(candidat.getId());
+    }
+
+    /**
+     * Demande l'indexation du CV du candidat connecté pour le matching.
+     * Les demandes répétées sont regroupées par l'outbox d'indexation.
+     */
+    @Transactional
+    public void indexMyCv() {
+        indexOutboxService.enqueueCv(getAuthenticatedCandidat().getId());
     }
 
     /**
@@ -175,6 +172,9 @@ public class CandidatService {
         candidat.setCvVectorId(null);
 
         candidatRepository.save(candidat);
+
+        // No more matching without a CV: drop the candidate's precomputed pairs
+        matchResultCacheService.deleteForCandidat(candidat.getId());
     }
 
     /**
@@ -202,6 +202,7 @@ public class CandidatService {
             .filter(c -> c.getNom().equals(competence.getNom()))
             .findFirst()
             .orElse(competence);
+        requestMatchRefresh(candidat);
 
         return mapCompetenceToDTO(savedCompetence);
     }
@@ -222,6 +223,7 @@ public class CandidatService {
 
         candidat.retirerCompetence(competence);
         candidatRepository.save(candidat);
+        requestMatchRefresh(candidat);
     }
 
     /**
@@ -255,6 +257,7 @@ public class CandidatService {
             .filter(e -> e.getTitre().equals(experience.getTitre()) && e.getEntreprise().equals(experience.getEntreprise()))
             .findFirst()
             .orElse(experience);
+        requestMatchRefresh(candidat);
 
         return mapExperienceToDTO(savedExperience);
     }
@@ -275,6 +278,7 @@ public class CandidatService {
 
         candidat.retirerExperience(experience);
         candidatRepository.save(candidat);
+        requestMatchRefresh(candidat);
     }
 
     /**
@@ -289,6 +293,16 @@ public class CandidatService {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Compétences et expériences font partie du prompt de matching : le CV est ré-indexé,
+     * ce qui recalcule les correspondances pré-calculées du candidat.
+     */
+    private void requestMatchRefresh(Candidat candidat) {
+        if (candidat.getCvText() != null && !candidat.getCvText().isBlank()) {
+            indexOutboxService.enqueueCv(candidat.getId());
+        }
+    }
+
     private Candidat getAuthenticatedCandidat() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String email = authentication.getName();
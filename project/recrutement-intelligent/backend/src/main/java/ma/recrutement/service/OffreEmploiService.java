@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.recrutement.dto.OffreCreateDTO;
 import ma.recrutement.dto.OffreEmploiDTO;
+import ma.recrutement.dto.OffreSearchResultDTO;
 import ma.recrutement.dto.OffreUpdateDTO;
 import ma.recrutement.dto.PaginationResponseDTO;
 import ma.recrutement.entity.Entreprise;
@@ -16,6 +17,7 @@ import ma.recrutement.repository.EntrepriseRepository;
 import ma.recrutement.repository.OffreEmploiRepository;
 import ma.recrutement.repository.RecruteurRepository;
 import ma.recrutement.repository.UtilisateurRepository;
+import ma.recrutement.util.HighlightUtil;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -27,7 +29,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service pour la gestion des offres d'emploi.
@@ -44,7 +49,8 @@ public class OffreEmploiService {
     private final EntrepriseRepository entrepriseRepository;
     private final RecruteurRepository recruteurRepository;
     private final UtilisateurRepository utilisateurRepository;
-    private final ma.recrutement.service.ai.MatchingEngineService matchingEngineService;
+    private final ma.recrutement.service.ai.IndexOutboxService indexOutboxService;
+    private final ma.recrutement.service.ai.MatchResultCacheService matchResultCacheService;
 
     /**
      * Crée une nouvelle offre d'emploi.
@@ -146,6 +152,12 @@ public class OffreEmploiService {
         if (dto.getNombrePostes() != null) offre.setNombrePostes(dto.getNombrePostes());
 
         offre = offreEmploiRepository.save(offre);
+
+        // Re-index a published offer: its vectors and its precomputed matches are refreshed
+        // (until then, the stale pairs no longer match the prompt fingerprint and are not served)
+        if (offre.getStatut() == OffreEmploi.StatutOffre.PUBLIEE && Boolean.TRUE.equals(offre.getActif())) {
+            indexOutboxService.enqueueOffre(offre.getId());
+        }
         return mapToDTO(offre);
     }
 
@@ -171,6 +183,11 @@ public class OffreEmploiService {
         offre.setStatut(OffreEmploi.StatutOffre.ANNULEE);
         offreEmploiRepository.save(offre);
 
+        // No more matching for this offer: drop its precomputed pairs, and re-index it so that
+        // the vector metadata carries the new status (excluded by the SQL-side statut filter)
+        matchResultCacheService.deleteForOffre(offreId);
+        indexOutboxService.enqueueOffre(offreId);
+
         log.info("Offre supprimée: ID={}", offreId);
     }
 
@@ -208,6 +225,39 @@ public class OffreEmploiService {
         return PaginationResponseDTO.fromPage(result.map(this::mapToDTO));
     }
 
+    /**
+     * Recherche plein texte des offres publiées, classée par pertinence.
+     *
+     * @param terme le texte recherché
+     * @param page le numéro de page
+     * @param size la taille de la page
+     * @return les résultats paginés avec score et extraits surlignés
+     */
+    @Transactional(readOnly = true)
+    public PaginationResponseDTO<OffreSearchResultDTO> rechercherPleinTexte(String terme, int page, int size) {
+        if (terme == null || terme.isBlank()) {
+            throw new BusinessException("Le terme de recherche est obligatoire");
+        }
+        Page<OffreEmploiRepository.ResultatRecherche> resultats =
+            offreEmploiRepository.recherchePleinText(terme.trim(), PageRequest.of(page, size));
+
+        // Chargement groupé des offres de la page (avec entreprise), l'ordre du rang est conservé
+        Map<Long, OffreEmploi> offres = offreEmploiRepository.findWithEntrepriseByIdIn(
+                resultats.map(OffreEmploiRepository.ResultatRecherche::getId).getContent())
+            .stream()
+            .collect(Collectors.toMap(OffreEmploi::getId, Function.identity()));
+
+        return PaginationResponseDTO.fromPage(resultats.map(resultat -> {
+            OffreEmploi offre = offres.get(resultat.getId());
+            return OffreSearchResultDTO.builder()
+                .offre(offre != null ? mapToDTO(offre) : null)
+                .score(resultat.getRang())
+                .titreSurligne(HighlightUtil.toHtml(resultat.getTitreSurligne()))
+                .extrait(HighlightUtil.toHtml(resultat.getExtrait()))
+                .build();
+        }));
+    }
+
     /**
      * Publie une offre d'emploi.
      *
@@ -230,16 +280,9 @@ public class OffreEmploiService {
         offre.setDatePublication(LocalDate.now());
         offre = offreEmploiRepository.save(offre);
 
-        // Auto-index the offer for AI matching (async to not block the response)
-        final Long finalOffreId = offre.getId();
-        new Thread(() -> {
-            try {
-                matchingEngineService.indexOffre(finalOffreId);
-                log.info("Offre auto-indexed: ID={}", finalOffreId);
-            } catch (Exception e) {
-                log.error("Failed to auto-index offre: ID={}", finalOffreId, e);
-            }
-        }).start();
+        // Auto-index the offer for AI matching through the outbox: processed once committed,
+        // so that the indexed metadata carries the published status
+        indexOutboxService.enqueueOffre(offre.getId());
 
         log.info("Offre publiée: ID={}", offreId);
         return mapToDTO(offre);
@@ -267,6 +310,11 @@ public class OffreEmploiService {
         offre.setActif(false);
         offre = offreEmploiRepository.save(offre);
 
+        // No more matching for this offer: drop its precomputed pairs, and re-index it so that
+        // the vector metadata carries the new status (excluded by the SQL-side statut filter)
+        matchResultCacheService.deleteForOffre(offreId);
+        indexOutboxService.enqueueOffre(offreId);
+
         log.info("Offre clôturée: ID={}", offreId);
         return mapToDTO(offre);
     }
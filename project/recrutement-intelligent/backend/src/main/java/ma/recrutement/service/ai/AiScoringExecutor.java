@@ -0,0 +1,147 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+/**
+ * Exécuteur des appels d'analyse IA du matching.
+ * Lance les analyses en parallèle sur des threads virtuels, avec un plafond de concurrence
+ * global (protège le quota OpenAI) et une échéance par requête. Les résultats sont
+ * restitués dans l'ordre des tâches soumises.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Component
+public class AiScoringExecutor {
+
+    private final boolean parallelEnabled;
+    private final long deadlineMs;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AiScoringExecutor(
+            @Value("${matching.ai.parallel.enabled:true}") boolean parallelEnabled,
+            @Value("${matching.ai.parallel.max-concurrency:8}") int maxConcurrency,
+            @Value("${matching.ai.parallel.deadline-ms:90000}") long deadlineMs
+    ) {
+        this.parallelEnabled = parallelEnabled;
+        this.deadlineMs = deadlineMs;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+    }
+
+    /**
+     * Calcule l'échéance d'une requête de matching, à partager entre tous ses appels à
+     * {@link #executeAll(List, BiFunction, long)}.
+     *
+     * @return l'échéance, en valeur de {@link System#nanoTime()}
+     */
+    public long newDeadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    }
+
+    /**
+     * Exécute toutes les tâches avant une nouvelle échéance et retourne leurs résultats dans l'ordre de soumission.
+     *
+     * @param tasks les tâches d'analyse
+     * @param fallback produit le résultat de remplacement (index de la tâche, cause)
+     * @return les résultats, dans l'ordre des tâches
+     */
+    public <T> List<T> executeAll(List<Callable<T>> tasks, BiFunction<Integer, Throwable, T> fallback) {
+        return executeAll(tasks, fallback, newDeadline());
+    }
+
+    /**
+     * Exécute toutes les tâches et retourne leurs résultats dans l'ordre de soumission.
+     * Chaque tâche prend un permis de concurrence et respecte l'échéance, y compris en mode
+     * séquentiel (les tâches sont alors lancées l'une après l'autre). Une tâche en erreur ou
+     * non terminée à l'échéance est remplacée par le résultat du fallback.
+     *
+     * @param tasks les tâches d'analyse
+     * @param fallback produit le résultat de remplacement (index de la tâche, cause)
+     * @param deadline l'échéance, obtenue par {@link #newDeadline()}
+     * @return les résultats, dans l'ordre des tâches
+     */
+    public <T> List<T> executeAll(List<Callable<T>> tasks, BiFunction<Integer, Throwable, T> fallback, long deadline) {
+        List<T> results = new ArrayList<>(tasks.size());
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        if (parallelEnabled) {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> callWithPermit(task, deadline)));
+            }
+        }
+
+        int timedOut = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!parallelEnabled) {
+                Callable<T> task = tasks.get(i);
+                futures.add(executor.submit(() -> callWithPermit(task, deadline)));
+            }
+            Future<T> future = futures.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.add(future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timedOut++;
+                results.add(fallback.apply(i, e));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof TimeoutException) {
+                    timedOut++;
+                }
+                results.add(fallback.apply(i, cause));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.subList(i, futures.size()).forEach(f -> f.cancel(true));
+                for (int j = i; j < tasks.size(); j++) {
+                    results.add(fallback.apply(j, e));
+                }
+                break;
+            }
+        }
+
+        if (timedOut > 0) {
+            log.warn("{} analyse(s) IA sur {} non terminée(s) avant l'échéance de {} ms",
+                timedOut, tasks.size(), deadlineMs);
+        }
+        return results;
+    }
+
+    private <T> T callWithPermit(Callable<T> task, long deadline) throws Exception {
+        long remaining = deadline - System.nanoTime();
+        if (!permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("Échéance atteinte avant le démarrage de l'analyse IA");
+        }
+        // A permit freed by a call cancelled at the deadline must not start a late call
+        if (System.nanoTime() - deadline >= 0) {
+            permits.release();
+            throw new TimeoutException("Échéance atteinte avant le démarrage de l'analyse IA");
+        }
+        try {
+            return task.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
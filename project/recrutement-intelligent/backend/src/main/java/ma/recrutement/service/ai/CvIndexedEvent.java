@@ -0,0 +1,11 @@
+package ma.recrutement.service.ai;
+
+/**
+ * Événement publié après l'indexation du CV d'un candidat dans le vector store.
+ *
+ * @param candidatId l'ID du candidat
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public record CvIndexedEvent(Long candidatId) {
+}
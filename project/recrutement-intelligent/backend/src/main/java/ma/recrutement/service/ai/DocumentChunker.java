@@ -0,0 +1,191 @@
+package ma.recrutement.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Découpage des textes indexés (CV, offres) en segments, un vecteur par segment.
+ * Le texte est d'abord découpé en sections (titres usuels d'un CV ou d'une offre, lignes en
+ * majuscules ou terminées par « : »), puis les sections sont regroupées en segments d'au plus
+ * {@code max-chars} caractères. Une section trop longue est coupée aux paragraphes, puis aux lignes ;
+ * chaque morceau reprend le titre de sa section. Au-delà de {@code max-chunks} segments, la fin du texte
+ * n'est pas indexée : un avertissement indique le document et le nombre de caractères ignorés.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Component
+public class DocumentChunker {
+
+    private static final Pattern KNOWN_HEADING = Pattern.compile(
+        "^(experiences?( professionnelles?)?|parcours( professionnel)?|formations?|education|etudes|diplomes?"
+            + "|competences?( techniques| cles)?|savoir[- ]faire|skills|langues?|languages|projets?|projects"
+            + "|certifications?|profil( recherche)?|resume|a propos|centres? d'interets?|loisirs|interets"
+            + "|informations? personnelles|coordonnees|contact|description( du poste)?|missions?"
+            + "|responsabilites|taches|avantages|references)\\b.*");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern PARAGRAPHS = Pattern.compile("\\n\\s*\\n");
+    private static final int MAX_HEADING_LENGTH = 60;
+
+    private final boolean enabled;
+    private final int maxChars;
+    private final int maxChunks;
+
+    public DocumentChunker(
+            @Value("${matching.chunking.enabled:true}") boolean enabled,
+            @Value("${matching.chunking.max-chars:2000}") int maxChars,
+            @Value("${matching.chunking.max-chunks:16}") int maxChunks
+    ) {
+        this.enabled = enabled;
+        this.maxChars = Math.max(200, maxChars);
+        this.maxChunks = Math.max(1, maxChunks);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Découpe un texte en segments.
+     *
+     * @param text le texte
+     * @return les segments, dans l'ordre du texte (le texte entier si le découpage est désactivé ou inutile)
+     */
+    public List<String> chunk(String text) {
+        return chunk(text, "text");
+    }
+
+    /**
+     * Découpe un texte en segments.
+     *
+     * @param text le texte
+     * @param document le document découpé, nommé dans l'avertissement émis si des segments sont ignorés
+     * @return les segments, dans l'ordre du texte (le texte entier si le découpage est désactivé ou inutile)
+     */
+    public List<String> chunk(String text, String document) {
+        if (!enabled || text.length() <= maxChars) {
+            return List.of(text);
+        }
+
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String[] section : splitSections(text)) {
+            String heading = section[0];
+            String body = section[1];
+            String sectionText = heading.isEmpty() ? body : heading + "\n" + body;
+            if (sectionText.isBlank()) {
+                continue;
+            }
+
+            if (sectionText.length() > maxChars) {
+                flush(current, chunks);
+                for (String piece : splitLongSection(body, maxChars - heading.length() - 1)) {
+                    chunks.add(heading.isEmpty() ? piece : heading + "\n" + piece);
+                }
+                continue;
+            }
+            if (current.length() + sectionText.length() + 1 > maxChars) {
+                flush(current, chunks);
+            }
+            if (!current.isEmpty()) {
+                current.append('\n');
+            }
+            current.append(sectionText);
+        }
+        flush(current, chunks);
+
+        if (chunks.isEmpty()) {
+            return List.of(text);
+        }
+        if (chunks.size() <= maxChunks) {
+            return chunks;
+        }
+        int dropped = chunks.subList(maxChunks, chunks.size()).stream().mapToInt(String::length).sum();
+        log.warn("{} split into {} chunks, only the first {} are indexed: {} characters dropped",
+            document, chunks.size(), maxChunks, dropped);
+        return List.copyOf(chunks.subList(0, maxChunks));
+    }
+
+    /**
+     * Découpe le texte en sections {titre, contenu} ; le contenu précédant le premier titre a un titre vide.
+     */
+    private List<String[]> splitSections(String text) {
+        List<String[]> sections = new ArrayList<>();
+        String heading = "";
+        StringBuilder body = new StringBuilder();
+        for (String line : text.split("\\r?\\n")) {
+            if (isHeading(line)) {
+                sections.add(new String[] {heading, body.toString().strip()});
+                heading = line.strip();
+                body.setLength(0);
+            } else {
+                body.append(line).append('\n');
+            }
+        }
+        sections.add(new String[] {heading, body.toString().strip()});
+        return sections;
+    }
+
+    private boolean isHeading(String line) {
+        String trimmed = line.strip();
+        if (trimmed.length() < 3 || trimmed.length() > MAX_HEADING_LENGTH) {
+            return false;
+        }
+        if (trimmed.endsWith(":") && trimmed.indexOf(':') == trimmed.length() - 1) {
+            return true;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(trimmed, Normalizer.Form.NFD)).replaceAll("");
+        boolean upperCase = normalized.chars().filter(Character::isLetter).count() >= 3
+            && normalized.equals(normalized.toUpperCase(Locale.ROOT));
+        return upperCase || (KNOWN_HEADING.matcher(normalized.toLowerCase(Locale.ROOT)).matches()
+            && trimmed.split("\\s+").length <= 5);
+    }
+
+    /**
+     * Coupe une section trop longue aux paragraphes, puis aux lignes, puis aux espaces.
+     */
+    private List<String> splitLongSection(String body, int limit) {
+        int size = Math.max(100, limit);
+        List<String> pieces = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String paragraph : PARAGRAPHS.split(body)) {
+            for (String unit : paragraph.length() > size ? paragraph.split("\\r?\\n") : new String[] {paragraph}) {
+                String remaining = unit.strip();
+                while (remaining.length() > size) {
+                    int cut = remaining.lastIndexOf(' ', size);
+                    cut = cut > size / 2 ? cut : size;
+                    flush(current, pieces);
+                    pieces.add(remaining.substring(0, cut).strip());
+                    remaining = remaining.substring(cut).strip();
+                }
+                if (remaining.isEmpty()) {
+                    continue;
+                }
+                if (current.length() + remaining.length() + 1 > size) {
+                    flush(current, pieces);
+                }
+                if (!current.isEmpty()) {
+                    current.append('\n');
+                }
+                current.append(remaining);
+            }
+        }
+        flush(current, pieces);
+        return pieces;
+    }
+
+    private static void flush(StringBuilder current, List<String> chunks) {
+        if (!current.toString().isBlank()) {
+            chunks.add(current.toString().strip());
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,38 @@
+package ma.recrutement.service.ai;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vector store capable de rechercher à partir de l'embedding déjà stocké d'un document,
+ * sans recalculer l'embedding du texte de la requête.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public interface DocumentVectorStore extends VectorStore {
+
+    /**
+     * Recherche les documents les plus proches de l'embedding stocké pour un document.
+     * Si ce document n'est pas (ou plus) présent dans le store, la recherche se rabat
+     * sur l'embedding du texte de la requête.
+     *
+     * @param documentId l'ID du document de référence (vectorId de l'offre ou du CV)
+     * @param request la requête (topK, filtre, et texte utilisé en repli)
+     * @return les documents les plus proches
+     */
+    List<Document> similaritySearchByDocumentId(String documentId, SearchRequest request);
+
+    /**
+     * Supprime les segments indexés d'entités à partir d'un numéro de segment : ceux laissés par une
+     * version plus longue du document, ou par une limite de segments plus élevée.
+     *
+     * @param docType le type de document ("cv" ou "offre")
+     * @param firstStaleChunks pour chaque ID d'entité, le premier numéro de segment à supprimer
+     */
+    void deleteChunksFrom(String docType, Map<Long, Integer> firstStaleChunks);
+}
@@ -0,0 +1,313 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.util.HashUtil;
+import ma.recrutement.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Cache des embeddings, indexé par l'empreinte SHA-256 du modèle, de la dimension et du texte normalisé :
+ * le cache mémoire et la table utilisent la même clé, et un changement de modèle ne sert jamais un ancien vecteur.
+ * Une table persistante (embedding_cache) est précédée d'un cache mémoire LRU borné : ré-indexer
+ * un document inchangé ne coûte aucun appel au modèle d'embedding.
+ * Les accès à la table réutilisent la connexion de la transaction de l'appelant (aucune seconde connexion
+ * du pool) derrière un point de sauvegarde : une erreur du cache est annulée jusqu'à ce point sans
+ * compromettre la transaction de l'appelant, qui se rabat alors sur le modèle.
+ * La table est bornée ({@code max-rows}) : au-delà, les entrées les plus anciennes sont supprimées
+ * en arrière-plan, dans leur propre transaction.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class EmbeddingCacheService {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate cacheTransaction;
+    private final boolean enabled;
+    private final int maxRows;
+    private final String model;
+    private final int dimensions;
+    private final LruCache<String, float[]> memoryCache;
+    private final ExecutorService pruner;
+    // Rows written since the last pruning, and whether a pruning is queued
+    private final AtomicInteger insertedSincePrune = new AtomicInteger();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+
+    public EmbeddingCacheService(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${matching.embedding-cache.enabled:true}") boolean enabled,
+            @Value("${matching.embedding-cache.max-entries:2000}") int maxEntries,
+            @Value("${matching.embedding-cache.max-rows:100000}") int maxRows,
+            @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}") String model,
+            @Value("${spring.ai.openai.embedding.options.dimensions:1536}") int dimensions
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.cacheTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxRows = Math.max(1, maxRows);
+        this.model = model;
+        this.dimensions = dimensions;
+        this.memoryCache = new LruCache<>(Math.max(1, maxEntries));
+        this.pruner = Executors.newSingleThreadExecutor();
+        if (enabled) {
+            initializeSchema();
+            schedulePrune();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pruner.shutdownNow();
+    }
+
+    private void initializeSchema() {
+        try {
+            cacheTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS embedding_cache (
+                        content_hash CHAR(64) NOT NULL,
+                        model VARCHAR(100) NOT NULL,
+                        dimensions INT NOT NULL,
+                        embedding BYTEA NOT NULL,
+                        created_at TIMESTAMP NOT NULL DEFAULT now(),
+                        PRIMARY KEY (content_hash, model, dimensions)
+                    )
+                    """);
+                // Oldest-first eviction
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_embedding_cache_created_at ON embedding_cache (created_at)");
+            });
+        } catch (Exception e) {
+            log.warn("Embedding cache schema step failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Calcule les embeddings de textes, en n'appelant le modèle que pour les textes absents du cache
+     * (en un seul appel, chaque texte distinct une seule fois).
+     *
+     * @param texts les textes
+     * @param embedder l'appel au modèle d'embedding (résultats dans l'ordre des textes)
+     * @return les embeddings, dans l'ordre des textes
+     */
+    public List<float[]> embed(List<String> texts, Function<List<String>, List<float[]>> embedder) {
+        if (!enabled || texts.isEmpty()) {
+            return embedder.apply(texts);
+        }
+
+        // Distinct texts by fingerprint
+        Map<String, String> textsByKey = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            String key = key(text);
+            keys.add(key);
+            textsByKey.putIfAbsent(key, text);
+        }
+
+        Map<String, float[]> vectors = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : textsByKey.keySet()) {
+            float[] cached = memoryCache.get(key);
+            if (cached != null) {
+                vectors.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, float[]> stored = load(missing);
+            stored.forEach(memoryCache::put);
+            vectors.putAll(stored);
+            missing.removeAll(stored.keySet());
+        }
+
+        if (!missing.isEmpty()) {
+            List<float[]> computed = embedder.apply(missing.stream().map(textsByKey::get).toList());
+            if (computed.size() != missing.size()) {
+                throw new IllegalStateException("Embedding model returned " + computed.size()
+                    + " vectors for " + missing.size() + " texts");
+            }
+            Map<String, float[]> fresh = new LinkedHashMap<>();
+            for (int i = 0; i < missing.size(); i++) {
+                fresh.put(missing.get(i), computed.get(i));
+            }
+            fresh.forEach(memoryCache::put);
+            vectors.putAll(fresh);
+            save(fresh);
+        }
+        log.debug("Embeddings: {} text(s), {} computed by the model", texts.size(), missing.size());
+
+        List<float[]> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(vectors.get(key));
+        }
+        return results;
+    }
+
+    private Map<String, float[]> load(List<String> keys) {
+        try {
+            String placeholders = String.join(", ", Collections.nCopies(keys.size(), "?"));
+            List<Object> params = new ArrayList<>(keys.size() + 2);
+            params.add(model);
+            params.add(dimensions);
+            params.addAll(keys);
+            Map<String, float[]> stored = new HashMap<>();
+            onCallerConnection(() -> {
+                jdbcTemplate.query(
+                    "SELECT content_hash, embedding FROM embedding_cache WHERE model = ? AND dimensions = ?"
+                        + " AND content_hash IN (" + placeholders + ")",
+                    rs -> {
+                        stored.put(rs.getString("content_hash"), toVector(rs.getBytes("embedding")));
+                    },
+                    params.toArray());
+                return null;
+            });
+            return stored;
+        } catch (Exception e) {
+            log.warn("Embedding cache lookup failed: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void save(Map<String, float[]> vectors) {
+        try {
+            List<Object[]> rows = new ArrayList<>(vectors.size());
+            vectors.forEach((key, vector) -> rows.add(new Object[] {key, model, dimensions, toBytes(vector)}));
+            onCallerConnection(() -> jdbcTemplate.batchUpdate(
+                "INSERT INTO embedding_cache (content_hash, model, dimensions, embedding) VALUES (?, ?, ?, ?)"
+                    + " ON CONFLICT DO NOTHING",
+                rows));
+        } catch (Exception e) {
+            log.warn("Embedding cache write failed: {}", e.getMessage());
+            return;
+        }
+        if (insertedSincePrune.addAndGet(vectors.size()) >= pruneThreshold()) {
+            schedulePrune();
+        }
+    }
+
+    /**
+     * Exécute un accès à la table sur la connexion de la transaction en cours, derrière un point de sauvegarde.
+     * Hors transaction, l'accès s'exécute dans sa propre transaction.
+     */
+    private <T> T onCallerConnection(Supplier<T> access) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return cacheTransaction.execute(status -> access.get());
+        }
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                T result = access.get();
+                connection.releaseSavepoint(savepoint);
+                return result;
+            } catch (RuntimeException e) {
+                // Keeps the caller's transaction usable (PostgreSQL aborts it on any failed statement)
+                rollbackTo(connection, savepoint);
+                throw e;
+            }
+        });
+    }
+
+    private static void rollbackTo(Connection connection, Savepoint savepoint) {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            log.debug("Embedding cache savepoint rollback failed: {}", e.getMessage());
+        }
+    }
+
+    private void schedulePrune() {
+        if (pruning.compareAndSet(false, true)) {
+            try {
+                pruner.execute(this::prune);
+            } catch (Exception e) {
+                pruning.set(false);
+            }
+        }
+    }
+
+    /**
+     * Supprime les entrées les plus anciennes au-delà de {@code max-rows} (tâche de fond, sa propre transaction).
+     */
+    private void prune() {
+        insertedSincePrune.set(0);
+        try {
+            Integer deleted = cacheTransaction.execute(status -> jdbcTemplate.update(
+                "DELETE FROM embedding_cache WHERE created_at < ("
+                    + "SELECT created_at FROM embedding_cache ORDER BY created_at DESC OFFSET ? LIMIT 1)",
+                maxRows - 1));
+            if (deleted != null && deleted > 0) {
+                log.debug("Embedding cache: {} oldest embedding(s) evicted", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Embedding cache eviction failed: {}", e.getMessage());
+        } finally {
+            pruning.set(false);
+        }
+        // Rows written while this pruning ran
+        if (insertedSincePrune.get() >= pruneThreshold()) {
+            schedulePrune();
+        }
+    }
+
+    private int pruneThreshold() {
+        return Math.max(1, maxRows / 10);
+    }
+
+    /**
+     * Empreinte du modèle, de la dimension et du texte normalisé (Unicode NFC, espaces réduits).
+     */
+    private String key(String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+        return HashUtil.sha256Hex(model + "\n" + dimensions + "\n" + normalized);
+    }
+
+    private static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+
+    private static float[] toVector(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[bytes.length / Float.BYTES];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = buffer.getFloat();
+        }
+        return vector;
+    }
+}
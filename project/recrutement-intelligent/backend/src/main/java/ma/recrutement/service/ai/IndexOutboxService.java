@@ -0,0 +1,372 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.entity.IndexOutboxEvent;
+import ma.recrutement.entity.IndexOutboxEvent.StatutOutbox;
+import ma.recrutement.entity.IndexOutboxEvent.TypeEntite;
+import ma.recrutement.exception.ResourceNotFoundException;
+import ma.recrutement.repository.IndexOutboxRepository;
+import ma.recrutement.repository.OffreEmploiRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox transactionnelle des indexations de CV et d'offres.
+ * Une demande est écrite dans la transaction qui modifie l'entité, puis traitée après validation
+ * par un pool de workers borné : le dépilage ne réserve que autant de demandes que de workers libres
+ * (contre-pression sous forte charge), un échec est retenté avec un délai exponentiel, et les demandes
+ * en cours à l'arrêt sont soit terminées (arrêt gracieux), soit reprises par une instance une fois leur
+ * réservation expirée ({@code lease-timeout-ms}). Chaque instance renouvelle périodiquement la réservation
+ * des demandes qu'elle traite : une demande en cours sur une autre instance active, même longue, n'est
+ * jamais reprise en parallèle.
+ * <p>
+ * Les demandes répétées sont regroupées : une seule demande en attente par entité (index unique partiel),
+ * dont l'échéance est repoussée à chaque nouvelle demande pendant la fenêtre {@code debounce-ms}, dans la
+ * limite de {@code debounce-max-wait-ms}. Une entité en cours d'indexation n'est pas reprise en parallèle :
+ * la demande arrivée entre-temps attend la fin de l'indexation en cours.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class IndexOutboxService {
+
+    private final IndexOutboxRepository indexOutboxRepository;
+    private final OffreEmploiRepository offreEmploiRepository;
+    private final MatchingEngineService matchingEngineService;
+    private final VectorIndexService vectorIndexService;
+    private final TransactionTemplate transactionTemplate;
+    private final int workerCount;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final long shutdownTimeoutMs;
+    private final long debounceMs;
+    private final long debounceMaxWaitMs;
+    private final long leaseTimeoutMs;
+    private final Semaphore freeWorkers;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService poller;
+    private final ScheduledExecutorService heartbeat;
+    // Requests processed by this instance, whose reservation is renewed by the heartbeat
+    private final Set<Long> enCours = ConcurrentHashMap.newKeySet();
+
+    public IndexOutboxService(
+            IndexOutboxRepository indexOutboxRepository,
+            OffreEmploiRepository offreEmploiRepository,
+            MatchingEngineService matchingEngineService,
+            VectorIndexService vectorIndexService,
+            TransactionTemplate transactionTemplate,
+            DataSource dataSource,
+            @Value("${matching.outbox.workers:2}") int workers,
+            @Value("${matching.outbox.poll-interval-ms:2000}") long pollIntervalMs,
+            @Value("${matching.outbox.max-attempts:5}") int maxAttempts,
+            @Value("${matching.outbox.backoff-ms:5000}") long backoffMs,
+            @Value("${matching.outbox.max-backoff-ms:600000}") long maxBackoffMs,
+            @Value("${matching.outbox.shutdown-timeout-ms:30000}") long shutdownTimeoutMs,
+            @Value("${matching.outbox.debounce-ms:3000}") long debounceMs,
+            @Value("${matching.outbox.debounce-max-wait-ms:30000}") long debounceMaxWaitMs,
+            @Value("${matching.outbox.lease-timeout-ms:300000}") long leaseTimeoutMs
+    ) {
+        this.indexOutboxRepository = indexOutboxRepository;
+        this.offreEmploiRepository = offreEmploiRepository;
+        this.matchingEngineService = matchingEngineService;
+        this.vectorIndexService = vectorIndexService;
+        this.transactionTemplate = transactionTemplate;
+        this.workerCount = Math.max(1, workers);
+        this.pollIntervalMs = Math.max(100, pollIntervalMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(0, backoffMs);
+        this.maxBackoffMs = Math.max(this.backoffMs, maxBackoffMs);
+        this.shutdownTimeoutMs = Math.max(0, shutdownTimeoutMs);
+        this.debounceMs = Math.max(0, debounceMs);
+        this.debounceMaxWaitMs = Math.max(this.debounceMs, debounceMaxWaitMs);
+        this.leaseTimeoutMs = Math.max(0, leaseTimeoutMs);
+        this.freeWorkers = new Semaphore(this.workerCount);
+        this.workers = Executors.newFixedThreadPool(this.workerCount);
+        // Single poller: reservations are never made concurrently by this instance
+        this.poller = Executors.newSingleThreadScheduledExecutor();
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor();
+        initializeSchema(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * Crée l'index unique partiel qui garantit une seule demande en attente par entité
+     * (les doublons laissés par une version antérieure sont d'abord regroupés).
+     * Sans cet index, chaque demande échouerait et annulerait la transaction métier qui l'écrit :
+     * le démarrage est interrompu.
+     */
+    private void initializeSchema(JdbcTemplate jdbcTemplate) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("""
+                    DELETE FROM index_outbox a USING index_outbox b
+                    WHERE a.statut = 'EN_ATTENTE' AND b.statut = 'EN_ATTENTE'
+                      AND a.type_entite = b.type_entite AND a.entite_id = b.entite_id AND a.id < b.id
+                    """);
+                jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS index_outbox_en_attente_key "
+                    + "ON index_outbox (type_entite, entite_id) WHERE statut = 'EN_ATTENTE'");
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Index outbox schema step failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Demande l'indexation du CV d'un candidat, dans la transaction courante.
+     *
+     * @param candidatId l'ID du candidat
+     */
+    @Transactional
+    public void enqueueCv(Long candidatId) {
+        enqueue(TypeEntite.CV, candidatId);
+    }
+
+    /**
+     * Demande l'indexation d'une offre, dans la transaction courante.
+     *
+     * @param offreId l'ID de l'offre
+     * @throws ResourceNotFoundException si l'offre n'existe pas
+     */
+    @Transactional
+    public void enqueueOffre(Long offreId) {
+        if (!offreEmploiRepository.existsById(offreId)) {
+            throw new ResourceNotFoundException("Offre", offreId);
+        }
+        enqueue(TypeEntite.OFFRE, offreId);
+    }
+
+    /**
+     * Démarre le dépilage périodique (qui reprend aussi les demandes interrompues) et le renouvellement
+     * des réservations.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller.scheduleWithFixedDelay(this::drain, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        long interval = Math.max(1, leaseTimeoutMs / 3);
+        heartbeat.scheduleWithFixedDelay(this::renouvelerBaux, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Stop reserving, then let in-flight requests finish; unfinished ones stay EN_COURS until their lease expires
+        poller.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Index outbox not drained within {} ms, remaining requests will be resumed once their lease expires",
+                    shutdownTimeoutMs);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            // Renewed until the end of the graceful drain
+            heartbeat.shutdownNow();
+        }
+    }
+
+    private void enqueue(TypeEntite type, Long entiteId) {
+        // Coalesced with the pending request of the same entity, if any
+        LocalDateTime maintenant = LocalDateTime.now();
+        indexOutboxRepository.enregistrerOuRegrouper(type.name(), entiteId, maintenant,
+            maintenant.plusNanos(debounceMs * 1_000_000), debounceMaxWaitMs);
+
+        // Process at the end of the debounce window instead of waiting for the next poll
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        }
+    }
+
+    private void wakeUp() {
+        try {
+            poller.schedule(this::drain, debounceMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Index outbox poller stopped, request left for the next startup");
+        }
+    }
+
+    /**
+     * Reprend les demandes interrompues, puis réserve autant de demandes prêtes que de workers libres
+     * et les soumet.
+     */
+    private void drain() {
+        try {
+            reprendreInterrompues();
+            while (!Thread.currentThread().isInterrupted()) {
+                int permits = freeWorkers.drainPermits();
+                if (permits == 0) {
+                    return; // Back-pressure: workers will pick up the rest on a later poll
+                }
+                List<Long> ids = transactionTemplate.execute(status -> {
+                    List<Long> locked = indexOutboxRepository.verrouillerDisponibles(LocalDateTime.now(), permits);
+                    if (!locked.isEmpty()) {
+                        indexOutboxRepository.reserver(locked, LocalDateTime.now());
+                    }
+                    return locked;
+                });
+                freeWorkers.release(permits - ids.size());
+                if (ids.isEmpty()) {
+                    return;
+                }
+                for (Long id : ids) {
+                    submit(id);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Index outbox poll failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Renouvelle la réservation des demandes traitées par cette instance.
+     */
+    private void renouvelerBaux() {
+        try {
+            if (!enCours.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status ->
+                    indexOutboxRepository.renouvelerBail(List.copyOf(enCours), LocalDateTime.now()));
+            }
+        } catch (Exception e) {
+            log.warn("Index outbox heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Remet en attente les demandes dont la réservation a expiré (instance arrêtée pendant leur traitement).
+     */
+    private void reprendreInterrompues() {
+        LocalDateTime expiration = LocalDateTime.now().minusNanos(leaseTimeoutMs * 1_000_000);
+        Integer interrompues = transactionTemplate.execute(status -> {
+            // An interrupted request superseded by a newer pending one is dropped (unique pending request per entity)
+            indexOutboxRepository.supprimerInterrompuesRegroupees(expiration);
+            return indexOutboxRepository.remettreEnAttenteInterrompues(expiration);
+        });
+        if (interrompues != null && interrompues > 0) {
+            log.info("{} interrupted index request(s) put back in the outbox", interrompues);
+        }
+    }
+
+    private void submit(Long eventId) {
+        enCours.add(eventId);
+        try {
+            workers.submit(() -> {
+                try {
+                    process(eventId);
+                } finally {
+                    enCours.remove(eventId);
+                    freeWorkers.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enCours.remove(eventId);
+            freeWorkers.release();
+            log.debug("Index request {} not submitted (shutting down), it will be resumed once its lease expires", eventId);
+        }
+    }
+
+    private void process(Long eventId) {
+        IndexOutboxEvent event = indexOutboxRepository.findById(eventId).orElse(null);
+        if (event == null) {
+            return;
+        }
+
+        try {
+            switch (event.getTypeEntite()) {
+                case CV -> matchingEngineService.indexCv(event.getEntiteId());
+                case OFFRE -> matchingEngineService.indexOffre(event.getEntiteId());
+            }
+            Integer supprimee = transactionTemplate.execute(status -> indexOutboxRepository.supprimerTraitee(eventId));
+            if (supprimee == null || supprimee == 0) {
+                log.warn("Index request {} ({} {}) processed after its reservation expired, it will be processed again",
+                    eventId, event.getTypeEntite(), event.getEntiteId());
+            } else {
+                log.debug("Index request {} processed ({} {})", eventId, event.getTypeEntite(), event.getEntiteId());
+            }
+            // The partition may just have reached the size of a deferred IVFFLAT index
+            vectorIndexService.createDeferredIndexes();
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("Index request {} interrupted, it will be resumed once its lease expires", eventId);
+                return;
+            }
+            echec(eventId, e);
+        }
+    }
+
+    /**
+     * Replanifie une demande en échec avec un délai exponentiel, ou l'abandonne après le nombre maximal de tentatives.
+     * Une demande en attente pour la même entité remplace la nouvelle tentative.
+     */
+    private void echec(Long eventId, Exception e) {
+        transactionTemplate.executeWithoutResult(status -> {
+            IndexOutboxEvent event = indexOutboxRepository.findById(eventId).orElse(null);
+            if (event == null || event.getStatut() != StatutOutbox.EN_COURS) {
+                // Reservation expired meanwhile: the request was put back in the outbox and is no longer ours
+                return;
+            }
+            int tentatives = event.getTentatives() + 1;
+            String message = e.getMessage() == null ? e.getClass().getName()
+                : e.getMessage().length() > 1000 ? e.getMessage().substring(0, 1000) : e.getMessage();
+
+            if (tentatives < maxAttempts) {
+                // Retry or supersede in one statement: a request enqueued meanwhile, even uncommitted yet,
+                // takes precedence instead of violating the unique pending request index
+                long delayMs = Math.min(maxBackoffMs, backoffMs << Math.min(tentatives - 1, 20));
+                int replanifiees = indexOutboxRepository.replanifierOuRemplacer(eventId, tentatives,
+                    LocalDateTime.now().plusNanos(delayMs * 1_000_000), message);
+                if (replanifiees == 0) {
+                    log.warn("Index request {} ({} {}) failed, superseded by a pending request: {}",
+                        eventId, event.getTypeEntite(), event.getEntiteId(), message);
+                } else {
+                    log.warn("Index request {} ({} {}) failed (attempt {}/{}), retry in {} ms: {}",
+                        eventId, event.getTypeEntite(), event.getEntiteId(), tentatives, maxAttempts, delayMs, message);
+                }
+                return;
+            }
+
+            if (indexOutboxRepository.existsByTypeEntiteAndEntiteIdAndStatut(
+                    event.getTypeEntite(), event.getEntiteId(), StatutOutbox.EN_ATTENTE)) {
+                // A newer request is already pending for this entity: it supersedes the abandoned one
+                log.warn("Index request {} ({} {}) abandoned, superseded by a pending request: {}",
+                    eventId, event.getTypeEntite(), event.getEntiteId(), message);
+                indexOutboxRepository.delete(event);
+                return;
+            }
+            event.setTentatives(tentatives);
+            event.setMessageErreur(message);
+            event.setStatut(StatutOutbox.ECHEC);
+            indexOutboxRepository.save(event);
+            log.error("Index request {} ({} {}) abandoned after {} attempt(s): {}",
+                eventId, event.getTypeEntite(), event.getEntiteId(), tentatives, message, e);
+        });
+    }
+}
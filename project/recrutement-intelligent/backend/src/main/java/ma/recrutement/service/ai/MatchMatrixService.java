@@ -0,0 +1,133 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.dto.MatchingResultDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moteur de pré-calcul de la matrice de matching offre × candidat.
+ * À chaque indexation d'une offre (publication) ou d'un CV, les couples concernés sont
+ * scorés en arrière-plan et stockés dans match_results, où chaque sens (offre, candidat)
+ * marque son propre top-K ; les recherches de top-K lisent ensuite directement cette table.
+ * Un couple scoré depuis l'autre sens entre aussi dans le top-K de son offre (ou de son candidat)
+ * s'il y dépasse le K-ième score : un nouveau CV apparaît dans le classement des offres déjà
+ * calculées, et une nouvelle offre dans celui des candidats.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class MatchMatrixService {
+
+    private final MatchingEngineService matchingEngineService;
+    private final MatchResultCacheService matchResultCacheService;
+    private final boolean enabled;
+    private final int topK;
+    private final ExecutorService workers;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public MatchMatrixService(
+            MatchingEngineService matchingEngineService,
+            MatchResultCacheService matchResultCacheService,
+            @Value("${matching.precompute.enabled:true}") boolean enabled,
+            @Value("${matching.precompute.top-k:20}") int topK,
+            @Value("${matching.precompute.workers:1}") int workers
+    ) {
+        this.matchingEngineService = matchingEngineService;
+        this.matchResultCacheService = matchResultCacheService;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers));
+    }
+
+    /**
+     * Planifie le calcul des couples d'une offre dès que son indexation est validée.
+     *
+     * @param event l'événement d'indexation
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOffreIndexed(OffreIndexedEvent event) {
+        schedule("offre:" + event.offreId(), () -> refreshOffre(event.offreId()));
+    }
+
+    /**
+     * Planifie le calcul des couples d'un candidat dès que l'indexation de son CV est validée.
+     *
+     * @param event l'événement d'indexation
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCvIndexed(CvIndexedEvent event) {
+        schedule("cv:" + event.candidatId(), () -> refreshCandidat(event.candidatId()));
+    }
+
+    /**
+     * Recalcule les meilleurs candidats d'une offre et retire du top-K de l'offre les couples sortis
+     * du classement. Côté candidats, l'offre n'entre que dans le top-K de ceux pour qui elle dépasse
+     * la K-ième offre.
+     *
+     * @param offreId l'ID de l'offre
+     */
+    public void refreshOffre(Long offreId) {
+        List<MatchingResultDTO> results = matchingEngineService.findMatchingCandidates(offreId, topK, MatchingListener.NONE);
+        List<Long> candidatIds = results.stream().map(MatchingResultDTO::getCandidatId).toList();
+        int removed = matchResultCacheService.updateTopOffre(offreId, candidatIds);
+        int promoted = matchResultCacheService.promoteInTopCandidats(offreId, candidatIds, topK);
+        log.info("Match matrix refreshed for offre {}: {} pair(s) scored, {} pair(s) left the top-K, "
+            + "entered the top-K of {} candidat(s)", offreId, results.size(), removed, promoted);
+    }
+
+    /**
+     * Recalcule les meilleures offres d'un candidat et retire du top-K du candidat les couples sortis
+     * du classement. Côté offres, le candidat n'entre que dans le top-K de celles pour qui il dépasse
+     * le K-ième candidat.
+     *
+     * @param candidatId l'ID du candidat
+     */
+    public void refreshCandidat(Long candidatId) {
+        List<MatchingResultDTO> results = matchingEngineService.findMatchingOffres(candidatId, topK, MatchingListener.NONE);
+        List<Long> offreIds = results.stream().map(MatchingResultDTO::getOffreId).toList();
+        int removed = matchResultCacheService.updateTopCandidat(candidatId, offreIds);
+        int promoted = matchResultCacheService.promoteInTopOffres(candidatId, offreIds, topK);
+        log.info("Match matrix refreshed for candidat {}: {} pair(s) scored, {} pair(s) left the top-K, "
+            + "entered the top-K of {} offre(s)", candidatId, results.size(), removed, promoted);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Soumet un recalcul, sauf si le même recalcul attend déjà son exécution
+     * (des indexations rapprochées ne produisent qu'un seul calcul).
+     */
+    private void schedule(String key, Runnable refresh) {
+        if (!enabled || !pending.add(key)) {
+            return;
+        }
+        try {
+            workers.submit(() -> {
+                pending.remove(key);
+                try {
+                    refresh.run();
+                } catch (Exception e) {
+                    log.error("Match matrix refresh failed for {}: {}", key, e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            log.warn("Match matrix refresh for {} not submitted (shutting down)", key);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.Competence;
+import ma.recrutement.entity.Experience;
+import ma.recrutement.entity.OffreEmploi;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Pré-scoring local et déterministe d'un couple offre/candidat.
+ * Calculé entièrement dans la JVM (compétences, années d'expérience, localisation),
+ * il sert à ne transmettre à l'analyse GPT-4 que les meilleurs profils.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Component
+public class MatchPreScorer {
+
+    // Pre-scoring weights (education is only known by the AI stage)
+    private static final double SKILLS_WEIGHT = 0.50;
+    private static final double EXPERIENCE_WEIGHT = 0.30;
+    private static final double LOCATION_WEIGHT = 0.20;
+
+    private static final Pattern SKILL_SEPARATORS = Pattern.compile("[,;/|\\n•·]+|\\s+-\\s+|\\s+et\\s+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final int MAX_SKILL_LENGTH = 40;
+
+    /**
+     * Calcule le pré-score (0-100) d'un couple offre/candidat.
+     *
+     * @param offre l'offre d'emploi
+     * @param candidat le candidat
+     * @return le pré-score pondéré
+     */
+    public int score(OffreEmploi offre, Candidat candidat) {
+        return (int) Math.round(
+            (calculateSkillScore(offre, candidat) * SKILLS_WEIGHT) +
+            (calculateExperienceScore(offre, candidat) * EXPERIENCE_WEIGHT) +
+            (calculateLocationScore(offre, candidat) * LOCATION_WEIGHT)
+        );
+    }
+
+    /**
+     * Calcule le recouvrement (0-100) entre les compétences requises par l'offre
+     * et les compétences déclarées (ou citées dans le CV) par le candidat.
+     */
+    public int calculateSkillScore(OffreEmploi offre, Candidat candidat) {
+        List<String> requises = parseSkills(offre.getCompetencesRequises());
+        if (requises.isEmpty()) {
+            return 50; // Neutral score if the offer lists no skills
+        }
+
+        Set<String> declarees = candidat.getCompetences() == null ? Set.of() :
+            candidat.getCompetences().stream()
+                .map(Competence::getNom)
+                .filter(nom -> nom != null && !nom.isBlank())
+                .map(MatchPreScorer::normalize)
+                .collect(Collectors.toSet());
+        String cvText = candidat.getCvText() != null ? normalize(candidat.getCvText()) : "";
+
+        double matched = 0;
+        for (String skill : requises) {
+            if (declarees.stream().anyMatch(d -> containsTerm(d, skill) || containsTerm(skill, d))) {
+                matched += 1.0;
+            } else if (!cvText.isEmpty() && containsTerm(cvText, skill)) {
+                matched += 0.75;
+            }
+        }
+        return (int) Math.round(100 * matched / requises.size());
+    }
+
+    /**
+     * Calcule l'adéquation (0-100) entre l'expérience cumulée du candidat et le minimum demandé.
+     */
+    public int calculateExperienceScore(OffreEmploi offre, Candidat candidat) {
+        double annees = experienceYears(candidat.getExperiences());
+        Integer minimum = offre.getExperienceMinAnnees();
+        if (minimum == null || minimum <= 0) {
+            return annees > 0 ? 100 : 70;
+        }
+        return (int) Math.min(100, Math.round(100 * annees / minimum));
+    }
+
+    /**
+     * Calcule le score de localisation (0-100).
+     */
+    public int calculateLocationScore(OffreEmploi offre, Candidat candidat) {
+        // If remote work is allowed, give full score
+        if (offre.getTeletravail() != null && offre.getTeletravail()) {
+            return 100;
+        }
+
+        // Check candidate mobility
+        String mobilite = candidat.getMobilite();
+        if (mobilite != null) {
+            mobilite = mobilite.toLowerCase();
+            if (mobilite.contains("nationale") || mobilite.contains("international") || mobilite.contains("mondial")) {
+                return 100;
+            }
+            if (mobilite.contains("regionale") || mobilite.contains("locale")) {
+                return 80;
+            }
+        }
+
+        // Check if locations match (basic string comparison)
+        String offreLoc = offre.getLocalisation();
+        if (offreLoc != null && candidat.getExperiences() != null) {
+            for (Experience exp : candidat.getExperiences()) {
+                if (exp.getLocalisation() != null &&
+                    exp.getLocalisation().toLowerCase().contains(offreLoc.toLowerCase())) {
+                    return 90;
+                }
+            }
+        }
+
+        return 50; // Neutral score if no information
+    }
+
+    /**
+     * Calcule le nombre d'années d'expérience à partir des dates, sans compter
+     * deux fois les périodes qui se chevauchent.
+     *
+     * @param experiences les expériences du candidat
+     * @return le nombre d'années d'expérience
+     */
+    static double experienceYears(List<Experience> experiences) {
+        if (experiences == null || experiences.isEmpty()) {
+            return 0;
+        }
+
+        LocalDate today = LocalDate.now();
+        List<LocalDate[]> periodes = new ArrayList<>();
+        for (Experience exp : experiences) {
+            if (exp.getDateDebut() == null) {
+                continue;
+            }
+            LocalDate fin = Boolean.TRUE.equals(exp.getEmploiActuel()) || exp.getDateFin() == null
+                ? today : exp.getDateFin();
+            if (fin.isAfter(exp.getDateDebut())) {
+                periodes.add(new LocalDate[] {exp.getDateDebut(), fin});
+            }
+        }
+        periodes.sort(Comparator.comparing(p -> p[0]));
+
+        long mois = 0;
+        LocalDate debut = null;
+        LocalDate fin = null;
+        for (LocalDate[] periode : periodes) {
+            if (fin == null || periode[0].isAfter(fin)) {
+                if (fin != null) {
+                    mois += ChronoUnit.MONTHS.between(debut, fin);
+                }
+                debut = periode[0];
+                fin = periode[1];
+            } else if (periode[1].isAfter(fin)) {
+                fin = periode[1];
+            }
+        }
+        if (fin != null) {
+            mois += ChronoUnit.MONTHS.between(debut, fin);
+        }
+        return mois / 12.0;
+    }
+
+    private static List<String> parseSkills(String competences) {
+        if (competences == null || competences.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(SKILL_SEPARATORS.split(competences))
+            .map(MatchPreScorer::normalize)
+            .filter(skill -> skill.length() >= 2 && skill.length() <= MAX_SKILL_LENGTH)
+            .collect(Collectors.toCollection(LinkedHashSet::new))
+            .stream()
+            .toList();
+    }
+
+    /**
+     * Indique si un terme apparaît comme mot entier (ou groupe de mots) dans un texte :
+     * « go » ne correspond pas à « django », ni « c » à « c++ » ou « docker ».
+     */
+    static boolean containsTerm(String text, String term) {
+        if (term.isEmpty()) {
+            return false;
+        }
+        for (int from = text.indexOf(term); from >= 0; from = text.indexOf(term, from + 1)) {
+            int end = from + term.length();
+            if ((from == 0 || !isTermChar(text.charAt(from - 1)))
+                    && (end == text.length() || !isTermChar(text.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // '+' and '#' belong to skill names (c++, c#)
+    private static boolean isTermChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '+' || c == '#';
+    }
+
+    private static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("")
+            .toLowerCase(Locale.ROOT)
+            .replaceAll("\\s+", " ")
+            .trim();
+    }
+}
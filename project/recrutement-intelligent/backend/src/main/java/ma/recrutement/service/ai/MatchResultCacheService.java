@@ -0,0 +1,246 @@
+package ma.recrutement.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.entity.MatchResult;
+import ma.recrutement.repository.MatchResultRepository;
+import ma.recrutement.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cache des analyses IA offre/candidat.
+ * Une table persistante (match_results) est précédée d'un cache mémoire LRU borné.
+ * Une entrée n'est valide que si son empreinte correspond à celle des entrées actuelles
+ * du prompt : toute modification de l'offre ou du profil invalide donc le résultat.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class MatchResultCacheService {
+
+    private final MatchResultRepository matchResultRepository;
+    private final boolean enabled;
+    private final LruCache<String, MatchResult> memoryCache;
+
+    public MatchResultCacheService(
+            MatchResultRepository matchResultRepository,
+            @Value("${matching.cache.enabled:true}") boolean enabled,
+            @Value("${matching.cache.max-entries:5000}") int maxEntries
+    ) {
+        this.matchResultRepository = matchResultRepository;
+        this.enabled = enabled;
+        this.memoryCache = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Recherche une analyse valide pour un couple offre/candidat.
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatId l'ID du candidat
+     * @param empreinte l'empreinte des entrées actuelles du prompt
+     * @return l'analyse mémorisée, ou Optional vide si absente ou périmée
+     */
+    public Optional<MatchResult> find(Long offreId, Long candidatId, String empreinte) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        String key = key(offreId, candidatId);
+        MatchResult cached = memoryCache.get(key);
+        if (cached == null) {
+            cached = matchResultRepository.findByOffreIdAndCandidatId(offreId, candidatId).orElse(null);
+            if (cached != null) {
+                memoryCache.put(key, cached);
+            }
+        }
+
+        if (cached != null && empreinte.equals(cached.getEmpreinte())) {
+            return Optional.of(cached);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Mémorise (ou remplace) l'analyse d'un couple offre/candidat.
+     *
+     * @param result l'analyse à mémoriser
+     */
+    public void save(MatchResult result) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            // A fresh analysis keeps the pair's top-K membership, owned by the matrix refreshes
+            matchResultRepository.findByOffreIdAndCandidatId(result.getOffreId(), result.getCandidatId())
+                .ifPresent(existing -> {
+                    result.setId(existing.getId());
+                    result.setTopOffre(existing.getTopOffre());
+                    result.setTopCandidat(existing.getTopCandidat());
+                });
+            MatchResult saved = matchResultRepository.save(result);
+            memoryCache.put(key(saved.getOffreId(), saved.getCandidatId()), saved);
+        } catch (DataIntegrityViolationException e) {
+            // Analyse concurrente du même couple : la première écriture est conservée
+            log.debug("Match result already stored for offre {} / candidat {}",
+                result.getOffreId(), result.getCandidatId());
+        }
+    }
+
+    /**
+     * Remplace le top-K pré-calculé d'une offre par les candidats donnés.
+     * Seul l'indicateur de l'offre est modifié : le top-K des candidats et les analyses
+     * mémorisées restent intacts.
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatIds les candidats du top-K
+     * @return le nombre de couples sortis du top-K
+     */
+    @Transactional
+    public int updateTopOffre(Long offreId, Collection<Long> candidatIds) {
+        if (candidatIds.isEmpty()) {
+            return matchResultRepository.unmarkTopOffre(offreId);
+        }
+        matchResultRepository.markTopOffre(offreId, candidatIds);
+        return matchResultRepository.unmarkTopOffreExcept(offreId, candidatIds);
+    }
+
+    /**
+     * Remplace le top-K pré-calculé d'un candidat par les offres données.
+     * Seul l'indicateur du candidat est modifié : le top-K des offres et les analyses
+     * mémorisées restent intacts.
+     *
+     * @param candidatId l'ID du candidat
+     * @param offreIds les offres du top-K
+     * @return le nombre de couples sortis du top-K
+     */
+    @Transactional
+    public int updateTopCandidat(Long candidatId, Collection<Long> offreIds) {
+        if (offreIds.isEmpty()) {
+            return matchResultRepository.unmarkTopCandidat(candidatId);
+        }
+        matchResultRepository.markTopCandidat(candidatId, offreIds);
+        return matchResultRepository.unmarkTopCandidatExcept(candidatId, offreIds);
+    }
+
+    /**
+     * Fait entrer un candidat fraîchement scoré dans le top-K des offres données, lorsque le score
+     * mémorisé du couple dépasse le K-ième score de l'offre (ou que son top-K est incomplet) ;
+     * le couple le plus faible sort alors du top-K de l'offre.
+     *
+     * @param candidatId l'ID du candidat
+     * @param offreIds les offres scorées pour ce candidat
+     * @param topK la taille du top-K
+     * @return le nombre d'offres dont le top-K a accueilli le candidat
+     */
+    @Transactional
+    public int promoteInTopOffres(Long candidatId, Collection<Long> offreIds, int topK) {
+        int promoted = 0;
+        for (Long offreId : offreIds) {
+            MatchResult pair = matchResultRepository.findByOffreIdAndCandidatId(offreId, candidatId).orElse(null);
+            if (pair == null || pair.getScoreMatching() == null || Boolean.TRUE.equals(pair.getTopOffre())) {
+                continue;
+            }
+            List<Object[]> top = matchResultRepository.findTopOffreScores(offreId);
+            List<Long> evicted = evicted(top, pair.getScoreMatching(), topK);
+            if (evicted == null) {
+                continue;
+            }
+            matchResultRepository.markTopOffre(offreId, List.of(candidatId));
+            if (!evicted.isEmpty()) {
+                matchResultRepository.unmarkTopOffreFor(offreId, evicted);
+            }
+            promoted++;
+        }
+        return promoted;
+    }
+
+    /**
+     * Fait entrer une offre fraîchement scorée dans le top-K des candidats donnés, lorsque le score
+     * mémorisé du couple dépasse le K-ième score du candidat (ou que son top-K est incomplet) ;
+     * le couple le plus faible sort alors du top-K du candidat.
+     *
+     * @param offreId l'ID de l'offre
+     * @param candidatIds les candidats scorés pour cette offre
+     * @param topK la taille du top-K
+     * @return le nombre de candidats dont le top-K a accueilli l'offre
+     */
+    @Transactional
+    public int promoteInTopCandidats(Long offreId, Collection<Long> candidatIds, int topK) {
+        int promoted = 0;
+        for (Long candidatId : candidatIds) {
+            MatchResult pair = matchResultRepository.findByOffreIdAndCandidatId(offreId, candidatId).orElse(null);
+            if (pair == null || pair.getScoreMatching() == null || Boolean.TRUE.equals(pair.getTopCandidat())) {
+                continue;
+            }
+            List<Object[]> top = matchResultRepository.findTopCandidatScores(candidatId);
+            List<Long> evicted = evicted(top, pair.getScoreMatching(), topK);
+            if (evicted == null) {
+                continue;
+            }
+            matchResultRepository.markTopCandidat(candidatId, List.of(offreId));
+            if (!evicted.isEmpty()) {
+                matchResultRepository.unmarkTopCandidatFor(candidatId, evicted);
+            }
+            promoted++;
+        }
+        return promoted;
+    }
+
+    /**
+     * Détermine les couples à sortir d'un top-K pour y faire entrer un nouveau score.
+     *
+     * @param top les lignes {ID, score} du top-K, du plus faible au plus élevé
+     * @return les IDs à sortir (vide si le top-K est incomplet), ou null si le score n'y entre pas
+     */
+    private static List<Long> evicted(List<Object[]> top, int score, int topK) {
+        int overflow = top.size() - Math.max(1, topK) + 1;
+        if (overflow <= 0) {
+            return List.of();
+        }
+        if (score <= ((Number) top.get(overflow - 1)[1]).intValue()) {
+            return null;
+        }
+        return top.subList(0, overflow).stream().map(row -> (Long) row[0]).toList();
+    }
+
+    /**
+     * Supprime tous les résultats d'une offre (offre clôturée ou annulée).
+     *
+     * @param offreId l'ID de l'offre
+     * @return le nombre de résultats supprimés
+     */
+    @Transactional
+    public int deleteForOffre(Long offreId) {
+        int deleted = matchResultRepository.deleteByOffreId(offreId);
+        String prefix = offreId + ":";
+        memoryCache.removeIf(key -> key.startsWith(prefix));
+        return deleted;
+    }
+
+    /**
+     * Supprime tous les résultats d'un candidat (CV supprimé).
+     *
+     * @param candidatId l'ID du candidat
+     * @return le nombre de résultats supprimés
+     */
+    @Transactional
+    public int deleteForCandidat(Long candidatId) {
+        int deleted = matchResultRepository.deleteByCandidatId(candidatId);
+        String suffix = ":" + candidatId;
+        memoryCache.removeIf(key -> key.endsWith(suffix));
+        return deleted;
+    }
+
+    private String key(Long offreId, Long candidatId) {
+        return offreId + ":" + candidatId;
+    }
+}
@@ -2,6 +2,7 @@ package ma.recrutement.service.ai;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,22 +10,39 @@ import ma.recrutement.dto.MatchingResultDTO;
 import ma.recrutement.entity.Candidat;
 import ma.recrutement.entity.Competence;
 import ma.recrutement.entity.Experience;
+import ma.recrutement.entity.MatchResult;
 import ma.recrutement.entity.OffreEmploi;
 import ma.recrutement.repository.CandidatRepository;
+import ma.recrutement.repository.MatchResultRepository;
 import ma.recrutement.repository.OffreEmploiRepository;
+import ma.recrutement.util.HashUtil;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 /**
@@ -39,11 +57,49 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MatchingEngineService {
 
-    private final VectorStore vectorStore;
+    private final DocumentVectorStore vectorStore;
     private final ChatClient chatClient;
     private final CandidatRepository candidatRepository;
     private final OffreEmploiRepository offreEmploiRepository;
     private final ObjectMapper objectMapper;
+    private final AiScoringExecutor aiScoringExecutor;
+    private final MatchResultCacheService matchResultCacheService;
+    private final MatchPreScorer matchPreScorer;
+    private final TransactionTemplate transactionTemplate;
+    private final MatchResultRepository matchResultRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DocumentChunker documentChunker;
+
+    @Value("${matching.prescore.enabled:true}")
+    private boolean preScoreEnabled;
+
+    @Value("${matching.prescore.top-n:10}")
+    private int preScoreTopN;
+
+    @Value("${matching.ai.batch.size:5}")
+    private int batchSize;
+
+    @Value("${matching.ai.batch.max-cv-chars:3000}")
+    private int batchMaxCvChars;
+
+    @Value("${matching.precompute.enabled:true}")
+    private boolean precomputeEnabled;
+
+    @Value("${matching.precompute.top-k:20}")
+    private int precomputeTopK;
+
+    @Value("${matching.chunking.search-top-k:150}")
+    private int chunkSearchTopK;
+
+    @Value("${matching.chunking.aggregation:MAX}")
+    private String chunkAggregation;
+
+    // Distinct documents kept from the vector search for pre-scoring
+    private static final int VECTOR_SHORTLIST_SIZE = 50;
+
+    // Vector search filters, evaluated in SQL by the vector store
+    private static final Filter.Expression CV_FILTER = new FilterExpressionBuilder().eq("type", "cv").build();
+    private static final Filter.Expression OFFRE_PUBLIEE_FILTER = buildOffrePublieeFilter();
 
     // Scoring weights
     private static final double SKILLS_WEIGHT = 0.40;
@@ -66,39 +122,221 @@ public class MatchingEngineService {
             return;
         }
 
-        // Generate UUID for document ID (required by PgVectorStore)
-        String documentId = UUID.randomUUID().toString();
-        Document document = new Document(
-            documentId,
-            candidat.getCvText(),
-            Map.of(
-                "candidatId", candidatId.toString(),
-                "type", "cv",
-                "nom", candidat.getNom() + " " + candidat.getPrenom()
-            )
-        );
-
         // Ajouter au vector store
-        List<Document> documents = List.of(document);
+        List<Document> documents = cvDocuments(candidat);
         vectorStore.add(documents);
+        vectorStore.deleteChunksFrom("cv", Map.of(candidatId, documents.size()));
 
         // Mettre à jour le candidat avec l'ID du vector
-        candidat.setCvVectorId(documentId);
+        candidat.setCvVectorId(documentId("cv", candidatId));
         candidatRepository.save(candidat);
 
+        // Score the affected pairs in the background once the transaction commits
+        eventPublisher.publishEvent(new CvIndexedEvent(candidatId));
+
         log.info("CV indexé pour le candidat: {}", candidatId);
     }
 
     /**
-     * Indexe le CV du candidat connecté.
+     * Indexe un lot de CV en une seule écriture dans le vector store (embeddings par lots, upserts groupés).
+     * Utilisé par la ré-indexation en masse : aucun recalcul de la matrice de matching n'est déclenché.
+     *
+     * @param candidatIds les IDs des candidats
+     * @return le nombre de CV indexés (les candidats sans texte de CV sont ignorés)
      */
-    public void indexMyCv() {
-        // Get current candidate from security context
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String email = authentication.getName();
-        Candidat candidat = candidatRepository.findByEmail(email)
-            .orElseThrow(() -> new RuntimeException("Candidat non trouvé"));
-        indexCv(candidat.getId());
+    @org.springframework.transaction.annotation.Transactional
+    public int indexCvs(Collection<Long> candidatIds) {
+        List<Candidat> candidats = candidatRepository.findAllById(candidatIds).stream()
+            .filter(candidat -> candidat.getCvText() != null && !candidat.getCvText().isBlank())
+            .toList();
+        if (candidats.isEmpty()) {
+            return 0;
+        }
+
+        List<Document> documents = new ArrayList<>();
+        Map<Long, Integer> chunkCounts = new HashMap<>();
+        for (Candidat candidat : candidats) {
+            List<Document> cvDocuments = cvDocuments(candidat);
+            documents.addAll(cvDocuments);
+            chunkCounts.put(candidat.getId(), cvDocuments.size());
+            candidat.setCvVectorId(documentId("cv", candidat.getId()));
+        }
+        vectorStore.add(documents);
+        vectorStore.deleteChunksFrom("cv", chunkCounts);
+        candidatRepository.saveAll(candidats);
+        return candidats.size();
+    }
+
+    /**
+     * Indexe un lot d'offres en une seule écriture dans le vector store (embeddings par lots, upserts groupés).
+     * Utilisé par la ré-indexation en masse : aucun recalcul de la matrice de matching n'est déclenché.
+     *
+     * @param offreIds les IDs des offres
+     * @return le nombre d'offres indexées
+     */
+    @org.springframework.transaction.annotation.Transactional
+    public int indexOffres(Collection<Long> offreIds) {
+        List<OffreEmploi> offres = offreEmploiRepository.findWithEntrepriseByIdIn(offreIds);
+        if (offres.isEmpty()) {
+            return 0;
+        }
+
+        List<Document> documents = new ArrayList<>();
+        Map<Long, Integer> chunkCounts = new HashMap<>();
+        for (OffreEmploi offre : offres) {
+            List<Document> offreDocuments = offreDocuments(offre);
+            documents.addAll(offreDocuments);
+            chunkCounts.put(offre.getId(), offreDocuments.size());
+            offre.setVectorId(documentId("offre", offre.getId()));
+        }
+        vectorStore.add(documents);
+        vectorStore.deleteChunksFrom("offre", chunkCounts);
+        offreEmploiRepository.saveAll(offres);
+        return offres.size();
+    }
+
+    /**
+     * Construit les documents indexés d'un CV : un vecteur par segment, sous des IDs stables
+     * (une ré-indexation remplace les vecteurs précédents du candidat).
+     */
+    private List<Document> cvDocuments(Candidat candidat) {
+        Long candidatId = candidat.getId();
+        List<String> chunks = documentChunker.chunk(candidat.getCvText(), "CV of candidat " + candidatId);
+        List<Document> documents = new ArrayList<>(chunks.size());
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            documents.add(new Document(
+                documentId("cv", candidatId, chunk),
+                chunks.get(chunk),
+                Map.of(
+                    "candidatId", candidatId.toString(),
+                    "type", "cv",
+                    "nom", candidat.getNom() + " " + candidat.getPrenom(),
+                    "chunk", String.valueOf(chunk)
+                )
+            ));
+        }
+        return documents;
+    }
+
+    /**
+     * Construit les documents indexés d'une offre : un vecteur par segment, sous des IDs stables
+     * (une ré-indexation remplace les vecteurs précédents de l'offre).
+     */
+    private List<Document> offreDocuments(OffreEmploi offre) {
+        Long offreId = offre.getId();
+        String nomEntreprise = offre.getEntreprise() != null ? offre.getEntreprise().getNom() : "Non spécifiée";
+        List<String> chunks = documentChunker.chunk(buildOffreText(offre), "offre " + offreId);
+        List<Document> documents = new ArrayList<>(chunks.size());
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            documents.add(new Document(
+                documentId("offre", offreId, chunk),
+                chunks.get(chunk),
+                Map.of(
+                    "offreId", offreId.toString(),
+                    "type", "offre",
+                    "statut", offre.getStatut().name(),
+                    "titre", offre.getTitre(),
+                    "entreprise", nomEntreprise,
+                    "chunk", String.valueOf(chunk)
+                )
+            ));
+        }
+        return documents;
+    }
+
+    /**
+     * Calcule l'ID de document (UUID déterministe) d'une entité indexée.
+     *
+     * @param type le type de document ("cv" ou "offre")
+     * @param entityId l'ID de l'entité
+     * @return l'ID de document
+     */
+    private static String documentId(String type, Long entityId) {
+        return UUID.nameUUIDFromBytes((type + ":" + entityId).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Calcule l'ID de document d'un segment ; le premier segment garde l'ID de l'entité.
+     *
+     * @param type le type de document ("cv" ou "offre")
+     * @param entityId l'ID de l'entité
+     * @param chunk le numéro du segment
+     * @return l'ID de document
+     */
+    private static String documentId(String type, Long entityId, int chunk) {
+        return chunk == 0 ? documentId(type, entityId)
+            : UUID.nameUUIDFromBytes((type + ":" + entityId + ":" + chunk).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Recherche vectorielle multi-vecteurs : chaque segment du document de requête est comparé aux
+     * segments indexés, puis les résultats sont agrégés par entité (meilleure similarité d'un segment,
+     * puis maximum ou somme sur les segments de la requête).
+     *
+     * @param queryType le type du document de requête
+     * @param queryId l'ID de l'entité de requête
+     * @param queryText le texte de la requête
+     * @param filter le filtre des documents cibles
+     * @param targetType le type des documents cibles
+     * @param targetIdKey la clé de métadonnée portant l'ID de l'entité cible
+     * @return les IDs des entités cibles, par score décroissant
+     */
+    private List<Long> searchSimilarEntities(String queryType, Long queryId, String queryText, Filter.Expression filter,
+                                             String targetType, String targetIdKey) {
+        boolean sum = "SUM".equalsIgnoreCase(chunkAggregation.trim());
+        List<String> chunks = documentChunker.chunk(queryText, "Search text of " + queryType + " " + queryId);
+        // Several chunks per target entity: fetch more documents to keep enough distinct entities
+        int topK = documentChunker.isEnabled() ? Math.max(chunkSearchTopK, VECTOR_SHORTLIST_SIZE) : VECTOR_SHORTLIST_SIZE;
+        Map<Long, Double> scores = new HashMap<>();
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            SearchRequest searchRequest = SearchRequest.query(chunks.get(chunk))
+                .withTopK(topK)
+                .withFilterExpression(filter);
+
+            // Reuse the chunk embedding stored at indexing time (the chunk text is embedded otherwise)
+            List<Document> similarDocuments = vectorStore.similaritySearchByDocumentId(
+                documentId(queryType, queryId, chunk), searchRequest);
+
+            // Best matching chunk of each target entity (the filter is applied in the store, type checked again)
+            Map<Long, Double> best = new HashMap<>();
+            for (int rank = 0; rank < similarDocuments.size(); rank++) {
+                Document doc = similarDocuments.get(rank);
+                if (!targetType.equalsIgnoreCase((String) doc.getMetadata().get("type"))) {
+                    continue;
+                }
+                Long entityId = parseEntityId(doc.getMetadata().get(targetIdKey), targetIdKey);
+                if (entityId != null) {
+                    best.merge(entityId, similarity(doc, rank), Math::max);
+                }
+            }
+            best.forEach((entityId, similarity) -> scores.merge(entityId, similarity, sum ? Double::sum : Math::max));
+        }
+
+        return scores.entrySet().stream()
+            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+            .limit(VECTOR_SHORTLIST_SIZE)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Similarité cosinus d'un résultat (distance exposée par le store), ou à défaut dérivée de son rang.
+     */
+    private static double similarity(Document doc, int rank) {
+        Object distance = doc.getMetadata().get("distance");
+        return distance instanceof Number number ? 1 - number.doubleValue() : 1.0 / (rank + 2);
+    }
+
+    private static Long parseEntityId(Object value, String key) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid {} in metadata: {}", key, value);
+            return null;
+        }
     }
 
     /**
@@ -114,31 +352,21 @@ public class MatchingEngineService {
             throw new RuntimeException("Offre non trouvée avec ID: " + offreId);
         }
 
-        // Construire le texte à indexer
-        String texte = buildOffreText(offre);
-
-        // Generate UUID for document ID (required by PgVectorStore)
-        String documentId = UUID.randomUUID().toString();
-        String nomEntreprise = offre.getEntreprise() != null ? offre.getEntreprise().getNom() : "Non spécifiée";
-        Document document = new Document(
-            documentId,
-            texte,
-            Map.of(
-                "offreId", offreId.toString(),
-                "type", "offre",
-                "titre", offre.getTitre(),
-                "entreprise", nomEntreprise
-            )
-        );
-
         // Ajouter au vector store
-        List<Document> documents = List.of(document);
+        List<Document> documents = offreDocuments(offre);
         vectorStore.add(documents);
+        vectorStore.deleteChunksFrom("offre", Map.of(offreId, documents.size()));
 
         // Mettre à jour l'offre avec l'ID du vector
-        offre.setVectorId(documentId);
+        offre.setVectorId(documentId("offre", offreId));
         offreEmploiRepository.save(offre);
 
+        // Score the affected pairs in the background once the transaction commits
+        // (a closed or cancelled offer has no pairs to score)
+        if (offre.getStatut() == OffreEmploi.StatutOffre.PUBLIEE && Boolean.TRUE.equals(offre.getActif())) {
+            eventPublisher.publishEvent(new OffreIndexedEvent(offreId));
+        }
+
         log.info("Offre indexée: {}", offreId);
     }
 
@@ -146,14 +374,68 @@ public class MatchingEngineService {
      * Trouve les candidats correspondants pour une offre en utilisant:
      * 1. Recherche sémantique vectorielle pour récupérer les candidats les plus similaires
      * 2. Analyse GPT-4 pour un scoring détaillé et multi-dimensionnel
+     * Lorsque la matrice pré-calculée contient au moins {@code limit} couples pour l'offre,
+     * le top-K est lu directement en base.
      *
      * @param offreId l'ID de l'offre
      * @param limit le nombre maximum de résultats
      * @return la liste des candidats correspondants avec scores détaillés
      */
     public List<MatchingResultDTO> findMatchingCandidates(Long offreId, int limit) {
-        OffreEmploi offre = offreEmploiRepository.findById(offreId)
-            .orElseThrow(() -> new RuntimeException("Offre non trouvée"));
+        if (canServePrecomputed(limit)) {
+            List<MatchingResultDTO> precomputed = transactionTemplate.execute(status -> precomputedCandidats(offreId, limit));
+            if (precomputed.size() >= limit) {
+                log.info("Returning {} precomputed matching candidates for offre {}", precomputed.size(), offreId);
+                return precomputed;
+            }
+        }
+        return findMatchingCandidates(offreId, limit, MatchingListener.NONE);
+    }
+
+    /**
+     * Trouve les candidats correspondants pour une offre en notifiant la progression :
+     * la présélection dès qu'elle est connue, puis chaque résultat dès que son analyse IA est terminée.
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre maximum de résultats
+     * @param listener l'écouteur de progression
+     * @return la liste des candidats correspondants avec scores détaillés
+     */
+    public List<MatchingResultDTO> findMatchingCandidates(Long offreId, int limit, MatchingListener listener) {
+        // Steps 1-3 read entities and their lazy collections: run them in one short transaction,
+        // released before the (slow) AI calls
+        List<MatchContext> contexts = transactionTemplate.execute(status -> shortlistCandidates(offreId, limit));
+        listener.onShortlist(contexts.stream().map(this::buildShortlistEntry).toList());
+
+        // Step 4: Analyze the shortlist with AI (bounded fan-out, results kept in pre-score order)
+        List<MatchingResultDTO> results = analyzeAll(contexts, listener);
+
+        // Step 5: Sort by final score and return top results
+        results.sort((a, b) -> Integer.compare(
+            b.getScoreMatching() != null ? b.getScoreMatching() : 0,
+            a.getScoreMatching() != null ? a.getScoreMatching() : 0
+        ));
+
+        List<MatchingResultDTO> finalResults = results.stream()
+            .limit(limit)
+            .collect(Collectors.toList());
+
+        log.info("Returning {} top matching candidates for offre {}", finalResults.size(), offreId);
+        return finalResults;
+    }
+
+    /**
+     * Recherche vectorielle, chargement et pré-scoring des candidats pour une offre.
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre de résultats demandés
+     * @return les contextes d'analyse retenus, par pré-score décroissant
+     */
+    private List<MatchContext> shortlistCandidates(Long offreId, int limit) {
+        OffreEmploi offre = offreEmploiRepository.findByIdWithEntreprise(offreId);
+        if (offre == null) {
+            throw new RuntimeException("Offre non trouvée");
+        }
 
         // Build offer text for semantic search
         String offreText = buildOffreText(offre);
@@ -164,84 +446,293 @@ public class MatchingEngineService {
 
         log.info("Matching offre {}: {} ({} chars)", offreId, offre.getTitre(), offreText.length());
 
-        // Step 1: Use vector store for semantic similarity search (get more candidates initially)
-        SearchRequest searchRequest = SearchRequest.query(offreText)
-            .withTopK(50); // Get more candidates for better filtering
+        // Steps 1-2: Semantic similarity search over the CV chunks, aggregated per candidate
+        // (get more candidates initially for better filtering)
+        List<Long> candidatIds = searchSimilarEntities("offre", offreId, offreText, CV_FILTER, "cv", "candidatId");
 
-        List<Document> similarDocuments = vectorStore.similaritySearch(searchRequest);
+        log.info("Found {} distinct CV candidates from vector search", candidatIds.size());
 
-        // Step 2: Filter documents by type="cv" and extract candidat IDs
-        List<Long> candidatIds = similarDocuments.stream()
-            .filter(doc -> {
-                String type = (String) doc.getMetadata().get("type");
-                return "cv".equalsIgnoreCase(type);
-            })
-            .map(doc -> {
-                String candidatIdStr = (String) doc.getMetadata().get("candidatId");
-                if (candidatIdStr != null) {
-                    try {
-                        return Long.parseLong(candidatIdStr);
-                    } catch (NumberFormatException e) {
-                        log.warn("Invalid candidatId in metadata: {}", candidatIdStr);
-                        return null;
-                    }
-                }
-                return null;
-            })
-            .filter(id -> id != null)
-            .distinct()
+        // Step 3: Load candidates (with their collections, in bulk) and prepare their AI analysis
+        Map<Long, Candidat> candidats = loadCandidats(candidatIds);
+        List<MatchContext> contexts = new ArrayList<>();
+        for (Long candidatId : candidatIds) {
+            Candidat candidat = candidats.get(candidatId);
+            if (candidat != null && candidat.getCvText() != null && !candidat.getCvText().isBlank()) {
+                contexts.add(prepareMatch(offre, candidat));
+            }
+        }
+
+        // Keep only the best local pre-scores for the AI stage
+        return preselect(contexts, limit);
+    }
+
+    /**
+     * Charge des candidats avec leurs compétences et expériences en deux requêtes,
+     * quel que soit leur nombre (à appeler dans une transaction).
+     *
+     * @param candidatIds les IDs des candidats
+     * @return les candidats trouvés, indexés par ID
+     */
+    private Map<Long, Candidat> loadCandidats(List<Long> candidatIds) {
+        if (candidatIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Candidat> candidats = candidatRepository.findWithCompetencesByIdIn(candidatIds).stream()
+            .collect(Collectors.toMap(Candidat::getId, candidat -> candidat, (a, b) -> a));
+        // Same persistence context: initializes the experiences of the entities loaded above
+        candidatRepository.findWithExperiencesByIdIn(candidatIds);
+        return candidats;
+    }
+
+    /**
+     * Prépare l'analyse d'un couple offre/candidat sur le thread appelant.
+     * Le prompt, les scores locaux et le nom de l'entreprise sont calculés ici afin
+     * que les collections paresseuses soient chargées avant l'envoi vers les threads d'analyse.
+     *
+     * @param offre l'offre d'emploi
+     * @param candidat le candidat
+     * @return le contexte d'analyse
+     */
+    private MatchContext prepareMatch(OffreEmploi offre, Candidat candidat) {
+        String nomEntreprise = offre.getEntreprise() != null ? offre.getEntreprise().getNom() : "Non spécifiée";
+        String prompt = buildAnalysisPrompt(offre, candidat);
+        return new MatchContext(
+            offre,
+            candidat,
+            nomEntreprise,
+            prompt,
+            HashUtil.sha256Hex(prompt),
+            matchPreScorer.calculateLocationScore(offre, candidat),
+            matchPreScorer.score(offre, candidat)
+        );
+    }
+
+    /**
+     * Sélectionne les couples à transmettre à l'IA selon le pré-score local.
+     * Au moins {@code limit} couples sont conservés ; à pré-score égal, l'ordre
+     * du classement vectoriel est préservé.
+     *
+     * @param contexts les contextes d'analyse, dans l'ordre vectoriel
+     * @param limit le nombre de résultats demandés
+     * @return les contextes retenus, par pré-score décroissant
+     */
+    private List<MatchContext> preselect(List<MatchContext> contexts, int limit) {
+        if (!preScoreEnabled) {
+            return contexts;
+        }
+
+        int keep = Math.max(preScoreTopN, limit);
+        List<MatchContext> selected = contexts.stream()
+            .sorted(Comparator.comparingInt(MatchContext::preScore).reversed())
+            .limit(keep)
             .collect(Collectors.toList());
 
-        log.info("Found {} distinct CV candidates from vector search", candidatIds.size());
+        log.info("Pre-scoring kept {} of {} candidates for AI analysis", selected.size(), contexts.size());
+        return selected;
+    }
 
-        // Step 3: Load candidates and analyze each with AI
-        List<MatchingResultDTO> results = new ArrayList<>();
-        for (Long candidatId : candidatIds) {
-            candidatRepository.findById(candidatId).ifPresent(candidat -> {
-                if (candidat.getCvText() != null && !candidat.getCvText().isBlank()) {
-                    try {
-                        MatchingResultDTO result = analyzeMatchWithAI(offre, candidat);
-                        results.add(result);
-                        log.debug("AI analysis for candidat {}: score={}",
-                            candidatId, result.getScoreMatching());
-                    } catch (Exception e) {
-                        log.error("Error analyzing match for candidat {}: {}", candidatId, e.getMessage());
+    /**
+     * Analyse tous les couples préparés.
+     * Les analyses déjà mémorisées pour des entrées identiques sont servies par le cache ;
+     * les autres passent par l'exécuteur IA. Les résultats sont restitués dans l'ordre
+     * des contextes (classement vectoriel). Les lots et les analyses individuelles de reprise
+     * partagent une seule échéance.
+     *
+     * @param contexts les contextes d'analyse
+     * @param listener notifié de chaque résultat dès qu'il est disponible
+     * @return les résultats, dans le même ordre
+     */
+    List<MatchingResultDTO> analyzeAll(List<MatchContext> contexts, MatchingListener listener) {
+        long deadline = aiScoringExecutor.newDeadline();
+        MatchingResultDTO[] results = new MatchingResultDTO[contexts.size()];
+        // First result notified for each context: tasks and their fallbacks may both produce one
+        AtomicReferenceArray<MatchingResultDTO> published = new AtomicReferenceArray<>(contexts.size());
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < contexts.size(); i++) {
+            MatchContext context = contexts.get(i);
+            Optional<MatchResult> cached = matchResultCacheService.find(
+                context.offre().getId(), context.candidat().getId(), context.empreinte());
+            if (cached.isPresent()) {
+                results[i] = publish(published, i, buildResult(context, cached.get()), listener);
+            } else {
+                misses.add(i);
+            }
+        }
+
+        log.info("Match analysis: {} served from cache, {} sent to AI",
+            contexts.size() - misses.size(), misses.size());
+
+        List<List<Integer>> batches = planBatches(contexts, misses);
+        List<Callable<List<MatchingResultDTO>>> tasks = batches.stream()
+            .map(batch -> (Callable<List<MatchingResultDTO>>) () -> {
+                if (listener.isCancelled()) {
+                    throw new CancellationException("Matching abandonné par le client");
+                }
+                List<MatchingResultDTO> batchResults = analyzeBatch(batch.stream().map(contexts::get).toList());
+                for (int j = 0; j < batch.size(); j++) {
+                    if (batchResults.get(j) != null) {
+                        publish(published, batch.get(j), batchResults.get(j), listener);
                     }
                 }
-            });
+                return batchResults;
+            })
+            .toList();
+
+        List<List<MatchingResultDTO>> analyzed = aiScoringExecutor.executeAll(tasks, (index, error) ->
+            batches.get(index).stream()
+                .map(i -> publish(published, i, failedResult(contexts.get(i), error, listener), listener))
+                .toList(), deadline);
+        List<Integer> retries = new ArrayList<>();
+        for (int b = 0; b < batches.size(); b++) {
+            List<Integer> batch = batches.get(b);
+            for (int j = 0; j < batch.size(); j++) {
+                MatchingResultDTO result = analyzed.get(b).get(j);
+                if (result != null) {
+                    results[batch.get(j)] = result;
+                } else {
+                    retries.add(batch.get(j));
+                }
+            }
         }
 
-        // Step 4: Sort by final score and return top results
-        results.sort((a, b) -> Integer.compare(
-            b.getScoreMatching() != null ? b.getScoreMatching() : 0,
-            a.getScoreMatching() != null ? a.getScoreMatching() : 0
-        ));
+        // Candidates missing from a batch answer: one single-candidate task each, on the same bounded executor
+        if (!retries.isEmpty()) {
+            List<Callable<MatchingResultDTO>> singleTasks = retries.stream()
+                .map(i -> (Callable<MatchingResultDTO>) () -> {
+                    if (listener.isCancelled()) {
+                        throw new CancellationException("Matching abandonné par le client");
+                    }
+                    return publish(published, i, analyzeMatchWithAI(contexts.get(i)), listener);
+                })
+                .toList();
+            List<MatchingResultDTO> retried = aiScoringExecutor.executeAll(singleTasks, (index, error) ->
+                publish(published, retries.get(index),
+                    failedResult(contexts.get(retries.get(index)), error, listener), listener), deadline);
+            for (int k = 0; k < retries.size(); k++) {
+                results[retries.get(k)] = retried.get(k);
+            }
+        }
 
-        List<MatchingResultDTO> finalResults = results.stream()
-            .limit(limit)
-            .collect(Collectors.toList());
+        return new ArrayList<>(Arrays.asList(results));
+    }
 
-        log.info("Returning {} top matching candidates for offre {}", finalResults.size(), offreId);
-        return finalResults;
+    /**
+     * Notifie l'écouteur du premier résultat obtenu pour un contexte : une tâche expirée qui aboutit
+     * malgré tout et son fallback ne produisent qu'un seul événement.
+     *
+     * @return le résultat retenu pour ce contexte
+     */
+    private static MatchingResultDTO publish(AtomicReferenceArray<MatchingResultDTO> published, int index,
+                                             MatchingResultDTO result, MatchingListener listener) {
+        if (published.compareAndSet(index, null, result)) {
+            listener.onResult(result);
+        }
+        return published.get(index);
+    }
+
+    /**
+     * Résultat d'une analyse en erreur, expirée ou abandonnée par le client.
+     */
+    private MatchingResultDTO failedResult(MatchContext context, Throwable error, MatchingListener listener) {
+        if (listener.isCancelled()) {
+            log.debug("Match analysis for candidat {} and offre {} cancelled",
+                context.candidat().getId(), context.offre().getId());
+        } else {
+            log.error("Error analyzing match for candidat {} and offre {}: {}",
+                context.candidat().getId(), context.offre().getId(), error.getMessage());
+        }
+        return buildErrorResult(context, error);
+    }
+
+    /**
+     * Regroupe les analyses à effectuer par offre, en lots d'au plus {@code batchSize} candidats.
+     *
+     * @param contexts tous les contextes d'analyse
+     * @param indexes les index des contextes à analyser
+     * @return les lots d'index, dans l'ordre d'apparition
+     */
+    private List<List<Integer>> planBatches(List<MatchContext> contexts, List<Integer> indexes) {
+        List<List<Integer>> batches = new ArrayList<>();
+        if (batchSize <= 1) {
+            indexes.forEach(i -> batches.add(List.of(i)));
+            return batches;
+        }
+
+        Map<Long, List<Integer>> byOffre = new LinkedHashMap<>();
+        for (Integer i : indexes) {
+            byOffre.computeIfAbsent(contexts.get(i).offre().getId(), id -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> group : byOffre.values()) {
+            for (int from = 0; from < group.size(); from += batchSize) {
+                batches.add(group.subList(from, Math.min(from + batchSize, group.size())));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Analyse un lot de candidats pour une même offre en un seul appel GPT-4.
+     * Un candidat absent ou illisible dans la réponse groupée n'a pas de résultat (null) :
+     * il est ré-analysé individuellement par l'appelant.
+     * Seules les analyses des CV envoyés en entier sont mémorisées : un CV tronqué pour le lot
+     * ne correspond pas à l'empreinte de ses entrées complètes.
+     *
+     * @param batch les contextes du lot (même offre)
+     * @return les résultats, dans l'ordre du lot (null pour les candidats à ré-analyser)
+     */
+    private List<MatchingResultDTO> analyzeBatch(List<MatchContext> batch) {
+        if (batch.size() == 1) {
+            return List.of(analyzeMatchWithAI(batch.get(0)));
+        }
+
+        OffreEmploi offre = batch.get(0).offre();
+        Map<Long, Map<String, Object>> analyses = Map.of();
+        try {
+            String prompt = buildBatchAnalysisPrompt(offre, batch.stream().map(MatchContext::candidat).toList());
+            String aiResponse = chatClient.prompt()
+                .user(prompt)
+                .call()
+                .content();
+
+            log.debug("Batch AI response for offre {}: {}", offre.getId(), aiResponse);
+            analyses = parseBatchAIResponse(aiResponse);
+        } catch (Exception e) {
+            log.warn("Batch AI analysis failed for offre {}, falling back to single analyses: {}",
+                offre.getId(), e.getMessage());
+        }
+
+        List<MatchingResultDTO> results = new ArrayList<>(batch.size());
+        int missing = 0;
+        for (MatchContext context : batch) {
+            Map<String, Object> analysis = analyses.get(context.candidat().getId());
+            if (analysis != null) {
+                boolean fullCv = context.candidat().getCvText().length() <= batchMaxCvChars;
+                results.add(toResult(context, analysis, fullCv));
+            } else {
+                missing++;
+                results.add(null);
+            }
+        }
+
+        log.debug("Batch of {} candidates for offre {}: {} left for single analyses",
+            batch.size(), offre.getId(), missing);
+        return results;
     }
 
     /**
      * Analyse un match candidat-offre en utilisant GPT-4 pour un scoring détaillé.
      *
-     * @param offre l'offre d'emploi
-     * @param candidat le candidat
+     * @param context le contexte d'analyse préparé
      * @return le résultat du matching avec scores détaillés
      */
-    private MatchingResultDTO analyzeMatchWithAI(OffreEmploi offre, Candidat candidat) {
-        String nomEntreprise = offre.getEntreprise() != null ? offre.getEntreprise().getNom() : "Non spécifiée";
-
-        // Build the prompt for AI analysis
-        String prompt = buildAnalysisPrompt(offre, candidat);
+    private MatchingResultDTO analyzeMatchWithAI(MatchContext context) {
+        OffreEmploi offre = context.offre();
+        Candidat candidat = context.candidat();
 
         try {
             // Call GPT-4 for analysis
             String aiResponse = chatClient.prompt()
-                .user(prompt)
+                .user(context.prompt())
                 .call()
                 .content();
 
@@ -250,73 +741,244 @@ public class MatchingEngineService {
             // Parse the JSON response
             Map<String, Object> aiAnalysis = parseAIResponse(aiResponse);
 
-            // Extract scores from AI response
-            @SuppressWarnings("unchecked")
-            List<String> matchedSkills = (List<String>) aiAnalysis.getOrDefault("matchedSkills", new ArrayList<>());
-            @SuppressWarnings("unchecked")
-            List<String> missingSkills = (List<String>) aiAnalysis.getOrDefault("missingSkills", new ArrayList<>());
-
-            int skillScore = extractIntValue(aiAnalysis, "skillScore");
-            int experienceScore = extractIntValue(aiAnalysis, "experienceScore");
-            int educationScore = extractIntValue(aiAnalysis, "educationScore");
-            String recommendation = (String) aiAnalysis.getOrDefault("recommendation",
-                "Analyse automatique basée sur le profil du candidat");
-
-            // Calculate location score
-            int locationScore = calculateLocationScore(offre, candidat);
-
-            // Calculate final weighted score
-            int finalScore = (int) Math.round(
-                (skillScore * SKILLS_WEIGHT) +
-                (experienceScore * EXPERIENCE_WEIGHT) +
-                (educationScore * EDUCATION_WEIGHT) +
-                (locationScore * LOCATION_WEIGHT)
-            );
-
-            // Determine if recommended
-            Boolean recommande = finalScore >= 60;
-
-            return MatchingResultDTO.builder()
-                .offreId(offre.getId())
-                .offreTitre(offre.getTitre())
-                .nomEntreprise(nomEntreprise)
-                .candidatId(candidat.getId())
-                .candidatNom(candidat.getNom())
-                .candidatPrenom(candidat.getPrenom())
-                .scoreMatching(finalScore)
-                .scoreCompetences(skillScore)
-                .scoreExperience(experienceScore)
-                .scoreFormation(educationScore)
-                .competencesMatch(matchedSkills)
-                .competencesManquantes(missingSkills)
-                .recommendation(recommendation)
-                .recommande(recommande)
-                .reason("Analyse IA multi-dimensionnelles: compétences, expérience, formation, localisation")
-                .build();
+            return toResult(context, aiAnalysis, true);
 
         } catch (Exception e) {
             log.error("Error in AI analysis for candidat {} and offre {}: {}",
                 candidat.getId(), offre.getId(), e.getMessage(), e);
+            return buildErrorResult(context, e);
+        }
+    }
 
-            // Return a basic result on error
-            return MatchingResultDTO.builder()
-                .offreId(offre.getId())
-                .offreTitre(offre.getTitre())
-                .nomEntreprise(nomEntreprise)
-                .candidatId(candidat.getId())
-                .candidatNom(candidat.getNom())
-                .candidatPrenom(candidat.getPrenom())
-                .scoreMatching(0)
-                .scoreCompetences(0)
-                .scoreExperience(0)
-                .scoreFormation(0)
-                .competencesMatch(new ArrayList<>())
-                .competencesManquantes(new ArrayList<>())
-                .recommendation("Erreur lors de l'analyse IA")
-                .recommande(false)
-                .reason("Erreur technique: " + e.getMessage())
-                .build();
+    /**
+     * Convertit une analyse IA fraîche en résultat, et la mémorise si elle est exploitable
+     * et porte sur les entrées complètes du couple ({@code cacheable}).
+     */
+    private MatchingResultDTO toResult(MatchContext context, Map<String, Object> aiAnalysis, boolean cacheable) {
+        // Extract scores from AI response
+        @SuppressWarnings("unchecked")
+        List<String> matchedSkills = (List<String>) aiAnalysis.getOrDefault("matchedSkills", new ArrayList<>());
+        @SuppressWarnings("unchecked")
+        List<String> missingSkills = (List<String>) aiAnalysis.getOrDefault("missingSkills", new ArrayList<>());
+
+        MatchResult analysis = MatchResult.builder()
+            .offreId(context.offre().getId())
+            .candidatId(context.candidat().getId())
+            .empreinte(context.empreinte())
+            .scoreCompetences(extractIntValue(aiAnalysis, "skillScore"))
+            .scoreExperience(extractIntValue(aiAnalysis, "experienceScore"))
+            .scoreFormation(extractIntValue(aiAnalysis, "educationScore"))
+            .competencesMatch(matchedSkills)
+            .competencesManquantes(missingSkills)
+            .recommendation((String) aiAnalysis.getOrDefault("recommendation",
+                "Analyse automatique basée sur le profil du candidat"))
+            .build();
+
+        MatchingResultDTO result = buildResult(context, analysis);
+
+        // Only well-formed answers on the full inputs are worth remembering
+        if (cacheable && !aiAnalysis.isEmpty()) {
+            analysis.setScoreMatching(result.getScoreMatching());
+            analysis.setScoreLocalisation(context.locationScore());
+            matchResultCacheService.save(analysis);
         }
+
+        return result;
+    }
+
+    /**
+     * Construit le résultat de matching à partir des scores IA (frais ou mémorisés).
+     * Le score final pondéré intègre le score de localisation calculé localement.
+     */
+    private MatchingResultDTO buildResult(MatchContext context, MatchResult analysis) {
+        int skillScore = analysis.getScoreCompetences() != null ? analysis.getScoreCompetences() : 0;
+        int experienceScore = analysis.getScoreExperience() != null ? analysis.getScoreExperience() : 0;
+        int educationScore = analysis.getScoreFormation() != null ? analysis.getScoreFormation() : 0;
+
+        // Calculate final weighted score
+        int finalScore = weightedScore(skillScore, experienceScore, educationScore, context.locationScore());
+
+        // Determine if recommended
+        Boolean recommande = finalScore >= 60;
+
+        return MatchingResultDTO.builder()
+            .offreId(context.offre().getId())
+            .offreTitre(context.offre().getTitre())
+            .nomEntreprise(context.nomEntreprise())
+            .candidatId(context.candidat().getId())
+            .candidatNom(context.candidat().getNom())
+            .candidatPrenom(context.candidat().getPrenom())
+            .scoreMatching(finalScore)
+            .scoreCompetences(skillScore)
+            .scoreExperience(experienceScore)
+            .scoreFormation(educationScore)
+            .competencesMatch(analysis.getCompetencesMatch() != null
+                ? new ArrayList<>(analysis.getCompetencesMatch()) : new ArrayList<>())
+            .competencesManquantes(analysis.getCompetencesManquantes() != null
+                ? new ArrayList<>(analysis.getCompetencesManquantes()) : new ArrayList<>())
+            .recommendation(analysis.getRecommendation())
+            .recommande(recommande)
+            .reason("Analyse IA multi-dimensionnelles: compétences, expérience, formation, localisation")
+            .build();
+    }
+
+    /**
+     * Lit le top-K pré-calculé d'une offre (à appeler dans une transaction).
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre de résultats demandés
+     * @return les résultats encore valides, par score décroissant
+     */
+    private List<MatchingResultDTO> precomputedCandidats(Long offreId, int limit) {
+        // The whole stored top-K is read: stale pairs are skipped below
+        List<Object[]> rows = matchResultRepository.findTopCandidats(offreId, PageRequest.of(0, precomputeTopK));
+        OffreEmploi offre = rows.isEmpty() ? null : offreEmploiRepository.findByIdWithEntreprise(offreId);
+        if (offre == null) {
+            return List.of();
+        }
+        Map<Long, Candidat> candidats = loadCandidats(rows.stream()
+            .map(row -> ((MatchResult) row[0]).getCandidatId())
+            .toList());
+        return currentPrecomputedResults(rows, Map.of(offreId, offre), candidats, limit);
+    }
+
+    /**
+     * Lit le top-K pré-calculé d'un candidat (à appeler dans une transaction).
+     *
+     * @param candidatId l'ID du candidat
+     * @param limit le nombre de résultats demandés
+     * @return les résultats encore valides, par score décroissant
+     */
+    private List<MatchingResultDTO> precomputedOffres(Long candidatId, int limit) {
+        List<Object[]> rows = matchResultRepository.findTopOffres(candidatId, PageRequest.of(0, precomputeTopK));
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Candidat> candidats = loadCandidats(List.of(candidatId));
+        Map<Long, OffreEmploi> offres = offreEmploiRepository.findWithEntrepriseByIdIn(rows.stream()
+                .map(row -> ((MatchResult) row[0]).getOffreId())
+                .toList()).stream()
+            .collect(Collectors.toMap(OffreEmploi::getId, offre -> offre, (a, b) -> a));
+        return currentPrecomputedResults(rows, offres, candidats, limit);
+    }
+
+    /**
+     * Ne conserve, parmi les lignes de la matrice, que les couples encore valides : offre publiée
+     * et active, candidat avec CV, et empreinte égale à celle du prompt actuel (une offre ou un
+     * profil modifié depuis l'analyse n'est donc jamais servi avec son ancien score).
+     */
+    private List<MatchingResultDTO> currentPrecomputedResults(List<Object[]> rows, Map<Long, OffreEmploi> offres,
+                                                             Map<Long, Candidat> candidats, int limit) {
+        List<MatchingResultDTO> results = new ArrayList<>();
+        int stale = 0;
+        for (Object[] row : rows) {
+            if (results.size() >= limit) {
+                break;
+            }
+            MatchResult analysis = (MatchResult) row[0];
+            OffreEmploi offre = offres.get(analysis.getOffreId());
+            Candidat candidat = candidats.get(analysis.getCandidatId());
+            if (offre != null && candidat != null
+                    && offre.getStatut() == OffreEmploi.StatutOffre.PUBLIEE && Boolean.TRUE.equals(offre.getActif())
+                    && candidat.getCvText() != null && !candidat.getCvText().isBlank()
+                    && HashUtil.sha256Hex(buildAnalysisPrompt(offre, candidat)).equals(analysis.getEmpreinte())) {
+                results.add(buildPrecomputedResult(row));
+            } else {
+                stale++;
+            }
+        }
+        if (stale > 0) {
+            log.debug("Skipped {} stale precomputed pair(s)", stale);
+        }
+        return results;
+    }
+
+    /**
+     * Construit un résultat à partir d'une ligne de la matrice pré-calculée
+     * (résultat, nom et prénom du candidat, titre de l'offre, nom de l'entreprise).
+     */
+    private MatchingResultDTO buildPrecomputedResult(Object[] row) {
+        MatchResult analysis = (MatchResult) row[0];
+        return MatchingResultDTO.builder()
+            .offreId(analysis.getOffreId())
+            .offreTitre((String) row[3])
+            .nomEntreprise(row[4] != null ? (String) row[4] : "Non spécifiée")
+            .candidatId(analysis.getCandidatId())
+            .candidatNom((String) row[1])
+            .candidatPrenom((String) row[2])
+            .scoreMatching(analysis.getScoreMatching())
+            .scoreCompetences(analysis.getScoreCompetences())
+            .scoreExperience(analysis.getScoreExperience())
+            .scoreFormation(analysis.getScoreFormation())
+            .competencesMatch(analysis.getCompetencesMatch() != null
+                ? new ArrayList<>(analysis.getCompetencesMatch()) : new ArrayList<>())
+            .competencesManquantes(analysis.getCompetencesManquantes() != null
+                ? new ArrayList<>(analysis.getCompetencesManquantes()) : new ArrayList<>())
+            .recommendation(analysis.getRecommendation())
+            .recommande(analysis.getScoreMatching() >= 60)
+            .reason("Analyse IA pré-calculée: compétences, expérience, formation, localisation")
+            .build();
+    }
+
+    /**
+     * Calcule le score final pondéré (0-100).
+     */
+    private int weightedScore(int skillScore, int experienceScore, int educationScore, int locationScore) {
+        return (int) Math.round(
+            (skillScore * SKILLS_WEIGHT) +
+            (experienceScore * EXPERIENCE_WEIGHT) +
+            (educationScore * EDUCATION_WEIGHT) +
+            (locationScore * LOCATION_WEIGHT)
+        );
+    }
+
+    /**
+     * Indique si le top-K demandé peut être servi par la matrice pré-calculée,
+     * qui ne conserve que les {@code precomputeTopK} meilleurs couples par entité.
+     */
+    private boolean canServePrecomputed(int limit) {
+        return precomputeEnabled && limit <= precomputeTopK;
+    }
+
+    /**
+     * Construit l'entrée de présélection d'un couple, avant analyse IA (score = pré-score local).
+     */
+    private MatchingResultDTO buildShortlistEntry(MatchContext context) {
+        return MatchingResultDTO.builder()
+            .offreId(context.offre().getId())
+            .offreTitre(context.offre().getTitre())
+            .nomEntreprise(context.nomEntreprise())
+            .candidatId(context.candidat().getId())
+            .candidatNom(context.candidat().getNom())
+            .candidatPrenom(context.candidat().getPrenom())
+            .scoreMatching(context.preScore())
+            .reason("Présélection: recherche sémantique et pré-score local, analyse IA en cours")
+            .build();
+    }
+
+    /**
+     * Construit un résultat neutre lorsque l'analyse IA a échoué ou a expiré.
+     */
+    private MatchingResultDTO buildErrorResult(MatchContext context, Throwable error) {
+        return MatchingResultDTO.builder()
+            .offreId(context.offre().getId())
+            .offreTitre(context.offre().getTitre())
+            .nomEntreprise(context.nomEntreprise())
+            .candidatId(context.candidat().getId())
+            .candidatNom(context.candidat().getNom())
+            .candidatPrenom(context.candidat().getPrenom())
+            .scoreMatching(0)
+            .scoreCompetences(0)
+            .scoreExperience(0)
+            .scoreFormation(0)
+            .competencesMatch(new ArrayList<>())
+            .competencesManquantes(new ArrayList<>())
+            .recommendation("Erreur lors de l'analyse IA")
+            .recommande(false)
+            .reason(error instanceof TimeoutException
+                ? "Délai d'analyse IA dépassé"
+                : "Erreur technique: " + error.getMessage())
+            .build();
     }
 
     /**
@@ -325,6 +987,60 @@ public class MatchingEngineService {
     private String buildAnalysisPrompt(OffreEmploi offre, Candidat candidat) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are an expert HR analyst. Analyze the match between a job offer and a candidate.\n\n");
+        appendOffre(prompt, offre);
+
+        prompt.append("CANDIDATE:\n");
+        appendCandidat(prompt, candidat, candidat.getCvText());
+
+        prompt.append("Provide your analysis as a JSON object with this exact structure:\n");
+        prompt.append("{\n");
+        prompt.append("  \"matchedSkills\": [\"skill1\", \"skill2\", ...],\n");
+        prompt.append("  \"missingSkills\": [\"skill1\", \"skill2\", ...],\n");
+        prompt.append("  \"skillScore\": <0-100>,\n");
+        prompt.append("  \"experienceScore\": <0-100>,\n");
+        prompt.append("  \"educationScore\": <0-100>,\n");
+        prompt.append("  \"recommendation\": \"Detailed explanation of why this candidate is a good match or not...\"\n");
+        prompt.append("}\n\n");
+        appendScoringGuidelines(prompt);
+        prompt.append("Return ONLY valid JSON, no markdown formatting, no additional text.");
+
+        return prompt.toString();
+    }
+
+    /**
+     * Construit le prompt d'analyse groupée : l'offre n'est envoyée qu'une fois,
+     * suivie des profils compactés de plusieurs candidats.
+     */
+    String buildBatchAnalysisPrompt(OffreEmploi offre, List<Candidat> candidats) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are an expert HR analyst. Analyze the match between a job offer and each of the ")
+            .append(candidats.size()).append(" candidates below, independently.\n\n");
+        appendOffre(prompt, offre);
+
+        for (Candidat candidat : candidats) {
+            prompt.append("CANDIDATE ").append(candidat.getId()).append(":\n");
+            appendCandidat(prompt, candidat, StringUtils.abbreviate(candidat.getCvText(), batchMaxCvChars));
+        }
+
+        prompt.append("Provide your analysis as a JSON array with exactly one object per candidate, using this exact structure:\n");
+        prompt.append("[\n");
+        prompt.append("  {\n");
+        prompt.append("    \"candidatId\": <candidate number>,\n");
+        prompt.append("    \"matchedSkills\": [\"skill1\", \"skill2\", ...],\n");
+        prompt.append("    \"missingSkills\": [\"skill1\", \"skill2\", ...],\n");
+        prompt.append("    \"skillScore\": <0-100>,\n");
+        prompt.append("    \"experienceScore\": <0-100>,\n");
+        prompt.append("    \"educationScore\": <0-100>,\n");
+        prompt.append("    \"recommendation\": \"Detailed explanation of why this candidate is a good match or not...\"\n");
+        prompt.append("  }\n");
+        prompt.append("]\n\n");
+        appendScoringGuidelines(prompt);
+        prompt.append("Return ONLY a valid JSON array, no markdown formatting, no additional text.");
+
+        return prompt.toString();
+    }
+
+    private void appendOffre(StringBuilder prompt, OffreEmploi offre) {
         prompt.append("JOB OFFER:\n");
         prompt.append("- Title: ").append(offre.getTitre()).append("\n");
         prompt.append("- Description: ").append(offre.getDescription() != null ? offre.getDescription() : "N/A").append("\n");
@@ -334,9 +1050,10 @@ public class MatchingEngineService {
         prompt.append("- Minimum Education Level: ").append(offre.getNiveauEtudesMin() != null ? offre.getNiveauEtudesMin() : "N/A").append("\n");
         prompt.append("- Location: ").append(offre.getLocalisation() != null ? offre.getLocalisation() : "N/A").append("\n");
         prompt.append("- Remote Work: ").append(offre.getTeletravail() != null ? offre.getTeletravail() : false).append("\n\n");
+    }
 
-        prompt.append("CANDIDATE:\n");
-        prompt.append("- CV Text: ").append(candidat.getCvText() != null ? candidat.getCvText() : "N/A").append("\n");
+    private void appendCandidat(StringBuilder prompt, Candidat candidat, String cvText) {
+        prompt.append("- CV Text: ").append(cvText != null ? cvText : "N/A").append("\n");
         prompt.append("- Desired Position: ").append(candidat.getTitrePosteRecherche() != null ? candidat.getTitrePosteRecherche() : "N/A").append("\n");
 
         prompt.append("- Experiences:\n");
@@ -364,55 +1081,83 @@ public class MatchingEngineService {
 
         prompt.append("- Mobility: ").append(candidat.getMobilite() != null ? candidat.getMobilite() : "N/A").append("\n");
         prompt.append("- Immediately Available: ").append(candidat.getDisponibiliteImmediate() != null ? candidat.getDisponibiliteImmediate() : true).append("\n\n");
+    }
 
-        prompt.append("Provide your analysis as a JSON object with this exact structure:\n");
-        prompt.append("{\n");
-        prompt.append("  \"matchedSkills\": [\"skill1\", \"skill2\", ...],\n");
-        prompt.append("  \"missingSkills\": [\"skill1\", \"skill2\", ...],\n");
-        prompt.append("  \"skillScore\": <0-100>,\n");
-        prompt.append("  \"experienceScore\": <0-100>,\n");
-        prompt.append("  \"educationScore\": <0-100>,\n");
-        prompt.append("  \"recommendation\": \"Detailed explanation of why this candidate is a good match or not...\"\n");
-        prompt.append("}\n\n");
+    private void appendScoringGuidelines(StringBuilder prompt) {
         prompt.append("SCORING GUIDELINES:\n");
         prompt.append("- skillScore: Based on the percentage of required skills the candidate has (0-100)\n");
         prompt.append("- experienceScore: Based on whether candidate's years of experience meets or exceeds the requirement (0-100)\n");
         prompt.append("- educationScore: Based on whether candidate's education level meets or exceeds the minimum requirement (0-100)\n");
         prompt.append("- recommendation: A 2-3 sentence explanation in FRENCH highlighting strengths and any gaps\n\n");
-        prompt.append("Return ONLY valid JSON, no markdown formatting, no additional text.");
-
-        return prompt.toString();
     }
 
     /**
      * Parse la réponse de l'IA en gérant différents formats (JSON brut, markdown avec code blocks).
      */
-    @SuppressWarnings("unchecked")
     private Map<String, Object> parseAIResponse(String response) {
         try {
-            // Clean the response - remove markdown code blocks if present
-            String cleanedResponse = response.trim();
-
-            // Remove ```json and ``` markers
-            if (cleanedResponse.startsWith("```json")) {
-                cleanedResponse = cleanedResponse.substring(7);
-            } else if (cleanedResponse.startsWith("```")) {
-                cleanedResponse = cleanedResponse.substring(3);
-            }
+            return objectMapper.readValue(stripMarkdown(response), new TypeReference<Map<String, Object>>() {});
+
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to parse AI response as JSON, returning default values. Response: {}", response, e);
+            return new HashMap<>();
+        }
+    }
 
-            if (cleanedResponse.endsWith("```")) {
-                cleanedResponse = cleanedResponse.substring(0, cleanedResponse.length() - 3);
+    /**
+     * Parse la réponse d'une analyse groupée (tableau JSON d'analyses par candidat).
+     * Les éléments illisibles ou sans identifiant de candidat sont ignorés : les candidats
+     * correspondants seront ré-analysés individuellement.
+     *
+     * @return les analyses indexées par ID de candidat
+     */
+    Map<Long, Map<String, Object>> parseBatchAIResponse(String response) {
+        Map<Long, Map<String, Object>> analyses = new HashMap<>();
+        try {
+            String cleanedResponse = stripMarkdown(response);
+            int start = cleanedResponse.indexOf('[');
+            int end = cleanedResponse.lastIndexOf(']');
+            if (start < 0 || end <= start) {
+                log.warn("No JSON array found in batch AI response: {}", response);
+                return analyses;
             }
 
-            cleanedResponse = cleanedResponse.trim();
+            JsonNode array = objectMapper.readTree(cleanedResponse.substring(start, end + 1));
+            for (JsonNode element : array) {
+                if (!element.isObject() || !element.hasNonNull("candidatId") || !element.has("skillScore")) {
+                    continue;
+                }
+                try {
+                    Long candidatId = Long.parseLong(element.get("candidatId").asText().trim());
+                    analyses.put(candidatId, objectMapper.convertValue(element, new TypeReference<Map<String, Object>>() {}));
+                } catch (IllegalArgumentException e) {
+                    log.debug("Skipping unreadable batch analysis element: {}", element);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to parse batch AI response as JSON. Response: {}", response, e);
+        }
+        return analyses;
+    }
 
-            // Try to parse as JSON
-            return objectMapper.readValue(cleanedResponse, new TypeReference<Map<String, Object>>() {});
+    /**
+     * Retire les marqueurs de code markdown (```json ... ```) autour d'une réponse.
+     */
+    private String stripMarkdown(String response) {
+        String cleanedResponse = response.trim();
+
+        // Remove ```json and ``` markers
+        if (cleanedResponse.startsWith("```json")) {
+            cleanedResponse = cleanedResponse.substring(7);
+        } else if (cleanedResponse.startsWith("```")) {
+            cleanedResponse = cleanedResponse.substring(3);
+        }
 
-        } catch (JsonProcessingException e) {
-            log.warn("Failed to parse AI response as JSON, returning default values. Response: {}", response, e);
-            return new HashMap<>();
+        if (cleanedResponse.endsWith("```")) {
+            cleanedResponse = cleanedResponse.substring(0, cleanedResponse.length() - 3);
         }
+
+        return cleanedResponse.trim();
     }
 
     /**
@@ -434,50 +1179,68 @@ public class MatchingEngineService {
     }
 
     /**
-     * Calcule le score de localisation (0-100).
+     * Trouve les offres correspondantes pour un candidat.
+     * Lorsque la matrice pré-calculée contient au moins {@code limit} couples pour le candidat,
+     * le top-K est lu directement en base.
+     *
+     * @param candidatId l'ID du candidat
+     * @param limit le nombre maximum de résultats
+     * @return la liste des offres correspondantes
      */
-    private int calculateLocationScore(OffreEmploi offre, Candidat candidat) {
-        // If remote work is allowed, give full score
-        if (offre.getTeletravail() != null && offre.getTeletravail()) {
-            return 100;
-        }
-
-        // Check candidate mobility
-        String mobilite = candidat.getMobilite();
-        if (mobilite != null) {
-            mobilite = mobilite.toLowerCase();
-            if (mobilite.contains("nationale") || mobilite.contains("international") || mobilite.contains("mondial")) {
-                return 100;
-            }
-            if (mobilite.contains("regionale") || mobilite.contains("locale")) {
-                return 80;
-            }
-        }
-
-        // Check if locations match (basic string comparison)
-        String offreLoc = offre.getLocalisation();
-        if (offreLoc != null && candidat.getExperiences() != null) {
-            for (Experience exp : candidat.getExperiences()) {
-                if (exp.getLocalisation() != null &&
-                    exp.getLocalisation().toLowerCase().contains(offreLoc.toLowerCase())) {
-                    return 90;
-                }
+    public List<MatchingResultDTO> findMatchingOffres(Long candidatId, int limit) {
+        if (canServePrecomputed(limit)) {
+            List<MatchingResultDTO> precomputed = transactionTemplate.execute(status -> precomputedOffres(candidatId, limit));
+            if (precomputed.size() >= limit) {
+                log.info("Returning {} precomputed matching offres for candidat {}", precomputed.size(), candidatId);
+                return precomputed;
             }
         }
-
-        return 50; // Neutral score if no information
+        return findMatchingOffres(candidatId, limit, MatchingListener.NONE);
     }
 
     /**
-     * Trouve les offres correspondantes pour un candidat.
+     * Trouve les offres correspondantes pour un candidat en notifiant la progression.
      *
      * @param candidatId l'ID du candidat
      * @param limit le nombre maximum de résultats
+     * @param listener l'écouteur de progression
      * @return la liste des offres correspondantes
      */
-    public List<MatchingResultDTO> findMatchingOffres(Long candidatId, int limit) {
-        Candidat candidat = candidatRepository.findById(candidatId)
-            .orElseThrow(() -> new RuntimeException("Candidat non trouvé"));
+    public List<MatchingResultDTO> findMatchingOffres(Long candidatId, int limit, MatchingListener listener) {
+        // Steps 1-3 read entities and their lazy collections: run them in one short transaction,
+        // released before the (slow) AI calls
+        List<MatchContext> contexts = transactionTemplate.execute(status -> shortlistOffres(candidatId, limit));
+        listener.onShortlist(contexts.stream().map(this::buildShortlistEntry).toList());
+
+        // Step 4: Analyze the shortlist with AI (bounded fan-out, results kept in pre-score order)
+        List<MatchingResultDTO> results = analyzeAll(contexts, listener);
+
+        // Step 5: Sort by final score and return top results
+        results.sort((a, b) -> Integer.compare(
+            b.getScoreMatching() != null ? b.getScoreMatching() : 0,
+            a.getScoreMatching() != null ? a.getScoreMatching() : 0
+        ));
+
+        List<MatchingResultDTO> finalResults = results.stream()
+            .limit(limit)
+            .collect(Collectors.toList());
+
+        log.info("Returning {} top matching offres for candidat {}", finalResults.size(), candidatId);
+        return finalResults;
+    }
+
+    /**
+     * Recherche vectorielle, chargement et pré-scoring des offres publiées pour un candidat.
+     *
+     * @param candidatId l'ID du candidat
+     * @param limit le nombre de résultats demandés
+     * @return les contextes d'analyse retenus, par pré-score décroissant
+     */
+    private List<MatchContext> shortlistOffres(Long candidatId, int limit) {
+        Candidat candidat = loadCandidats(List.of(candidatId)).get(candidatId);
+        if (candidat == null) {
+            throw new RuntimeException("Candidat non trouvé");
+        }
 
         if (candidat.getCvText() == null || candidat.getCvText().isBlank()) {
             log.warn("Impossible de trouver des offres pour le candidat {}: pas de CV", candidatId);
@@ -486,63 +1249,28 @@ public class MatchingEngineService {
 
         log.info("Finding matching offres for candidat {}", candidatId);
 
-        // Step 1: Use vector store for semantic similarity search
-        SearchRequest searchRequest = SearchRequest.query(candidat.getCvText())
-            .withTopK(50);
-
-        List<Document> similarDocuments = vectorStore.similaritySearch(searchRequest);
-
-        // Step 2: Filter documents by type="offre" and extract offre IDs
-        List<Long> offreIds = similarDocuments.stream()
-            .filter(doc -> {
-                String type = (String) doc.getMetadata().get("type");
-                return "offre".equalsIgnoreCase(type);
-            })
-            .map(doc -> {
-                String offreIdStr = (String) doc.getMetadata().get("offreId");
-                if (offreIdStr != null) {
-                    try {
-                        return Long.parseLong(offreIdStr);
-                    } catch (NumberFormatException e) {
-                        log.warn("Invalid offreId in metadata: {}", offreIdStr);
-                        return null;
-                    }
-                }
-                return null;
-            })
-            .filter(id -> id != null)
-            .distinct()
-            .collect(Collectors.toList());
+        // Steps 1-2: Semantic similarity search over the offer chunks, aggregated per offer
+        // (type and statut are filtered in the store, the real statut is checked after loading)
+        List<Long> offreIds = searchSimilarEntities("cv", candidatId, candidat.getCvText(), OFFRE_PUBLIEE_FILTER,
+            "offre", "offreId");
 
         log.info("Found {} distinct offre documents from vector search", offreIds.size());
 
-        // Step 3: Load offers and analyze each with AI
-        List<MatchingResultDTO> results = new ArrayList<>();
+        // Step 3: Load published offers (with their company, in bulk) and prepare their AI analysis
+        Map<Long, OffreEmploi> offres = new HashMap<>();
+        if (!offreIds.isEmpty()) {
+            offreEmploiRepository.findWithEntrepriseByIdIn(offreIds).forEach(offre -> offres.put(offre.getId(), offre));
+        }
+        List<MatchContext> contexts = new ArrayList<>();
         for (Long offreId : offreIds) {
-            offreEmploiRepository.findById(offreId).ifPresent(offre -> {
-                if (offre.getStatut() == OffreEmploi.StatutOffre.PUBLIEE) {
-                    try {
-                        MatchingResultDTO result = analyzeMatchWithAI(offre, candidat);
-                        results.add(result);
-                    } catch (Exception e) {
-                        log.error("Error analyzing match for offre {}: {}", offreId, e.getMessage());
-                    }
-                }
-            });
+            OffreEmploi offre = offres.get(offreId);
+            if (offre != null && offre.getStatut() == OffreEmploi.StatutOffre.PUBLIEE) {
+                contexts.add(prepareMatch(offre, candidat));
+            }
         }
 
-        // Step 4: Sort by final score and return top results
-        results.sort((a, b) -> Integer.compare(
-            b.getScoreMatching() != null ? b.getScoreMatching() : 0,
-            a.getScoreMatching() != null ? a.getScoreMatching() : 0
-        ));
-
-        List<MatchingResultDTO> finalResults = results.stream()
-            .limit(limit)
-            .collect(Collectors.toList());
-
-        log.info("Returning {} top matching offres for candidat {}", finalResults.size(), candidatId);
-        return finalResults;
+        // Keep only the best local pre-scores for the AI stage
+        return preselect(contexts, limit);
     }
 
     /**
@@ -583,4 +1311,33 @@ public class MatchingEngineService {
         }
         return sb.toString();
     }
+
+    /**
+     * Construit le filtre des documents d'offres publiées.
+     * Le statut indexé peut être absent (offres indexées avant son ajout) ou périmé
+     * (offre clôturée depuis) : les offres sans statut sont conservées et le statut
+     * réel reste vérifié après chargement.
+     */
+    private static Filter.Expression buildOffrePublieeFilter() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Object[] nonPubliees = Arrays.stream(OffreEmploi.StatutOffre.values())
+            .filter(statut -> statut != OffreEmploi.StatutOffre.PUBLIEE)
+            .map(Enum::name)
+            .toArray();
+        return b.and(b.eq("type", "offre"), b.nin("statut", nonPubliees)).build();
+    }
+
+    /**
+     * Couple offre/candidat prêt à être analysé par l'IA.
+     */
+    record MatchContext(
+        OffreEmploi offre,
+        Candidat candidat,
+        String nomEntreprise,
+        String prompt,
+        String empreinte,
+        int locationScore,
+        int preScore
+    ) {
+    }
 }
@@ -0,0 +1,347 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.dto.MatchingJobDTO;
+import ma.recrutement.dto.MatchingResultDTO;
+import ma.recrutement.dto.PaginationResponseDTO;
+import ma.recrutement.entity.MatchingJob;
+import ma.recrutement.entity.MatchingJob.StatutJob;
+import ma.recrutement.exception.BusinessException;
+import ma.recrutement.exception.ResourceNotFoundException;
+import ma.recrutement.repository.MatchingJobRepository;
+import ma.recrutement.repository.OffreEmploiRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service des jobs de matching asynchrones.
+ * Un job est persisté (table matching_jobs) puis exécuté par un pool de workers borné
+ * qui réutilise {@link MatchingEngineService} : le thread HTTP est libéré immédiatement,
+ * la progression (traités/total) est consultable et les résultats restent disponibles
+ * même si le client s'est déconnecté.
+ * Chaque instance renouvelle périodiquement le bail des jobs qu'elle exécute et reprend les jobs
+ * dont le bail a expiré ({@code lease-timeout-ms}) : un job en cours sur une autre instance active
+ * n'est jamais relancé, et une instance dont le bail a été repris n'écrit pas son résultat.
+ * Un job n'est consultable que par l'utilisateur qui l'a créé ou par un administrateur.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class MatchingJobService {
+
+    private final MatchingJobRepository matchingJobRepository;
+    private final OffreEmploiRepository offreEmploiRepository;
+    private final MatchingEngineService matchingEngineService;
+    private final TransactionTemplate transactionTemplate;
+    private final long leaseTimeoutMs;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService heartbeat;
+    // Jobs running on this instance, whose lease is renewed by the heartbeat
+    private final Set<Long> enCours = ConcurrentHashMap.newKeySet();
+
+    public MatchingJobService(
+            MatchingJobRepository matchingJobRepository,
+            OffreEmploiRepository offreEmploiRepository,
+            MatchingEngineService matchingEngineService,
+            TransactionTemplate transactionTemplate,
+            @Value("${matching.jobs.workers:2}") int workers,
+            @Value("${matching.jobs.lease-timeout-ms:300000}") long leaseTimeoutMs
+    ) {
+        this.matchingJobRepository = matchingJobRepository;
+        this.offreEmploiRepository = offreEmploiRepository;
+        this.matchingEngineService = matchingEngineService;
+        this.transactionTemplate = transactionTemplate;
+        this.leaseTimeoutMs = Math.max(0, leaseTimeoutMs);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Crée un job de matching pour une offre et le place dans la file d'exécution.
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre maximum de résultats
+     * @return l'état initial du job
+     */
+    public MatchingJobDTO createJob(Long offreId, int limit) {
+        if (!offreEmploiRepository.existsById(offreId)) {
+            throw new ResourceNotFoundException("Offre", offreId);
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        MatchingJob job = MatchingJob.builder()
+            .offreId(offreId)
+            .limite(limit)
+            .creePar(authentication != null ? authentication.getName() : null)
+            .build();
+        MatchingJob saved = transactionTemplate.execute(status -> matchingJobRepository.save(job));
+
+        // Submitted after commit: the worker must see the job row
+        submit(saved.getId());
+        log.info("Matching job {} created for offre {}", saved.getId(), offreId);
+        return mapToDTO(saved);
+    }
+
+    /**
+     * Récupère l'état d'un job de matching.
+     *
+     * @param jobId l'ID du job
+     * @return l'état du job
+     * @throws AccessDeniedException si le job a été créé par un autre utilisateur
+     */
+    public MatchingJobDTO getJob(Long jobId) {
+        return mapToDTO(findJobAutorise(jobId));
+    }
+
+    /**
+     * Récupère une page des résultats d'un job terminé.
+     *
+     * @param jobId l'ID du job
+     * @param page le numéro de page
+     * @param size la taille de page
+     * @return la page de résultats, par score décroissant
+     * @throws AccessDeniedException si le job a été créé par un autre utilisateur
+     */
+    public PaginationResponseDTO<MatchingResultDTO> getResultats(Long jobId, int page, int size) {
+        MatchingJob job = findJobAutorise(jobId);
+        if (job.getStatut() != StatutJob.TERMINE) {
+            throw new BusinessException("MATCHING_JOB_NON_TERMINE",
+                "Le job de matching " + jobId + " n'est pas terminé (statut : " + job.getStatut() + ")");
+        }
+
+        List<MatchingResultDTO> resultats = job.getResultats() != null ? job.getResultats() : List.of();
+        PageRequest pageRequest = PageRequest.of(Math.max(0, page), Math.max(1, size));
+        int from = (int) Math.min(pageRequest.getOffset(), resultats.size());
+        int to = Math.min(from + pageRequest.getPageSize(), resultats.size());
+        return PaginationResponseDTO.fromPage(new PageImpl<>(resultats.subList(from, to), pageRequest, resultats.size()));
+    }
+
+    /**
+     * Relance au démarrage les jobs en attente et ceux dont le bail a expiré, puis démarre le renouvellement
+     * périodique des baux (qui reprend aussi les jobs d'une instance arrêtée entre-temps).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJobs() {
+        int interrompus = reprendreInterrompus();
+        List<Long> enAttente = matchingJobRepository.findIdsByStatutIn(List.of(StatutJob.EN_ATTENTE));
+        if (!enAttente.isEmpty()) {
+            log.info("Resuming {} matching job(s) ({} interrupted)", enAttente.size(), interrompus);
+            enAttente.forEach(this::submit);
+        }
+
+        long interval = Math.max(1, leaseTimeoutMs / 3);
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs stay EN_COURS and are resumed once their lease expires
+        heartbeat.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Renouvelle le bail des jobs exécutés par cette instance, puis relance ceux d'une instance arrêtée.
+     */
+    private void heartbeat() {
+        try {
+            if (!enCours.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status ->
+                    matchingJobRepository.renouvelerBail(List.copyOf(enCours), LocalDateTime.now()));
+            }
+            int interrompus = reprendreInterrompus();
+            if (interrompus > 0) {
+                log.info("Resuming {} interrupted matching job(s)", interrompus);
+                matchingJobRepository.findIdsByStatutIn(List.of(StatutJob.EN_ATTENTE)).forEach(this::submit);
+            }
+        } catch (Exception e) {
+            log.warn("Matching job heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private int reprendreInterrompus() {
+        LocalDateTime expiration = LocalDateTime.now().minusNanos(leaseTimeoutMs * 1_000_000);
+        Integer interrompus = transactionTemplate.execute(status ->
+            matchingJobRepository.remettreEnAttenteJobsInterrompus(expiration));
+        return interrompus != null ? interrompus : 0;
+    }
+
+    private void submit(Long jobId) {
+        try {
+            workers.submit(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Matching job {} not submitted (shutting down), it will be resumed on restart", jobId);
+        }
+    }
+
+    private void run(Long jobId) {
+        // Identifies this reservation; stored without sub-millisecond digits so that it compares equal once read back
+        LocalDateTime reservation = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        Integer reserve = transactionTemplate.execute(status -> matchingJobRepository.reserver(jobId, reservation));
+        if (reserve == null || reserve == 0) {
+            return; // Already taken or finished
+        }
+
+        enCours.add(jobId);
+        try {
+            execute(jobId, reservation);
+        } finally {
+            enCours.remove(jobId);
+        }
+    }
+
+    private void execute(Long jobId, LocalDateTime reservation) {
+        MatchingJob job = findJob(jobId);
+        log.info("Running matching job {} for offre {}", jobId, job.getOffreId());
+        try {
+            List<MatchingResultDTO> resultats = matchingEngineService.findMatchingCandidates(
+                job.getOffreId(), job.getLimite(), new ProgressListener(jobId));
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("Matching job {} interrupted, it will be resumed once its lease expires", jobId);
+                return;
+            }
+            if (terminer(jobId, reservation, StatutJob.TERMINE, resultats, null)) {
+                log.info("Matching job {} finished with {} result(s)", jobId, resultats.size());
+            }
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("Matching job {} interrupted, it will be resumed once its lease expires", jobId);
+                return;
+            }
+            log.error("Matching job {} failed: {}", jobId, e.getMessage(), e);
+            terminer(jobId, reservation, StatutJob.ECHEC, List.of(), e.getMessage());
+        }
+    }
+
+    /**
+     * Enregistre l'issue d'un job, uniquement s'il est toujours en cours sous la réservation de cette instance.
+     *
+     * @return false si le bail a été repris entre-temps (le résultat est alors abandonné)
+     */
+    private boolean terminer(Long jobId, LocalDateTime reservation, StatutJob statut,
+                             List<MatchingResultDTO> resultats, String messageErreur) {
+        Boolean termine = transactionTemplate.execute(status -> {
+            MatchingJob job = matchingJobRepository.findReservation(jobId, reservation).orElse(null);
+            if (job == null) {
+                return false;
+            }
+            job.setStatut(statut);
+            job.setResultats(resultats);
+            job.setMessageErreur(messageErreur != null && messageErreur.length() > 1000
+                ? messageErreur.substring(0, 1000) : messageErreur);
+            if (statut == StatutJob.TERMINE) {
+                job.setTraites(job.getTotal());
+            }
+            job.setDateFin(LocalDateTime.now());
+            matchingJobRepository.save(job);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(termine)) {
+            log.warn("Matching job {} lost its lease before finishing, its outcome is discarded", jobId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Charge un job en vérifiant qu'il a été créé par l'utilisateur connecté, sauf pour un administrateur.
+     */
+    private MatchingJob findJobAutorise(Long jobId) {
+        MatchingJob job = findJob(jobId);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        boolean admin = authentication != null && authentication.getAuthorities().stream()
+            .anyMatch(authority -> "ROLE_ADMINISTRATEUR".equals(authority.getAuthority()));
+        if (!admin && (authentication == null || !Objects.equals(job.getCreePar(), authentication.getName()))) {
+            throw new AccessDeniedException("Le job de matching " + jobId + " a été créé par un autre utilisateur");
+        }
+        return job;
+    }
+
+    private MatchingJob findJob(Long jobId) {
+        return matchingJobRepository.findById(jobId)
+            .orElseThrow(() -> new ResourceNotFoundException("Job de matching", jobId));
+    }
+
+    private MatchingJobDTO mapToDTO(MatchingJob job) {
+        int total = job.getTotal() != null ? job.getTotal() : 0;
+        int traites = job.getTraites() != null ? job.getTraites() : 0;
+        int progression = job.getStatut() == StatutJob.TERMINE ? 100
+            : total > 0 ? Math.min(100, traites * 100 / total) : 0;
+
+        return MatchingJobDTO.builder()
+            .id(job.getId())
+            .offreId(job.getOffreId())
+            .limite(job.getLimite())
+            .statut(job.getStatut().name())
+            .total(total)
+            .traites(traites)
+            .progression(progression)
+            .nombreResultats(job.getResultats() != null ? job.getResultats().size() : 0)
+            .messageErreur(job.getMessageErreur())
+            .dateCreation(job.getDateCreation())
+            .dateDebut(job.getDateDebut())
+            .dateFin(job.getDateFin())
+            .build();
+    }
+
+    /**
+     * Enregistre la progression du job au fil des analyses.
+     * Les notifications arrivent de plusieurs threads : les écritures sont sérialisées
+     * pour ne jamais faire reculer le compteur persisté.
+     */
+    private final class ProgressListener implements MatchingListener {
+
+        private final Long jobId;
+        private final AtomicInteger traites = new AtomicInteger();
+        private volatile int total;
+
+        private ProgressListener(Long jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void onShortlist(List<MatchingResultDTO> shortlist) {
+            total = shortlist.size();
+            persist();
+        }
+
+        @Override
+        public void onResult(MatchingResultDTO result) {
+            traites.incrementAndGet();
+            persist();
+        }
+
+        private synchronized void persist() {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                    matchingJobRepository.updateProgression(jobId, total, traites.get()));
+            } catch (Exception e) {
+                log.debug("Could not update progress of matching job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.dto.MatchingResultDTO;
+
+import java.util.List;
+
+/**
+ * Écouteur de progression d'un matching.
+ * Les notifications de résultats peuvent provenir de plusieurs threads d'analyse.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public interface MatchingListener {
+
+    /**
+     * Écouteur qui ignore toutes les notifications.
+     */
+    MatchingListener NONE = new MatchingListener() {
+    };
+
+    /**
+     * Appelé une fois la présélection connue, avant toute analyse IA.
+     *
+     * @param shortlist les couples présélectionnés, scorés par le pré-score local
+     */
+    default void onShortlist(List<MatchingResultDTO> shortlist) {
+    }
+
+    /**
+     * Appelé une seule fois par couple, dès que son résultat est disponible (cache, analyse IA ou erreur).
+     *
+     * @param result le résultat
+     */
+    default void onResult(MatchingResultDTO result) {
+    }
+
+    /**
+     * Indique que plus personne n'attend le résultat : les analyses IA non encore lancées sont abandonnées.
+     *
+     * @return true si le matching doit être interrompu
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
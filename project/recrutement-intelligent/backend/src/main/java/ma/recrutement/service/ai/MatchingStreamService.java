@@ -0,0 +1,150 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.dto.MatchingResultDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Diffusion en continu (Server-Sent Events) des résultats de matching.
+ * Le matching est exécuté hors du thread servlet ; le client reçoit d'abord la présélection,
+ * puis chaque résultat dès la fin de son analyse IA, et enfin le classement final.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class MatchingStreamService {
+
+    public static final String EVENT_SHORTLIST = "shortlist";
+    public static final String EVENT_MATCH = "match";
+    public static final String EVENT_SUMMARY = "summary";
+    public static final String EVENT_ERROR = "error";
+
+    private final MatchingEngineService matchingEngineService;
+    private final long timeoutMs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MatchingStreamService(
+            MatchingEngineService matchingEngineService,
+            @Value("${matching.stream.timeout-ms:300000}") long timeoutMs
+    ) {
+        this.matchingEngineService = matchingEngineService;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Lance le matching d'une offre et retourne le flux d'événements associé.
+     *
+     * @param offreId l'ID de l'offre
+     * @param limit le nombre maximum de résultats du classement final
+     * @return l'émetteur SSE
+     */
+    public SseEmitter streamMatchingCandidates(Long offreId, int limit) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        SseMatchingListener listener = new SseMatchingListener(emitter);
+
+        listener.attach(executor.submit(() -> {
+            try {
+                List<MatchingResultDTO> ranked = matchingEngineService.findMatchingCandidates(offreId, limit, listener);
+                listener.send(EVENT_SUMMARY, ranked);
+                emitter.complete();
+            } catch (Exception e) {
+                if (listener.isCancelled()) {
+                    log.debug("Streaming matching for offre {} cancelled: client disconnected", offreId);
+                    return;
+                }
+                log.error("Streaming matching failed for offre {}: {}", offreId, e.getMessage(), e);
+                listener.send(EVENT_ERROR, Map.of("message", String.valueOf(e.getMessage())));
+                emitter.complete();
+            }
+        }));
+
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Relaie les notifications du matching vers le client SSE.
+     * Les envois sont sérialisés car ils proviennent de plusieurs threads d'analyse ;
+     * dès que le client se déconnecte (fin, erreur ou expiration du flux), le matching
+     * en cours est annulé et les analyses IA restantes ne sont pas lancées.
+     */
+    private static final class SseMatchingListener implements MatchingListener {
+
+        private final SseEmitter emitter;
+        private volatile boolean disconnected;
+        private volatile boolean completed;
+        private volatile Future<?> task;
+
+        private SseMatchingListener(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onTimeout(this::disconnect);
+            emitter.onError(error -> disconnect());
+            emitter.onCompletion(this::disconnect);
+        }
+
+        /**
+         * Associe la tâche de matching, annulée si le client est déjà parti.
+         */
+        private void attach(Future<?> task) {
+            this.task = task;
+            if (disconnected) {
+                task.cancel(true);
+            }
+        }
+
+        @Override
+        public void onShortlist(List<MatchingResultDTO> shortlist) {
+            send(EVENT_SHORTLIST, shortlist);
+        }
+
+        @Override
+        public void onResult(MatchingResultDTO result) {
+            send(EVENT_MATCH, result);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return disconnected && !completed;
+        }
+
+        private synchronized void send(String event, Object data) {
+            if (disconnected) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+                if (EVENT_SUMMARY.equals(event) || EVENT_ERROR.equals(event)) {
+                    completed = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("SSE client disconnected: {}", e.getMessage());
+                disconnect();
+            }
+        }
+
+        private void disconnect() {
+            disconnected = true;
+            Future<?> current = task;
+            if (current != null && !completed) {
+                // Interrupts the matching thread, which cancels the pending AI analyses
+                current.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ma.recrutement.service.ai;
+
+/**
+ * Événement publié après l'indexation d'une offre dans le vector store.
+ *
+ * @param offreId l'ID de l'offre
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public record OffreIndexedEvent(Long offreId) {
+}
@@ -0,0 +1,392 @@
+package ma.recrutement.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.dto.ReindexRunDTO;
+import ma.recrutement.entity.ReindexRun;
+import ma.recrutement.entity.ReindexRun.ModeReindex;
+import ma.recrutement.entity.ReindexRun.StatutReindex;
+import ma.recrutement.exception.BusinessException;
+import ma.recrutement.exception.ResourceNotFoundException;
+import ma.recrutement.repository.CandidatRepository;
+import ma.recrutement.repository.OffreEmploiRepository;
+import ma.recrutement.repository.ReindexRunRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Service de ré-indexation en masse du vector store (CV puis offres), déclenchée par un administrateur.
+ * Les entités sont parcourues par pagination sur clé (ID croissant) ; chaque page est indexée en une
+ * seule transaction par {@link MatchingEngineService} (embeddings par lots, upserts groupés) et plusieurs
+ * pages sont traitées en parallèle. Après chaque fenêtre de pages validées, le dernier ID traité est
+ * enregistré : une ré-indexation interrompue (arrêt, crash) reprend à ce point une fois son bail expiré
+ * ({@code lease-timeout-ms}, renouvelé par l'instance qui l'exécute), et une ré-indexation en échec peut être
+ * relancée depuis ce point. Une ré-indexation en cours sur une autre instance active n'est jamais relancée.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class ReindexService {
+
+    private static final List<StatutReindex> STATUTS_ACTIFS = List.of(StatutReindex.EN_ATTENTE, StatutReindex.EN_COURS);
+
+    private final ReindexRunRepository reindexRunRepository;
+    private final CandidatRepository candidatRepository;
+    private final OffreEmploiRepository offreEmploiRepository;
+    private final MatchingEngineService matchingEngineService;
+    private final VectorIndexService vectorIndexService;
+    private final TransactionTemplate transactionTemplate;
+    private final int pageSize;
+    private final int parallelism;
+    private final long leaseTimeoutMs;
+    private final ExecutorService runner;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService heartbeat;
+    // Runs executing on this instance, whose lease is renewed by the heartbeat
+    private final Set<Long> enCours = ConcurrentHashMap.newKeySet();
+
+    public ReindexService(
+            ReindexRunRepository reindexRunRepository,
+            CandidatRepository candidatRepository,
+            OffreEmploiRepository offreEmploiRepository,
+            MatchingEngineService matchingEngineService,
+            VectorIndexService vectorIndexService,
+            TransactionTemplate transactionTemplate,
+            @Value("${matching.reindex.page-size:100}") int pageSize,
+            @Value("${matching.reindex.workers:4}") int workers,
+            @Value("${matching.reindex.lease-timeout-ms:300000}") long leaseTimeoutMs
+    ) {
+        this.reindexRunRepository = reindexRunRepository;
+        this.candidatRepository = candidatRepository;
+        this.offreEmploiRepository = offreEmploiRepository;
+        this.matchingEngineService = matchingEngineService;
+        this.vectorIndexService = vectorIndexService;
+        this.transactionTemplate = transactionTemplate;
+        this.pageSize = Math.max(1, pageSize);
+        this.parallelism = Math.max(1, workers);
+        this.leaseTimeoutMs = Math.max(0, leaseTimeoutMs);
+        // One run at a time; its pages are indexed by the worker pool
+        this.runner = Executors.newSingleThreadExecutor();
+        this.workers = Executors.newFixedThreadPool(this.parallelism);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Démarre une ré-indexation en masse.
+     *
+     * @param mode MANQUANTS (entités sans vecteur) ou COMPLET (toutes les entités)
+     * @return l'état initial de la ré-indexation
+     */
+    public ReindexRunDTO demarrer(ModeReindex mode) {
+        if (!reindexRunRepository.findIdsByStatutIn(STATUTS_ACTIFS).isEmpty()) {
+            throw new BusinessException("REINDEX_EN_COURS", "Une ré-indexation est déjà en cours");
+        }
+
+        boolean complet = mode == ModeReindex.COMPLET;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        ReindexRun run = ReindexRun.builder()
+            .mode(mode)
+            .totalCandidats(complet ? candidatRepository.countCandidatsWithCvText()
+                : candidatRepository.countCandidatsWithCvTextButNoVectorId())
+            .totalOffres(complet ? offreEmploiRepository.countOffresIndexables()
+                : offreEmploiRepository.countOffresNonIndexees())
+            .creePar(authentication != null ? authentication.getName() : null)
+            .build();
+        ReindexRun saved = transactionTemplate.execute(status -> reindexRunRepository.save(run));
+
+        // Submitted after commit: the runner must see the run row
+        submit(saved.getId());
+        log.info("Reindex run {} created ({}): {} CV(s), {} offre(s)",
+            saved.getId(), mode, saved.getTotalCandidats(), saved.getTotalOffres());
+        return mapToDTO(saved);
+    }
+
+    /**
+     * Relance une ré-indexation en échec à partir de son dernier point de contrôle.
+     *
+     * @param runId l'ID de la ré-indexation
+     * @return l'état de la ré-indexation
+     */
+    public ReindexRunDTO reprendre(Long runId) {
+        ReindexRun run = transactionTemplate.execute(status -> {
+            ReindexRun existing = findRun(runId);
+            if (existing.getStatut() != StatutReindex.ECHEC) {
+                throw new BusinessException("REINDEX_NON_REPRENABLE",
+                    "La ré-indexation " + runId + " n'est pas en échec (statut : " + existing.getStatut() + ")");
+            }
+            existing.setStatut(StatutReindex.EN_ATTENTE);
+            existing.setMessageErreur(null);
+            existing.setDateFin(null);
+            return reindexRunRepository.save(existing);
+        });
+
+        submit(runId);
+        log.info("Reindex run {} resumed after CV {} / offre {}", runId, run.getDernierCandidatId(), run.getDernierOffreId());
+        return mapToDTO(run);
+    }
+
+    /**
+     * Récupère l'état d'une ré-indexation.
+     *
+     * @param runId l'ID de la ré-indexation
+     * @return l'état de la ré-indexation
+     */
+    public ReindexRunDTO getRun(Long runId) {
+        return mapToDTO(findRun(runId));
+    }
+
+    /**
+     * Liste les ré-indexations les plus récentes.
+     *
+     * @return les ré-indexations, de la plus récente à la plus ancienne
+     */
+    public List<ReindexRunDTO> getRuns() {
+        return reindexRunRepository.findTop20ByOrderByIdDesc().stream().map(this::mapToDTO).toList();
+    }
+
+    /**
+     * Relance au démarrage les ré-indexations en attente et celles dont le bail a expiré, à partir de leur
+     * point de contrôle, puis démarre le renouvellement périodique des baux (qui reprend aussi les
+     * ré-indexations d'une instance arrêtée entre-temps).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRuns() {
+        int interrompues = reprendreInterrompues();
+        List<Long> enAttente = reindexRunRepository.findIdsByStatutIn(List.of(StatutReindex.EN_ATTENTE));
+        if (!enAttente.isEmpty()) {
+            log.info("Resuming {} reindex run(s) ({} interrupted)", enAttente.size(), interrompues);
+            enAttente.forEach(this::submit);
+        }
+
+        long interval = Math.max(1, leaseTimeoutMs / 3);
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // A running reindex stays EN_COURS and is resumed from its checkpoint once its lease expires
+        heartbeat.shutdownNow();
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Renouvelle le bail des ré-indexations exécutées par cette instance, puis relance celles d'une instance arrêtée.
+     */
+    private void heartbeat() {
+        try {
+            if (!enCours.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status ->
+                    reindexRunRepository.renouvelerBail(List.copyOf(enCours), LocalDateTime.now()));
+            }
+            int interrompues = reprendreInterrompues();
+            if (interrompues > 0) {
+                log.info("Resuming {} interrupted reindex run(s)", interrompues);
+                reindexRunRepository.findIdsByStatutIn(List.of(StatutReindex.EN_ATTENTE)).forEach(this::submit);
+            }
+        } catch (Exception e) {
+            log.warn("Reindex heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private int reprendreInterrompues() {
+        LocalDateTime expiration = LocalDateTime.now().minusNanos(leaseTimeoutMs * 1_000_000);
+        Integer interrompues = transactionTemplate.execute(status ->
+            reindexRunRepository.remettreEnAttenteInterrompues(expiration));
+        return interrompues != null ? interrompues : 0;
+    }
+
+    private void submit(Long runId) {
+        try {
+            runner.submit(() -> run(runId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Reindex run {} not submitted (shutting down), it will be resumed on restart", runId);
+        }
+    }
+
+    private void run(Long runId) {
+        Integer reserve = transactionTemplate.execute(status -> reindexRunRepository.reserver(runId, LocalDateTime.now()));
+        if (reserve == null || reserve == 0) {
+            return; // Already taken or finished
+        }
+
+        enCours.add(runId);
+        try {
+            execute(runId);
+        } finally {
+            enCours.remove(runId);
+        }
+    }
+
+    private void execute(Long runId) {
+        ReindexRun run = findRun(runId);
+        boolean complet = run.getMode() == ModeReindex.COMPLET;
+        long start = System.nanoTime();
+        log.info("Running reindex run {} ({}) from CV {} / offre {}",
+            runId, run.getMode(), run.getDernierCandidatId(), run.getDernierOffreId());
+        try {
+            boolean fini = indexAll(runId, "CV", run.getDernierCandidatId(),
+                    complet ? candidatRepository::findCandidatsWithCvText : candidatRepository::findCandidatsWithCvTextButNoVectorId,
+                    matchingEngineService::indexCvs,
+                    (dernierId, traites) -> reindexRunRepository.checkpointCandidats(runId, dernierId, traites))
+                && indexAll(runId, "offre", run.getDernierOffreId(),
+                    complet ? offreEmploiRepository::findOffresIndexables : offreEmploiRepository::findOffresNonIndexees,
+                    matchingEngineService::indexOffres,
+                    (dernierId, traites) -> reindexRunRepository.checkpointOffres(runId, dernierId, traites));
+            if (!fini) {
+                log.warn("Reindex run {} interrupted, it will be resumed once its lease expires", runId);
+                return;
+            }
+            terminer(runId, StatutReindex.TERMINE, null);
+            log.info("Reindex run {} finished in {}", runId, Duration.ofNanos(System.nanoTime() - start));
+            createDeferredIndexes();
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("Reindex run {} interrupted, it will be resumed once its lease expires", runId);
+                return;
+            }
+            log.error("Reindex run {} failed: {}", runId, e.getMessage(), e);
+            terminer(runId, StatutReindex.ECHEC, e.getMessage());
+        }
+    }
+
+    /**
+     * Un index IVFFLAT différé sur une table trop petite peut désormais être entraîné sur les lignes ré-indexées.
+     */
+    private void createDeferredIndexes() {
+        try {
+            vectorIndexService.createDeferredIndexes();
+        } catch (Exception e) {
+            log.warn("Deferred vector index check failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Indexe toutes les entités d'un type après le point de contrôle, par fenêtres de pages traitées en parallèle.
+     * Le point de contrôle n'avance qu'une fois toutes les pages de la fenêtre validées : après un arrêt,
+     * seule la fenêtre en cours est ré-indexée (les écritures sont des upserts, donc rejouables).
+     *
+     * @return false si l'exécution a été interrompue
+     */
+    private boolean indexAll(Long runId, String type, Long checkpoint,
+                             BiFunction<Long, Pageable, List<Long>> pageFetcher,
+                             Function<List<Long>, Integer> pageIndexer,
+                             Checkpointer checkpointer) throws Exception {
+        long dernierId = checkpoint != null ? checkpoint : 0L;
+        while (!Thread.currentThread().isInterrupted()) {
+            // Next window: up to one page per worker, fetched by key
+            List<List<Long>> window = new ArrayList<>(parallelism);
+            long afterId = dernierId;
+            while (window.size() < parallelism) {
+                List<Long> page = pageFetcher.apply(afterId, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                window.add(page);
+                afterId = page.get(page.size() - 1);
+            }
+            if (window.isEmpty()) {
+                return true;
+            }
+
+            List<Future<Integer>> futures = new ArrayList<>(window.size());
+            for (List<Long> page : window) {
+                futures.add(workers.submit(() -> pageIndexer.apply(page)));
+            }
+            long traites = 0;
+            int indexes = 0;
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    indexes += futures.get(i).get();
+                    traites += window.get(i).size();
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+
+            dernierId = afterId;
+            long checkpointId = dernierId;
+            long windowTraites = traites;
+            transactionTemplate.executeWithoutResult(status -> checkpointer.save(checkpointId, windowTraites));
+            log.debug("Reindex run {}: {} {}(s) indexed up to ID {}", runId, indexes, type, checkpointId);
+        }
+        return false;
+    }
+
+    private void terminer(Long runId, StatutReindex statut, String messageErreur) {
+        transactionTemplate.executeWithoutResult(status -> {
+            ReindexRun run = findRun(runId);
+            run.setStatut(statut);
+            run.setMessageErreur(messageErreur != null && messageErreur.length() > 1000
+                ? messageErreur.substring(0, 1000) : messageErreur);
+            run.setDateFin(LocalDateTime.now());
+            reindexRunRepository.save(run);
+        });
+    }
+
+    private ReindexRun findRun(Long runId) {
+        return reindexRunRepository.findById(runId)
+            .orElseThrow(() -> new ResourceNotFoundException("Ré-indexation", runId));
+    }
+
+    private ReindexRunDTO mapToDTO(ReindexRun run) {
+        long total = run.getTotalCandidats() + run.getTotalOffres();
+        long traites = run.getCandidatsTraites() + run.getOffresTraitees();
+        int progression = run.getStatut() == StatutReindex.TERMINE ? 100
+            : total > 0 ? (int) Math.min(100, traites * 100 / total) : 0;
+
+        return ReindexRunDTO.builder()
+            .id(run.getId())
+            .mode(run.getMode().name())
+            .statut(run.getStatut().name())
+            .totalCandidats(run.getTotalCandidats())
+            .candidatsTraites(run.getCandidatsTraites())
+            .totalOffres(run.getTotalOffres())
+            .offresTraitees(run.getOffresTraitees())
+            .progression(progression)
+            .messageErreur(run.getMessageErreur())
+            .creePar(run.getCreePar())
+            .dateCreation(run.getDateCreation())
+            .dateDebut(run.getDateDebut())
+            .dateFin(run.getDateFin())
+            .build();
+    }
+
+    /**
+     * Enregistrement du point de contrôle d'un type d'entité.
+     */
+    @FunctionalInterface
+    private interface Checkpointer {
+        void save(Long dernierId, long traites);
+    }
+}
@@ -0,0 +1,422 @@
+package ma.recrutement.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Gestion de l'index ANN (pgvector) des tables d'embeddings.
+ * Stratégie configurable : HNSW ({@code m}, {@code ef_construction}) ou IVFFLAT ({@code lists}
+ * calculé à partir du nombre de lignes), réglage de {@code hnsw.ef_search} /
+ * {@code ivfflat.probes} à chaque requête, et reconstruction sans blocage des écritures.
+ * L'index peut porter sur une copie réduite des embeddings (dimensions tronquées, embeddings
+ * « Matryoshka », et/ou quantification {@code halfvec} ou binaire) : la recherche sélectionne alors
+ * des candidats sur cette copie, puis les réordonne avec le vecteur complet.
+ * La table d'embeddings est partitionnée par type de document (CV, offre) : chaque partition a son
+ * propre index, dimensionné sur ses seules lignes, et une recherche filtrée sur un type n'interroge
+ * que sa partition.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Service
+public class VectorIndexService {
+
+    /**
+     * Stratégies d'index supportées.
+     */
+    public enum IndexType {
+        NONE,
+        IVFFLAT,
+        HNSW
+    }
+
+    /**
+     * Représentation des embeddings indexée (la colonne conserve la pleine précision).
+     */
+    public enum Quantization {
+        NONE,
+        HALFVEC,
+        BINARY
+    }
+
+    // Below this size an IVFFLAT index is trained on too few rows to be useful
+    private static final long IVFFLAT_MIN_ROWS = 1000;
+    private static final int HNSW_MAX_EF_SEARCH = 1000;
+
+    /**
+     * Types de document ayant leur propre partition (et leur propre index ANN).
+     */
+    public static final List<String> PARTITIONED_TYPES = List.of("cv", "offre");
+
+    private static final Pattern LISTS_OPTION = Pattern.compile("lists=(\\d+)");
+
+    private final DataSource dataSource;
+    private final IndexType indexType;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final int hnswEfSearch;
+    private final int ivfflatLists;
+    private final int ivfflatProbes;
+    private final Quantization quantization;
+    private final int rerankCandidates;
+    private final int dimension;
+    private final int firstPassDimensions;
+
+    // IVFFLAT geometry of each indexed table, used to derive the probes of each query
+    private final Map<String, IndexGeometry> geometries = new ConcurrentHashMap<>();
+    // Tables whose IVFFLAT index waits for enough rows
+    private final Set<String> deferredTables = ConcurrentHashMap.newKeySet();
+
+    public VectorIndexService(
+            DataSource dataSource,
+            @Value("${spring.ai.vectorstore.pgvector.index-type:HNSW}") String indexType,
+            @Value("${matching.vectorstore.hnsw.m:16}") int hnswM,
+            @Value("${matching.vectorstore.hnsw.ef-construction:64}") int hnswEfConstruction,
+            @Value("${matching.vectorstore.hnsw.ef-search:40}") int hnswEfSearch,
+            @Value("${matching.vectorstore.ivfflat.lists:0}") int ivfflatLists,
+            @Value("${matching.vectorstore.ivfflat.probes:0}") int ivfflatProbes,
+            @Value("${matching.vectorstore.quantization:NONE}") String quantization,
+            @Value("${matching.vectorstore.rerank-candidates:200}") int rerankCandidates,
+            @Value("${spring.ai.vectorstore.pgvector.dimensions:1536}") int dimension,
+            @Value("${matching.vectorstore.first-pass-dimensions:0}") int firstPassDimensions
+    ) {
+        this.dataSource = dataSource;
+        this.indexType = IndexType.valueOf(indexType.trim().toUpperCase(Locale.ROOT));
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.hnswEfSearch = hnswEfSearch;
+        this.ivfflatLists = ivfflatLists;
+        this.ivfflatProbes = ivfflatProbes;
+        this.quantization = Quantization.valueOf(quantization.trim().toUpperCase(Locale.ROOT));
+        this.rerankCandidates = Math.max(1, rerankCandidates);
+        this.dimension = dimension;
+        // 0 (or the full dimension): the first pass uses the whole vector
+        this.firstPassDimensions = firstPassDimensions > 0 && firstPassDimensions < dimension ? firstPassDimensions : 0;
+    }
+
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    /**
+     * Indique si la recherche se fait en deux temps (sélection sur la copie indexée, puis réordonnancement).
+     *
+     * @return true si la copie indexée est tronquée ou quantifiée
+     */
+    public boolean isTwoTier() {
+        return firstPassDimensions > 0 || quantization != Quantization.NONE;
+    }
+
+    /**
+     * Nombre de candidats sélectionnés sur la copie quantifiée avant le réordonnancement en pleine précision.
+     *
+     * @param topK le nombre de résultats demandés
+     * @return le nombre de candidats
+     */
+    public int candidateCount(int topK) {
+        return Math.max(topK, rerankCandidates);
+    }
+
+    /**
+     * Expression de distance servie par l'index, entre la colonne et un vecteur de requête.
+     *
+     * @param queryVectorSql l'expression SQL du vecteur de requête
+     * @return l'expression de distance (cosinus, ou Hamming sur la copie binaire)
+     */
+    public String indexedDistanceSql(String queryVectorSql) {
+        String operator = quantization == Quantization.BINARY ? " <~> " : " <=> ";
+        return indexedColumnSql() + operator + reducedVectorSql(queryVectorSql);
+    }
+
+    /**
+     * Nom de la partition d'un type de document.
+     *
+     * @param table la table d'embeddings (partitionnée)
+     * @param docType le type de document
+     * @return la partition du type, ou la table elle-même si le type n'a pas de partition dédiée
+     */
+    public static String partitionTable(String table, String docType) {
+        return docType != null && PARTITIONED_TYPES.contains(docType) ? table + "_" + docType : table;
+    }
+
+    /**
+     * Crée l'index de chaque partition typée s'il n'existe pas encore.
+     *
+     * @param jdbcTemplate le JdbcTemplate
+     * @param table la table d'embeddings (partitionnée)
+     */
+    public void ensureIndexes(JdbcTemplate jdbcTemplate, String table) {
+        for (String docType : PARTITIONED_TYPES) {
+            ensureIndex(jdbcTemplate, partitionTable(table, docType));
+        }
+    }
+
+    /**
+     * Reconstruit l'index de chaque partition typée sans bloquer les écritures.
+     *
+     * @param table la table d'embeddings (partitionnée)
+     * @return une description des index reconstruits
+     */
+    public String rebuildIndexes(String table) {
+        return PARTITIONED_TYPES.stream()
+            .map(docType -> rebuildIndex(partitionTable(table, docType)))
+            .collect(Collectors.joining(" ; "));
+    }
+
+    /**
+     * Crée l'index de la table s'il n'existe pas encore.
+     * Un index existant d'un autre type est conservé (la reconstruction est une opération
+     * d'administration) ; un index IVFFLAT n'est créé qu'une fois la table suffisamment remplie
+     * (voir {@link #createDeferredIndexes()}).
+     *
+     * @param jdbcTemplate le JdbcTemplate
+     * @param table la table d'embeddings
+     */
+    public void ensureIndex(JdbcTemplate jdbcTemplate, String table) {
+        String indexName = indexName(table);
+        long rows = countRows(jdbcTemplate, table);
+
+        List<String[]> existing = jdbcTemplate.query(
+            "SELECT am.amname, COALESCE(array_to_string(c.reloptions, ','), ''), pg_get_indexdef(c.oid) FROM pg_class c " +
+            "JOIN pg_am am ON am.oid = c.relam WHERE c.relname = ?",
+            (rs, rowNum) -> new String[] {rs.getString(1), rs.getString(2), rs.getString(3)},
+            indexName);
+
+        if (!existing.isEmpty()) {
+            String method = existing.get(0)[0];
+            Matcher lists = LISTS_OPTION.matcher(existing.get(0)[1]);
+            geometries.put(table, new IndexGeometry(lists.find() ? Integer.parseInt(lists.group(1)) : 0, rows));
+            if (!method.equalsIgnoreCase(indexType.name())) {
+                log.warn("Index {} uses {} but {} is configured: rebuild it from the admin endpoint",
+                    indexName, method, indexType);
+            }
+            Quantization indexed = existing.get(0)[2].contains("binary_quantize") ? Quantization.BINARY
+                : existing.get(0)[2].contains("halfvec") ? Quantization.HALFVEC : Quantization.NONE;
+            if (indexed != quantization) {
+                log.warn("Index {} is built on {} embeddings but {} is configured: rebuild it from the admin endpoint",
+                    indexName, indexed, quantization);
+            }
+            if (existing.get(0)[2].contains("subvector") != (firstPassDimensions > 0)) {
+                log.warn("Index {} does not match the configured first-pass dimensions ({}): rebuild it from the admin endpoint",
+                    indexName, firstPassDimensions > 0 ? firstPassDimensions : dimension);
+            }
+            return;
+        }
+
+        if (indexType == IndexType.NONE) {
+            return;
+        }
+        if (indexType == IndexType.IVFFLAT && rows < IVFFLAT_MIN_ROWS) {
+            deferredTables.add(table);
+            log.warn("IVFFLAT index on {} deferred: {} row(s), it is created once the table reaches {} rows "
+                + "(searches scan the table until then)", table, rows, IVFFLAT_MIN_ROWS);
+            return;
+        }
+
+        jdbcTemplate.execute(indexDdl(table, indexName, rows, false));
+        geometries.put(table, new IndexGeometry(indexType == IndexType.IVFFLAT ? lists(rows) : 0, rows));
+        log.info("Index {} created ({}, {} row(s))", indexName, indexType, rows);
+    }
+
+    /**
+     * Crée les index IVFFLAT différés des tables désormais suffisamment remplies, sans bloquer les écritures.
+     * Appelé après une ré-indexation en masse et après chaque indexation de l'outbox ; sans index différé,
+     * l'appel ne fait rien.
+     */
+    public void createDeferredIndexes() {
+        for (String table : deferredTables) {
+            if (countRows(new JdbcTemplate(dataSource), table) < IVFFLAT_MIN_ROWS) {
+                continue;
+            }
+            // Claimed by a single caller: concurrent callers skip the table
+            if (!deferredTables.remove(table)) {
+                continue;
+            }
+            try {
+                rebuildIndex(table);
+            } catch (RuntimeException e) {
+                deferredTables.add(table);
+                log.warn("Deferred IVFFLAT index on {} not created: {}", table, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reconstruit l'index d'une table sans bloquer les écritures : le nouvel index est construit
+     * en CONCURRENTLY sous un nom temporaire, puis remplace l'ancien.
+     *
+     * @param table la table d'embeddings
+     * @return une description de l'index reconstruit
+     */
+    public String rebuildIndex(String table) {
+        String indexName = indexName(table);
+        String tmpName = indexName + "_new";
+        long rows = countRows(new JdbcTemplate(dataSource), table);
+
+        // CREATE/DROP INDEX CONCURRENTLY cannot run inside a transaction block
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + tmpName);
+                if (indexType != IndexType.NONE) {
+                    statement.execute(indexDdl(table, tmpName, rows, true));
+                }
+                statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+                if (indexType != IndexType.NONE) {
+                    statement.execute("ALTER INDEX " + tmpName + " RENAME TO " + indexName);
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Reconstruction de l'index " + indexName + " impossible: " + e.getMessage(), e);
+        }
+
+        int lists = indexType == IndexType.IVFFLAT ? lists(rows) : 0;
+        geometries.put(table, new IndexGeometry(lists, rows));
+        deferredTables.remove(table);
+        String description = indexType == IndexType.IVFFLAT
+            ? String.format("%s (IVFFLAT, lists = %d, %s, %d dimensions, %d lignes)",
+                indexName, lists, quantization, indexedDimensions(), rows)
+            : String.format("%s (%s, %s, %d dimensions, %d lignes)",
+                indexName, indexType, quantization, indexedDimensions(), rows);
+        log.info("Index rebuilt: {}", description);
+        return description;
+    }
+
+    /**
+     * Règle la précision de la recherche ANN pour la transaction en cours, selon le topK demandé.
+     * À appeler dans la même transaction que la requête de similarité.
+     *
+     * @param jdbcTemplate le JdbcTemplate
+     * @param table la table (ou partition) interrogée
+     * @param topK le nombre de résultats demandés
+     */
+    public void applySearchSettings(JdbcTemplate jdbcTemplate, String table, int topK) {
+        switch (indexType) {
+            case HNSW -> setLocal(jdbcTemplate, "hnsw.ef_search",
+                Math.min(HNSW_MAX_EF_SEARCH, Math.max(hnswEfSearch, topK)));
+            case IVFFLAT -> setLocal(jdbcTemplate, "ivfflat.probes", probes(table, topK));
+            default -> {
+                // No ANN index: exact scan
+            }
+        }
+    }
+
+    /**
+     * Nombre de listes IVFFLAT : rows / 1000 jusqu'à 1M lignes, sqrt(rows) au-delà (recommandations pgvector).
+     */
+    private int lists(long rows) {
+        if (ivfflatLists > 0) {
+            return ivfflatLists;
+        }
+        long lists = rows <= 1_000_000 ? rows / 1000 : (long) Math.sqrt(rows);
+        return (int) Math.max(10, lists);
+    }
+
+    /**
+     * Nombre de listes sondées : sqrt(lists) par défaut, et assez de listes pour couvrir topK lignes.
+     */
+    private int probes(String table, int topK) {
+        // Whole table: the largest partition sets the probes
+        IndexGeometry geometry = geometries.get(table);
+        if (geometry == null) {
+            geometry = geometries.values().stream()
+                .max(Comparator.comparingLong(IndexGeometry::rows))
+                .orElse(new IndexGeometry(100, 0));
+        }
+        int lists = geometry.lists() > 0 ? geometry.lists() : 100;
+        int base = ivfflatProbes > 0 ? ivfflatProbes : (int) Math.ceil(Math.sqrt(lists));
+        long rowsPerList = Math.max(1, geometry.rows() / Math.max(1, lists));
+        int forTopK = (int) Math.ceil((double) topK / rowsPerList);
+        return Math.max(1, Math.min(lists, Math.max(base, forTopK)));
+    }
+
+    private String indexDdl(String table, String indexName, long rows, boolean concurrently) {
+        String create = "CREATE INDEX " + (concurrently ? "CONCURRENTLY " : "") + "IF NOT EXISTS " + indexName + " ON " + table;
+        String column = indexedColumnSql() + " " + operatorClass();
+        if (indexType == IndexType.IVFFLAT) {
+            return create + " USING ivfflat (" + column + ") WITH (lists = " + lists(rows) + ")";
+        }
+        return create + " USING hnsw (" + column + ") WITH (m = " + hnswM
+            + ", ef_construction = " + hnswEfConstruction + ")";
+    }
+
+    /**
+     * Colonne (ou expression d'index) portant la copie indexée des embeddings.
+     */
+    private String indexedColumnSql() {
+        return firstPassDimensions == 0 && quantization == Quantization.NONE
+            ? "embedding"
+            : "(" + reducedVectorSql("embedding") + ")";
+    }
+
+    /**
+     * Réduit un vecteur à la représentation indexée : premières dimensions (la distance cosinus
+     * ne dépend pas de la norme, le préfixe n'a pas à être renormalisé), puis quantification.
+     */
+    private String reducedVectorSql(String vectorSql) {
+        int dimensions = indexedDimensions();
+        String truncated = firstPassDimensions > 0
+            ? "subvector(" + vectorSql + ", 1, " + dimensions + ")::vector(" + dimensions + ")"
+            : vectorSql;
+        return switch (quantization) {
+            case NONE -> truncated;
+            case HALFVEC -> "(" + truncated + ")::halfvec(" + dimensions + ")";
+            case BINARY -> "binary_quantize(" + truncated + ")::bit(" + dimensions + ")";
+        };
+    }
+
+    private int indexedDimensions() {
+        return firstPassDimensions > 0 ? firstPassDimensions : dimension;
+    }
+
+    private String operatorClass() {
+        return switch (quantization) {
+            case NONE -> "vector_cosine_ops";
+            case HALFVEC -> "halfvec_cosine_ops";
+            case BINARY -> "bit_hamming_ops";
+        };
+    }
+
+    private void setLocal(JdbcTemplate jdbcTemplate, String name, int value) {
+        jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class, name, String.valueOf(value));
+    }
+
+    private long countRows(JdbcTemplate jdbcTemplate, String table) {
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return rows != null ? rows : 0;
+    }
+
+    private String indexName(String table) {
+        return table + "_embedding_idx";
+    }
+
+    /**
+     * Géométrie IVFFLAT d'un index (0 liste pour un index HNSW).
+     */
+    private record IndexGeometry(int lists, long rows) {
+    }
+}
@@ -0,0 +1,34 @@
+package ma.recrutement.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Utilitaires de calcul d'empreintes (fingerprints) de contenus.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public final class HashUtil {
+
+    private HashUtil() {
+    }
+
+    /**
+     * Calcule l'empreinte SHA-256 d'un texte, encodée en hexadécimal.
+     *
+     * @param content le texte
+     * @return l'empreinte (64 caractères)
+     */
+    public static String sha256Hex(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponible", e);
+        }
+    }
+}
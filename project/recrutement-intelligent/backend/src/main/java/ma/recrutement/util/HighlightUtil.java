@@ -0,0 +1,67 @@
+package ma.recrutement.util;
+
+/**
+ * Mise en forme HTML des extraits surlignés par ts_headline.
+ * PostgreSQL encadre les termes trouvés par des délimiteurs de contrôle (non HTML) ;
+ * le texte est échappé avant que ces délimiteurs ne deviennent des balises &lt;mark&gt;.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public final class HighlightUtil {
+
+    /**
+     * Délimiteur de début de surlignage (caractère STX, chr(2) côté SQL).
+     */
+    public static final char START_SEL = '\u0002';
+
+    /**
+     * Délimiteur de fin de surlignage (caractère ETX, chr(3) côté SQL).
+     */
+    public static final char STOP_SEL = '\u0003';
+
+    private HighlightUtil() {
+    }
+
+    /**
+     * Échappe un extrait renvoyé par ts_headline et remplace ses délimiteurs par des balises &lt;mark&gt;.
+     * Les balises produites sont toujours équilibrées, même si le texte source contient des délimiteurs.
+     *
+     * @param headline l'extrait brut (peut être null)
+     * @return l'extrait HTML sûr, ou null
+     */
+    public static String toHtml(String headline) {
+        if (headline == null) {
+            return null;
+        }
+        StringBuilder html = new StringBuilder(headline.length() + 32);
+        boolean open = false;
+        for (int i = 0; i < headline.length(); i++) {
+            char c = headline.charAt(i);
+            switch (c) {
+                case START_SEL -> {
+                    if (!open) {
+                        html.append("<mark>");
+                        open = true;
+                    }
+                }
+                case STOP_SEL -> {
+                    if (open) {
+                        html.append("</mark>");
+                        open = false;
+                    }
+                }
+                case '&' -> html.append("&amp;");
+                case '<' -> html.append("&lt;");
+                case '>' -> html.append("&gt;");
+                case '"' -> html.append("&quot;");
+                case '\'' -> html.append("&#39;");
+                default -> html.append(c);
+            }
+        }
+        if (open) {
+            html.append("</mark>");
+        }
+        return html.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package ma.recrutement.config;
+
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+import ma.recrutement.support.AbstractPostgresTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.postgresql.util.PGobject;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Micro-benchmark de la liaison des vecteurs : texte (PGvector) contre binaire (BinaryVector).
+ * Exclu de la suite par défaut ; à lancer avec
+ * {@code mvn test -Dtest.excludedGroups= -Dgroups=benchmark -Dtest=BinaryVectorBenchmarkTest}.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@Slf4j
+@Tag("benchmark")
+class BinaryVectorBenchmarkTest extends AbstractPostgresTest {
+
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 10_000;
+    private static final int ROWS = 2_000;
+    private static final int INSERT_ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void binaryEncodingAllocatesLessThanText() {
+        float[] vector = TransactionalPgVectorStoreTest.vector("Développeur Java");
+
+        Result text = measure(() -> new PGvector(vector).getValue().length());
+        Result binary = measure(() -> {
+            BinaryVector value = new BinaryVector(vector);
+            byte[] bytes = new byte[value.lengthInBytes()];
+            value.toBytes(bytes, 0);
+            return bytes.length;
+        });
+
+        log.info("encode text   : {} B/op {} ns/op", text.bytesPerOp(), text.nanosPerOp());
+        log.info("encode binary : {} B/op {} ns/op", binary.bytesPerOp(), binary.nanosPerOp());
+        assertThat(binary.bytesPerOp()).isLessThan(text.bytesPerOp() / 2);
+    }
+
+    @Test
+    void binaryInsertIsNotSlowerThanText() throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS vector");
+                statement.execute("CREATE TEMP TABLE bench_vectors (embedding vector(1536))");
+            }
+            BinaryVector.enableBinaryTransfer(connection);
+
+            float[][] vectors = new float[ROWS][];
+            for (int i = 0; i < ROWS; i++) {
+                vectors[i] = TransactionalPgVectorStoreTest.vector("cv-" + i);
+            }
+
+            insert(connection, vectors, PGvector::new);
+            insert(connection, vectors, BinaryVector::new);
+            // Best of several interleaved rounds, to smooth out the noise of a shared machine
+            long text = Long.MAX_VALUE;
+            long binary = Long.MAX_VALUE;
+            for (int round = 0; round < INSERT_ROUNDS; round++) {
+                text = Math.min(text, insert(connection, vectors, PGvector::new));
+                binary = Math.min(binary, insert(connection, vectors, BinaryVector::new));
+            }
+
+            log.info("insert {} rows text   : {} ms", ROWS, text / 1_000_000);
+            log.info("insert {} rows binary : {} ms", ROWS, binary / 1_000_000);
+            assertThat(binary).isLessThanOrEqualTo(text);
+        }
+    }
+
+    private static long insert(Connection connection, float[][] vectors, Function<float[], PGobject> binder)
+            throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE bench_vectors");
+        }
+        long start = System.nanoTime();
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO bench_vectors (embedding) VALUES (?)")) {
+            for (float[] vector : vectors) {
+                ps.setObject(1, binder.apply(vector));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Result measure(IntSupplier operation) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += operation.getAsInt();
+        }
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += operation.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+        assertThat(sink).isPositive();
+        return new Result(allocated / ITERATIONS, elapsed / ITERATIONS);
+    }
+
+    private record Result(long bytesPerOp, long nanosPerOp) {
+    }
+}
@@ -0,0 +1,75 @@
+package ma.recrutement.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests du codec binaire des vecteurs pgvector.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class BinaryVectorTest {
+
+    @Test
+    void encodesThePgvectorWireFormat() {
+        BinaryVector vector = new BinaryVector(new float[] {1.5f, -2.25f, 0f});
+        byte[] bytes = new byte[vector.lengthInBytes()];
+        vector.toBytes(bytes, 0);
+
+        // vector_recv: int16 dimensions, int16 unused, then big-endian float4 components
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertThat(bytes).hasSize(4 + 3 * Float.BYTES);
+        assertThat(buffer.getShort()).isEqualTo((short) 3);
+        assertThat(buffer.getShort()).isZero();
+        assertThat(buffer.getFloat()).isEqualTo(1.5f);
+        assertThat(buffer.getFloat()).isEqualTo(-2.25f);
+        assertThat(buffer.getFloat()).isEqualTo(0f);
+    }
+
+    @Test
+    void decodesWhatItEncodes() throws Exception {
+        float[] components = vector("Développeur Java", 1536);
+        byte[] bytes = new byte[8 + 4 + components.length * Float.BYTES];
+        new BinaryVector(components).toBytes(bytes, 8);
+
+        BinaryVector decoded = new BinaryVector();
+        decoded.setByteValue(bytes, 8);
+
+        assertThat(decoded.toArray()).containsExactly(components);
+        assertThat(decoded.getType()).isEqualTo("vector");
+    }
+
+    @Test
+    void fallsBackToTheTextFormat() throws Exception {
+        BinaryVector vector = new BinaryVector(new float[] {1.5f, -2.25f});
+        assertThat(vector.getValue()).isEqualTo("[1.5,-2.25]");
+
+        BinaryVector parsed = new BinaryVector();
+        parsed.setValue("[1.5, -2.25]");
+        assertThat(parsed).isEqualTo(vector);
+
+        parsed.setValue("[]");
+        assertThat(parsed.toArray()).isEmpty();
+    }
+
+    @Test
+    void nullVectorIsSentAsSqlNull() {
+        BinaryVector vector = new BinaryVector(null);
+        assertThat(vector.lengthInBytes()).isZero();
+        assertThat(vector.getValue()).isNull();
+    }
+
+    private static float[] vector(String text, int dimensions) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return vector;
+    }
+}
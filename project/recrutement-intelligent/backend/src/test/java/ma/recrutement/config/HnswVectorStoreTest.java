@@ -0,0 +1,231 @@
+package ma.recrutement.config;
+
+import ma.recrutement.service.ai.DocumentChunker;
+import ma.recrutement.service.ai.EmbeddingCacheService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests du vector store en mémoire : persistance, restauration et compactage.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class HnswVectorStoreTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    private EmbeddingModel embeddingModel;
+    private EmbeddingCacheService embeddingCacheService;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(HnswVectorStoreTest::vector).toList();
+        });
+        // Cache disabled: no database access
+        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        embeddingCacheService = new EmbeddingCacheService(dataSource, new DataSourceTransactionManager(dataSource),
+            false, 10, 100, "test-model", DIMENSIONS);
+    }
+
+    @Test
+    void restoresDocumentsAndGraphAfterRestart() throws Exception {
+        try (HnswVectorStore store = newStore(0)) {
+            store.add(cvs(0, 50));
+            store.delete(List.of("cv-3"));
+        }
+
+        try (HnswVectorStore restored = newStore(0)) {
+            List<Document> results = restored.similaritySearch(request("cv 7", 50));
+            assertThat(results).hasSize(49);
+            assertThat(results.get(0).getId()).isEqualTo("cv-7");
+            assertThat(results).extracting(Document::getId).doesNotContain("cv-3");
+        }
+    }
+
+    @Test
+    void restoreReinsertsDocumentsJournaledAfterTheSnapshot() throws Exception {
+        HnswVectorStore store = newStore(0);
+        store.add(cvs(0, 20));
+        // Crash after the last snapshot: only the journal holds the last documents
+        store.add(cvs(20, 3));
+
+        try (HnswVectorStore restored = newStore(0)) {
+            clearInvocations(embeddingModel);
+            assertThat(restored.similaritySearchByDocumentId("cv-21", request("ignored", 1)))
+                .extracting(Document::getId)
+                .containsExactly("cv-21");
+            verifyNoInteractions(embeddingModel);
+        }
+        store.close();
+    }
+
+    @Test
+    void compactsOnceTheDeletedRatioIsReached() throws Exception {
+        try (HnswVectorStore store = newStore(0.3)) {
+            store.add(cvs(0, 40));
+            // Re-indexing the same documents leaves their previous node deleted
+            store.add(cvs(0, 10));
+            assertThat(journalLines()).isEqualTo(50);
+
+            store.delete(IntStream.range(10, 15).mapToObj(i -> "cv-" + i).toList());
+
+            // 15 deleted nodes out of 50: the store is rewritten with its 35 live documents
+            assertThat(journalLines()).isEqualTo(35);
+            assertThat(Files.exists(directory.resolve("compaction"))).isFalse();
+            assertThat(store.similaritySearch(request("cv 20", 40))).hasSize(35);
+        }
+
+        try (HnswVectorStore restored = newStore(0.3)) {
+            List<Document> results = restored.similaritySearch(request("cv 20", 40));
+            assertThat(results).hasSize(35);
+            assertThat(results.get(0).getId()).isEqualTo("cv-20");
+            assertThat(results).extracting(Document::getId).doesNotContain("cv-12");
+        }
+    }
+
+    @Test
+    void compactionDropsSegmentsNoLongerUsed() throws Exception {
+        try (HnswVectorStore store = newStore(0.5)) {
+            store.add(cvs(0, 40));
+            assertThat(segmentFiles()).hasSize(5);
+
+            store.delete(IntStream.range(0, 30).mapToObj(i -> "cv-" + i).toList());
+
+            assertThat(segmentFiles()).hasSize(2);
+            assertThat(store.similaritySearch(request("cv 35", 10)).get(0).getId()).isEqualTo("cv-35");
+        }
+    }
+
+    @Test
+    void unvalidatedCompactionIsDiscardedOnRestart() throws Exception {
+        try (HnswVectorStore store = newStore(0)) {
+            store.add(cvs(0, 20));
+        }
+        // A compaction directory without its marker was interrupted before validation: it is dropped
+        Path work = Files.createDirectories(directory.resolve("compaction"));
+        Files.writeString(work.resolve("documents.log"), "garbage\n");
+
+        try (HnswVectorStore restored = newStore(0)) {
+            assertThat(Files.exists(work)).isFalse();
+            assertThat(restored.similaritySearch(request("cv 4", 20))).hasSize(20);
+        }
+    }
+
+    @Test
+    void filterIsAppliedToLiveDocuments() throws Exception {
+        try (HnswVectorStore store = newStore(0)) {
+            store.add(cvs(0, 10));
+            FilterExpressionBuilder b = new FilterExpressionBuilder();
+            SearchRequest request = request("cv 1", 10).withFilterExpression(b.eq("candidatId", "4").build());
+            assertThat(store.similaritySearch(request)).extracting(Document::getId).containsExactly("cv-4");
+        }
+    }
+
+    @Test
+    void staleChunksAreDeletedFromTheirNumberOn() throws Exception {
+        try (HnswVectorStore store = newStore(0)) {
+            store.add(List.of(chunk(1, 0), chunk(1, 1), chunk(1, 20), chunk(2, 0), chunk(2, 1)));
+
+            store.deleteChunksFrom("cv", Map.of(1L, 1));
+
+            assertThat(store.similaritySearch(request("cv", 10)))
+                .extracting(Document::getId)
+                .containsExactlyInAnyOrder("cv-1-0", "cv-2-0", "cv-2-1");
+        }
+    }
+
+    @Test
+    void loweringMaxChunksDeletesTheChunksBeyondTheNewCap() throws Exception {
+        String cv = IntStream.range(0, 6)
+            .mapToObj(i -> "SECTION " + (char) ('A' + i) + "\n" + "Réalisations et technologies du poste. ".repeat(4))
+            .collect(Collectors.joining("\n"));
+        try (HnswVectorStore store = newStore(0)) {
+            List<String> before = new DocumentChunker(true, 200, 16).chunk(cv);
+            store.add(IntStream.range(0, before.size()).mapToObj(i -> chunk(1, i)).toList());
+
+            // Re-indexing with a lower cap writes fewer chunks, then deletes from their count on
+            List<String> after = new DocumentChunker(true, 200, 2).chunk(cv);
+            store.add(IntStream.range(0, after.size()).mapToObj(i -> chunk(1, i)).toList());
+            store.deleteChunksFrom("cv", Map.of(1L, after.size()));
+
+            assertThat(before).hasSizeGreaterThan(2);
+            assertThat(store.similaritySearch(request("cv", 10)))
+                .extracting(Document::getId)
+                .containsExactlyInAnyOrder("cv-1-0", "cv-1-1");
+        }
+    }
+
+    private HnswVectorStore newStore(double compactionRatio) {
+        return new HnswVectorStore(embeddingModel, embeddingCacheService, new HnswVectorStore.Settings(
+            directory, DIMENSIONS, 8, 8, 32, 32, 5, 100, 200000, false, 50, compactionRatio));
+    }
+
+    private long journalLines() throws Exception {
+        try (Stream<String> lines = Files.lines(directory.resolve("documents.log"))) {
+            return lines.count();
+        }
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".vec")).toList();
+        }
+    }
+
+    private static SearchRequest request(String query, int topK) {
+        return SearchRequest.query(query).withTopK(topK);
+    }
+
+    private static List<Document> cvs(int from, int count) {
+        return IntStream.range(from, from + count)
+            .mapToObj(i -> new Document("cv-" + i, "cv " + i, Map.of("type", "cv", "candidatId", String.valueOf(i))))
+            .toList();
+    }
+
+    private static Document chunk(int candidatId, int chunk) {
+        return new Document("cv-" + candidatId + "-" + chunk, "cv " + candidatId + " segment " + chunk,
+            Map.of("type", "cv", "candidatId", String.valueOf(candidatId), "chunk", String.valueOf(chunk)));
+    }
+
+    /**
+     * Embedding déterministe d'un texte (les textes identiques ont le même vecteur).
+     */
+    private static float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,252 @@
+package ma.recrutement.config;
+
+import ma.recrutement.service.ai.EmbeddingCacheService;
+import ma.recrutement.service.ai.VectorIndexService;
+import ma.recrutement.support.AbstractPostgresTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests d'intégration du vector store PostgreSQL (pgvector) : recherche, format binaire,
+ * migration vers la table partitionnée et routage des recherches vers une partition.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class TransactionalPgVectorStoreTest extends AbstractPostgresTest {
+
+    private static final int DIMENSIONS = 1536;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EmbeddingModel embeddingModel;
+    private SpringAIConfig.TransactionalPgVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(TransactionalPgVectorStoreTest::vector).toList();
+        });
+        store = newStore();
+        jdbcTemplate.execute("TRUNCATE cv_embeddings");
+    }
+
+    @Test
+    void searchByDocumentIdDoesNotEmbedWhenTheFilterMatchesNothing() {
+        store.add(List.of(offre(1L, "Développeur Java"), cv(10L, "Java Spring"), cv(11L, "Comptable")));
+        clearInvocations(embeddingModel);
+
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        SearchRequest request = SearchRequest.query("Développeur Java").withTopK(5)
+            .withFilterExpression(b.and(b.eq("type", "cv"), b.eq("candidatId", "999")).build());
+
+        assertThat(store.similaritySearchByDocumentId("offre-1", request)).isEmpty();
+        verifyNoInteractions(embeddingModel);
+    }
+
+    @Test
+    void searchByDocumentIdReusesTheStoredEmbedding() {
+        store.add(List.of(offre(1L, "Développeur Java"), cv(10L, "Java Spring"), cv(11L, "Comptable")));
+        clearInvocations(embeddingModel);
+
+        SearchRequest request = SearchRequest.query("Développeur Java").withTopK(5)
+            .withFilterExpression(new FilterExpressionBuilder().eq("type", "cv").build());
+
+        assertThat(store.similaritySearchByDocumentId("offre-1", request))
+            .extracting(Document::getId)
+            .containsExactlyInAnyOrder("cv-10", "cv-11");
+        verifyNoInteractions(embeddingModel);
+    }
+
+    @Test
+    void searchByMissingDocumentIdFallsBackToTheQueryText() {
+        store.add(List.of(cv(10L, "Java Spring")));
+        clearInvocations(embeddingModel);
+
+        SearchRequest request = SearchRequest.query("Développeur Java").withTopK(5)
+            .withFilterExpression(new FilterExpressionBuilder().eq("type", "cv").build());
+
+        assertThat(store.similaritySearchByDocumentId("offre-404", request))
+            .extracting(Document::getId)
+            .containsExactly("cv-10");
+        verify(embeddingModel, times(1)).embed(anyList());
+    }
+
+    @Test
+    void vectorsRoundTripInBinaryFormat() {
+        store.add(List.of(cv(10L, "Java Spring")));
+
+        Object stored = jdbcTemplate.execute((ConnectionCallback<Object>) connection -> {
+            BinaryVector.enableBinaryTransfer(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT embedding FROM cv_embeddings WHERE document_id = ?")) {
+                ps.setString(1, "cv-10");
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return rs.getObject(1);
+                }
+            }
+        });
+
+        // Received through vector_send into the primitive array, bit for bit
+        assertThat(stored).isInstanceOf(BinaryVector.class);
+        assertThat(((BinaryVector) stored).toArray()).containsExactly(vector("Java Spring"));
+    }
+
+    @Test
+    void unpartitionedTableIsMigratedIntoTypedPartitions() {
+        // Layout of the table before partitioning: JSON metadata, unique content, no natural key
+        jdbcTemplate.execute("DROP TABLE cv_embeddings CASCADE");
+        jdbcTemplate.execute("CREATE TABLE cv_embeddings (id SERIAL PRIMARY KEY, content TEXT UNIQUE, "
+            + "metadata JSON, embedding vector(" + DIMENSIONS + "))");
+        jdbcTemplate.update("INSERT INTO cv_embeddings (content, metadata, embedding) VALUES (?, ?::json, ?::vector)",
+            "Java Spring", "{\"type\": \"cv\", \"candidatId\": \"10\"}", new BinaryVector(vector("Java Spring")).getValue());
+        jdbcTemplate.update("INSERT INTO cv_embeddings (content, metadata, embedding) VALUES (?, ?::json, ?::vector)",
+            "Développeur Java", "{\"type\": \"offre\", \"offreId\": \"1\"}", new BinaryVector(vector("Développeur Java")).getValue());
+
+        store = newStore();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT relkind::text FROM pg_class WHERE relname = 'cv_embeddings'", String.class))
+            .isEqualTo("p");
+        assertThat(jdbcTemplate.queryForObject("SELECT entity_id FROM cv_embeddings_cv", Long.class)).isEqualTo(10L);
+        assertThat(jdbcTemplate.queryForObject("SELECT entity_id FROM cv_embeddings_offre", Long.class)).isEqualTo(1L);
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM pg_class WHERE relname = 'cv_embeddings_unpartitioned'", Integer.class)).isZero();
+
+        // Migrated rows are searchable (under their serial id), and new rows do not collide with it
+        SearchRequest request = SearchRequest.query("Java Spring").withTopK(5)
+            .withFilterExpression(new FilterExpressionBuilder().eq("type", "cv").build());
+        assertThat(store.similaritySearch(request)).extracting(Document::getContent).containsExactly("Java Spring");
+        store.add(List.of(cv(11L, "Comptable")));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cv_embeddings", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void failedPartitionMigrationStopsTheStartupAndKeepsTheOldTable() {
+        // Rows that cannot be copied: vectors of another dimension
+        jdbcTemplate.execute("DROP TABLE cv_embeddings CASCADE");
+        jdbcTemplate.execute("CREATE TABLE cv_embeddings (id SERIAL PRIMARY KEY, content TEXT UNIQUE, "
+            + "metadata JSON, embedding vector(3))");
+        jdbcTemplate.update("INSERT INTO cv_embeddings (content, metadata, embedding) VALUES (?, ?::json, ?::vector)",
+            "Java Spring", "{\"type\": \"cv\", \"candidatId\": \"10\"}", "[1,2,3]");
+        try {
+            assertThatThrownBy(this::newStore).isInstanceOf(IllegalStateException.class);
+
+            // Neither renamed nor half-copied
+            assertThat(jdbcTemplate.queryForObject("SELECT relkind::text FROM pg_class WHERE relname = 'cv_embeddings'", String.class))
+                .isEqualTo("r");
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cv_embeddings", Integer.class)).isEqualTo(1);
+            assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_class WHERE relname IN ('cv_embeddings_unpartitioned', 'cv_embeddings_cv')",
+                Integer.class)).isZero();
+        } finally {
+            jdbcTemplate.execute("DROP TABLE cv_embeddings CASCADE");
+            store = newStore();
+        }
+    }
+
+    @Test
+    void searchPinnedToATypeOnlyReadsItsPartition() throws Exception {
+        store.add(List.of(offre(1L, "Développeur Java"), cv(10L, "Java Spring")));
+        SearchRequest request = SearchRequest.query("Développeur Java").withTopK(5)
+            .withFilterExpression(new FilterExpressionBuilder().eq("type", "cv").build());
+
+        // An exclusive lock on the offer partition blocks any query that reads it
+        try (Connection locker = dataSource.getConnection()) {
+            locker.setAutoCommit(false);
+            try (Statement statement = locker.createStatement()) {
+                statement.execute("LOCK TABLE cv_embeddings_offre IN ACCESS EXCLUSIVE MODE");
+            }
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<List<Document>> search = executor.submit(() -> store.similaritySearch(request));
+                assertThat(search.get(5, TimeUnit.SECONDS)).extracting(Document::getId).containsExactly("cv-10");
+            } finally {
+                locker.rollback();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void staleChunksAreDeletedFromTheirNumberOn() {
+        // Indexed with a higher chunk limit: a shorter re-index must drop every chunk past its own count
+        store.add(List.of(chunk(10L, 0), chunk(10L, 1), chunk(10L, 2), chunk(10L, 20), chunk(11L, 0), chunk(11L, 1)));
+
+        store.deleteChunksFrom("cv", Map.of(10L, 1));
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT entity_id || ':' || chunk_no FROM cv_embeddings ORDER BY entity_id, chunk_no", String.class))
+            .containsExactly("10:0", "11:0", "11:1");
+    }
+
+    private SpringAIConfig.TransactionalPgVectorStore newStore() {
+        VectorIndexService indexService = new VectorIndexService(dataSource, "HNSW", 16, 64, 40, 0, 0,
+            "NONE", 200, DIMENSIONS, 0);
+        EmbeddingCacheService cacheService = new EmbeddingCacheService(dataSource,
+            new DataSourceTransactionManager(dataSource), false, 10, 100, "test-model", DIMENSIONS);
+        return new SpringAIConfig.TransactionalPgVectorStore(dataSource, embeddingModel, indexService, cacheService,
+            DIMENSIONS, 100, 200000);
+    }
+
+    static Document cv(Long candidatId, String content) {
+        return new Document("cv-" + candidatId, content,
+            Map.of("type", "cv", "candidatId", candidatId.toString(), "chunk", "0"));
+    }
+
+    static Document offre(Long offreId, String content) {
+        return new Document("offre-" + offreId, content,
+            Map.of("type", "offre", "offreId", offreId.toString(), "statut", "PUBLIEE", "chunk", "0"));
+    }
+
+    static Document chunk(Long candidatId, int chunk) {
+        return new Document("cv-" + candidatId + "-" + chunk, "CV " + candidatId + " segment " + chunk,
+            Map.of("type", "cv", "candidatId", candidatId.toString(), "chunk", String.valueOf(chunk)));
+    }
+
+    /**
+     * Embedding déterministe d'un texte (les textes identiques ont le même vecteur).
+     */
+    static float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,162 @@
+package ma.recrutement.repository;
+
+import ma.recrutement.dto.MatchingResultDTO;
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.Entreprise;
+import ma.recrutement.entity.MatchResult;
+import ma.recrutement.entity.OffreEmploi;
+import ma.recrutement.service.ai.MatchMatrixService;
+import ma.recrutement.service.ai.MatchResultCacheService;
+import ma.recrutement.service.ai.MatchingEngineService;
+import ma.recrutement.service.ai.MatchingListener;
+import ma.recrutement.support.AbstractPostgresTest;
+import ma.recrutement.support.TestData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Vérifie que les deux sens de la matrice pré-calculée (top-K des offres, top-K des candidats)
+ * partagent match_results sans que le recalcul de l'un retire des couples à l'autre, et qu'un couple
+ * scoré depuis un sens entre dans le top-K de l'autre lorsqu'il y dépasse le K-ième score.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MatchResultTopKTest extends AbstractPostgresTest {
+
+    @Autowired
+    private MatchResultRepository matchResultRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private OffreEmploi offre;
+    private OffreEmploi autreOffre;
+    private Candidat candidat;
+
+    @BeforeEach
+    void setUp() {
+        Entreprise entreprise = entityManager.persist(TestData.entreprise(entityManager.persist(TestData.recruteur())));
+        offre = entityManager.persist(TestData.offre(entreprise, "Développeur Java", "Description", "Java"));
+        autreOffre = entityManager.persist(TestData.offre(entreprise, "Développeur Go", "Description", "Go"));
+        candidat = entityManager.persist(TestData.candidat(1, 1));
+        entityManager.persist(result(offre, candidat, 90));
+        entityManager.persist(result(autreOffre, candidat, 95));
+        entityManager.flush();
+    }
+
+    @Test
+    void candidatRefreshKeepsThePairInTheOffreTopK() {
+        // The candidate is the offer's best match...
+        matchResultRepository.markTopOffre(offre.getId(), List.of(candidat.getId()));
+        // ...but the offer is not in the candidate's own top-K
+        matchResultRepository.markTopCandidat(candidat.getId(), List.of(autreOffre.getId()));
+        int unmarked = matchResultRepository.unmarkTopCandidatExcept(candidat.getId(), List.of(autreOffre.getId()));
+        entityManager.clear();
+
+        assertThat(unmarked).isZero();
+        assertThat(matchResultRepository.findTopCandidats(offre.getId(), PageRequest.of(0, 20)))
+            .extracting(row -> ((MatchResult) row[0]).getCandidatId())
+            .containsExactly(candidat.getId());
+        assertThat(matchResultRepository.findTopOffres(candidat.getId(), PageRequest.of(0, 20)))
+            .extracting(row -> ((MatchResult) row[0]).getOffreId())
+            .containsExactly(autreOffre.getId());
+    }
+
+    @Test
+    void pairLeavingBothTopKIsKeptAsCachedAnalysis() {
+        matchResultRepository.markTopOffre(offre.getId(), List.of(candidat.getId()));
+        matchResultRepository.unmarkTopOffre(offre.getId());
+        matchResultRepository.unmarkTopCandidat(candidat.getId());
+        entityManager.clear();
+
+        assertThat(matchResultRepository.findTopCandidats(offre.getId(), PageRequest.of(0, 20))).isEmpty();
+        assertThat(matchResultRepository.findByOffreIdAndCandidatId(offre.getId(), candidat.getId()))
+            .get()
+            .satisfies(result -> {
+                assertThat(result.getTopOffre()).isFalse();
+                assertThat(result.getEmpreinte()).isEqualTo("empreinte");
+            });
+    }
+
+    @Test
+    void cvIndexedAfterTheOffreTopKIsFullEntersTheOffreRanking() {
+        Candidat moyen = entityManager.persist(TestData.candidat(1, 1));
+        Candidat nouveau = entityManager.persist(TestData.candidat(1, 1));
+        Candidat faible = entityManager.persist(TestData.candidat(1, 1));
+        entityManager.persist(result(offre, moyen, 60));
+        entityManager.flush();
+        // The offer's top-2 is full
+        matchResultRepository.markTopOffre(offre.getId(), List.of(candidat.getId(), moyen.getId()));
+        // The new CVs are scored against the offer when they are indexed
+        entityManager.persist(result(offre, nouveau, 75));
+        entityManager.persist(result(offre, faible, 50));
+        entityManager.flush();
+        MatchMatrixService matrix = matrix(2, nouveau, faible);
+        try {
+            matrix.refreshCandidat(nouveau.getId());
+            matrix.refreshCandidat(faible.getId());
+        } finally {
+            matrix.shutdown();
+        }
+        entityManager.clear();
+
+        assertThat(matchResultRepository.findTopCandidats(offre.getId(), PageRequest.of(0, 20)))
+            .extracting(row -> ((MatchResult) row[0]).getCandidatId())
+            .containsExactly(candidat.getId(), nouveau.getId());
+    }
+
+    @Test
+    void offreIndexedEntersTheRankingOfCandidatsWithAnIncompleteTopK() {
+        matchResultRepository.markTopCandidat(candidat.getId(), List.of(autreOffre.getId()));
+        MatchingEngineService engine = mock(MatchingEngineService.class);
+        when(engine.findMatchingCandidates(offre.getId(), 2, MatchingListener.NONE))
+            .thenReturn(List.of(MatchingResultDTO.builder().offreId(offre.getId()).candidatId(candidat.getId()).build()));
+        MatchMatrixService matrix = new MatchMatrixService(engine,
+            new MatchResultCacheService(matchResultRepository, true, 100), true, 2, 1);
+        try {
+            matrix.refreshOffre(offre.getId());
+        } finally {
+            matrix.shutdown();
+        }
+        entityManager.clear();
+
+        assertThat(matchResultRepository.findTopOffres(candidat.getId(), PageRequest.of(0, 20)))
+            .extracting(row -> ((MatchResult) row[0]).getOffreId())
+            .containsExactly(autreOffre.getId(), offre.getId());
+    }
+
+    /**
+     * Matrice de top-K dont le moteur de matching renvoie l'offre pour chacun des candidats donnés.
+     */
+    private MatchMatrixService matrix(int topK, Candidat... candidats) {
+        MatchingEngineService engine = mock(MatchingEngineService.class);
+        for (Candidat scored : candidats) {
+            when(engine.findMatchingOffres(scored.getId(), topK, MatchingListener.NONE))
+                .thenReturn(List.of(MatchingResultDTO.builder().offreId(offre.getId()).candidatId(scored.getId()).build()));
+        }
+        return new MatchMatrixService(engine, new MatchResultCacheService(matchResultRepository, true, 100), true, topK, 1);
+    }
+
+    private static MatchResult result(OffreEmploi offre, Candidat candidat, int score) {
+        return MatchResult.builder()
+            .offreId(offre.getId())
+            .candidatId(candidat.getId())
+            .empreinte("empreinte")
+            .scoreMatching(score)
+            .build();
+    }
+}
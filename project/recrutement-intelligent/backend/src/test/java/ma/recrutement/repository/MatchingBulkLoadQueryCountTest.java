@@ -0,0 +1,98 @@
+package ma.recrutement.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.Entreprise;
+import ma.recrutement.entity.OffreEmploi;
+import ma.recrutement.entity.Recruteur;
+import ma.recrutement.support.AbstractPostgresTest;
+import ma.recrutement.support.TestData;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Vérifie que le chargement groupé des candidats et des offres du matching
+ * s'exécute en un nombre constant de requêtes, quel que soit le nombre d'entités.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MatchingBulkLoadQueryCountTest extends AbstractPostgresTest {
+
+    @Autowired
+    private CandidatRepository candidatRepository;
+
+    @Autowired
+    private OffreEmploiRepository offreEmploiRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void candidatsWithCompetencesAndExperiencesLoadInTwoQueries() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(entityManager.persist(TestData.candidat(3, 2)).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        // Same sequence as MatchingEngineService.loadCandidats, then the collections read by the prompt
+        List<Candidat> candidats = candidatRepository.findWithCompetencesByIdIn(ids);
+        candidatRepository.findWithExperiencesByIdIn(ids);
+        int loaded = 0;
+        for (Candidat candidat : candidats) {
+            loaded += candidat.getCompetences().size() + candidat.getExperiences().size();
+            candidat.getCompetences().forEach(competence -> competence.getNom());
+            candidat.getExperiences().forEach(experience -> experience.getTitre());
+        }
+
+        assertThat(candidats).hasSize(30);
+        assertThat(loaded).isEqualTo(30 * 5);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void offresWithEntrepriseLoadInOneQuery() {
+        Recruteur recruteur = entityManager.persist(TestData.recruteur());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // One company per offer: no company is already in the persistence context
+            Entreprise entreprise = entityManager.persist(TestData.entreprise(recruteur));
+            ids.add(entityManager.persist(TestData.offre(entreprise, "Offre " + i, "Description", "Java")).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        List<OffreEmploi> offres = offreEmploiRepository.findWithEntrepriseByIdIn(ids);
+        offres.forEach(offre -> offre.getEntreprise().getNom());
+
+        assertThat(offres).hasSize(20);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
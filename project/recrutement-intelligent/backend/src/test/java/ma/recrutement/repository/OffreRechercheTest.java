@@ -0,0 +1,134 @@
+package ma.recrutement.repository;
+
+import ma.recrutement.config.OffreSearchInitializer;
+import ma.recrutement.entity.Entreprise;
+import ma.recrutement.entity.OffreEmploi;
+import ma.recrutement.repository.OffreEmploiRepository.ResultatRecherche;
+import ma.recrutement.support.AbstractPostgresTest;
+import ma.recrutement.support.TestData;
+import ma.recrutement.util.HighlightUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests d'intégration de la recherche plein texte des offres : classement, surlignage
+ * et conversion des anciennes colonnes oid en TEXT.
+ * Le schéma de recherche est modifié par DDL : les données sont validées (pas de rollback).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OffreRechercheTest extends AbstractPostgresTest {
+
+    @Autowired
+    private OffreEmploiRepository offreEmploiRepository;
+
+    @Autowired
+    private EntrepriseRepository entrepriseRepository;
+
+    @Autowired
+    private RecruteurRepository recruteurRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private Entreprise entreprise;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Schema changes first: no open transaction holds a lock on offres_emploi
+        new OffreSearchInitializer(dataSource).initializeSearch();
+        entreprise = entrepriseRepository.save(TestData.entreprise(recruteurRepository.save(TestData.recruteur())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        offreEmploiRepository.deleteAll();
+        entrepriseRepository.deleteAll();
+        recruteurRepository.deleteAll();
+    }
+
+    @Test
+    void titleMatchRanksAboveDescriptionMatch() {
+        OffreEmploi description = save("Chef de projet", "Pilotage d'équipes Kubernetes en production", null);
+        OffreEmploi titre = save("Ingénieur Kubernetes", "Exploitation de clusters", null);
+        save("Comptable", "Tenue de la comptabilité générale", null);
+
+        List<ResultatRecherche> resultats = recherche("kubernetes");
+
+        assertThat(resultats).extracting(ResultatRecherche::getId).containsExactly(titre.getId(), description.getId());
+        assertThat(resultats.get(0).getRang()).isGreaterThan(resultats.get(1).getRang());
+    }
+
+    @Test
+    void websearchSyntaxExcludesTerms() {
+        OffreEmploi java = save("Développeur Java", "Backend Spring", null);
+        save("Développeur Java", "Frontend Angular", null);
+
+        assertThat(recherche("java -angular")).extracting(ResultatRecherche::getId).containsExactly(java.getId());
+    }
+
+    @Test
+    void highlightsUseDelimitersAndRecruiterMarkupIsEscaped() {
+        save("Développeur <b>Java</b>", "Stack <script>alert('x')</script> Java et Spring", "Java");
+
+        ResultatRecherche resultat = recherche("java").get(0);
+
+        // Raw rows carry control delimiters only: no HTML produced by PostgreSQL
+        assertThat(resultat.getTitreSurligne()).contains(HighlightUtil.START_SEL + "Java" + HighlightUtil.STOP_SEL)
+            .doesNotContain("<mark>");
+        String titre = HighlightUtil.toHtml(resultat.getTitreSurligne());
+        String extrait = HighlightUtil.toHtml(resultat.getExtrait());
+        assertThat(titre).contains("<mark>Java</mark>").contains("&lt;b&gt;").doesNotContain("<b>");
+        assertThat(extrait).contains("<mark>Java</mark>").doesNotContain("<script>");
+    }
+
+    @Test
+    void largeObjectColumnIsConvertedToText() {
+        OffreEmploi offre = save("Data engineer", "placeholder", null);
+        // Legacy @Lob mapping: the description is a large object referenced by its oid
+        jdbcTemplate.execute("ALTER TABLE offres_emploi DROP COLUMN search_vector");
+        jdbcTemplate.execute("ALTER TABLE offres_emploi ALTER COLUMN description TYPE oid "
+            + "USING lo_from_bytea(0, convert_to('Pipelines Spark et entrepôt de données', 'UTF8'))");
+        assertThat(columnType("description")).isEqualTo("oid");
+
+        new OffreSearchInitializer(dataSource).initializeSearch();
+
+        assertThat(columnType("description")).isEqualTo("text");
+        assertThat(jdbcTemplate.queryForObject("SELECT description FROM offres_emploi WHERE id = ?",
+            String.class, offre.getId())).isEqualTo("Pipelines Spark et entrepôt de données");
+        assertThat(recherche("entrepôt")).extracting(ResultatRecherche::getId).containsExactly(offre.getId());
+    }
+
+    private OffreEmploi save(String titre, String description, String competences) {
+        return offreEmploiRepository.save(TestData.offre(entreprise, titre, description, competences));
+    }
+
+    private List<ResultatRecherche> recherche(String terme) {
+        return offreEmploiRepository.recherchePleinText(terme, PageRequest.of(0, 10)).getContent();
+    }
+
+    private String columnType(String column) {
+        return jdbcTemplate.queryForObject(
+            "SELECT data_type FROM information_schema.columns WHERE table_name = 'offres_emploi' AND column_name = ?",
+            String.class, column);
+    }
+}
@@ -0,0 +1,246 @@
+package ma.recrutement.service.ai;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests de l'exécuteur des analyses IA : ordre des résultats, fallback, plafond de concurrence et échéance.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class AiScoringExecutorTest {
+
+    // Fallback result naming the task and the cause
+    private static final BiFunction<Integer, Throwable, String> FALLBACK =
+        (index, error) -> "fallback-" + index + ":" + error.getClass().getSimpleName();
+
+    private final List<AiScoringExecutor> executors = new ArrayList<>();
+    // Released at the end of each test so that no blocked task outlives it
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executors.forEach(AiScoringExecutor::shutdown);
+    }
+
+    @Test
+    void resultsKeepTheTaskOrderWhenTasksFinishOutOfOrder() {
+        AiScoringExecutor executor = executor(true, 4, 10_000);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int index = i;
+            tasks.add(() -> {
+                Thread.sleep((4 - index) * 50L);
+                return "result-" + index;
+            });
+        }
+
+        assertThat(executor.executeAll(tasks, FALLBACK)).containsExactly("result-0", "result-1", "result-2", "result-3");
+    }
+
+    @Test
+    void failedTaskIsReplacedByItsFallbackInPlace() {
+        AiScoringExecutor executor = executor(true, 4, 10_000);
+        List<Callable<String>> tasks = List.of(
+            () -> "result-0",
+            () -> {
+                throw new IllegalStateException("quota dépassé");
+            },
+            () -> "result-2");
+
+        assertThat(executor.executeAll(tasks, FALLBACK))
+            .containsExactly("result-0", "fallback-1:IllegalStateException", "result-2");
+    }
+
+    @Test
+    void sequentialModeRunsTasksInOrderWithTheSameFallback() {
+        AiScoringExecutor executor = executor(false, 4, 10_000);
+        List<Integer> order = new ArrayList<>();
+        List<Callable<String>> tasks = List.of(
+            () -> {
+                order.add(0);
+                throw new IllegalStateException("quota dépassé");
+            },
+            () -> {
+                order.add(1);
+                return "result-1";
+            });
+
+        assertThat(executor.executeAll(tasks, FALLBACK)).containsExactly("fallback-0:IllegalStateException", "result-1");
+        assertThat(order).containsExactly(0, 1);
+    }
+
+    @Test
+    void singleTaskAndSequentialModeAreBoundedByTheDeadline() {
+        Callable<String> blocked = () -> {
+            release.await();
+            return "result-0";
+        };
+        AtomicBoolean nextStarted = new AtomicBoolean();
+        Callable<String> next = () -> {
+            nextStarted.set(true);
+            return "result-1";
+        };
+
+        assertThat(executor(true, 4, 300).executeAll(List.of(blocked), FALLBACK))
+            .containsExactly("fallback-0:TimeoutException");
+        assertThat(executor(false, 4, 300).executeAll(List.of(blocked, next), FALLBACK))
+            .containsExactly("fallback-0:TimeoutException", "fallback-1:TimeoutException");
+        assertThat(nextStarted).isFalse();
+    }
+
+    @Test
+    void concurrentRequestsInSequentialModeShareTheBound() throws InterruptedException {
+        AiScoringExecutor executor = executor(false, 1, 10_000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return "result";
+            });
+        }
+
+        Thread other = Thread.ofVirtual().start(() -> executor.executeAll(tasks, FALLBACK));
+        List<String> results = executor.executeAll(tasks, FALLBACK);
+        other.join(5_000);
+
+        assertThat(results).containsOnly("result");
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    void retryPassSharesTheRequestDeadline() throws InterruptedException {
+        AiScoringExecutor executor = executor(true, 4, 300);
+        long deadline = executor.newDeadline();
+        AtomicBoolean retried = new AtomicBoolean();
+
+        assertThat(executor.executeAll(List.of(() -> {
+            release.await();
+            return "result-0";
+        }), FALLBACK, deadline)).containsExactly("fallback-0:TimeoutException");
+        // The second pass of the same request gets no fresh budget
+        assertThat(executor.executeAll(List.of(() -> {
+            retried.set(true);
+            return "retry-0";
+        }), FALLBACK, deadline)).containsExactly("fallback-0:TimeoutException");
+        assertThat(retried).isFalse();
+    }
+
+    @Test
+    void concurrentCallsNeverExceedTheBound() {
+        AiScoringExecutor executor = executor(true, 2, 10_000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int index = i;
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return "result-" + index;
+            });
+        }
+
+        List<String> results = executor.executeAll(tasks, FALLBACK);
+
+        assertThat(results).hasSize(8).allMatch(result -> result.startsWith("result-"));
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void blockedTaskIsCancelledAtTheDeadline() throws InterruptedException {
+        AiScoringExecutor executor = executor(true, 4, 300);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Callable<String>> tasks = List.of(
+            () -> "result-0",
+            () -> {
+                try {
+                    release.await();
+                    return "result-1";
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            });
+
+        long start = System.nanoTime();
+        List<String> results = executor.executeAll(tasks, FALLBACK);
+
+        assertThat(results).containsExactly("result-0", "fallback-1:TimeoutException");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+        // The call still in flight is interrupted, not left running
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void taskStillWaitingForAPermitAtTheDeadlineNeverStarts() throws InterruptedException {
+        AiScoringExecutor executor = executor(true, 1, 300);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        List<Callable<String>> tasks = List.of(
+            () -> {
+                firstStarted.countDown();
+                release.await();
+                return "result-0";
+            },
+            () -> {
+                secondStarted.set(true);
+                return "result-1";
+            });
+
+        List<String> results = executor.executeAll(tasks, FALLBACK);
+
+        assertThat(firstStarted.await(0, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(results).containsExactly("fallback-0:TimeoutException", "fallback-1:TimeoutException");
+        // The first call is cancelled and gives its permit back: the second one must still not run
+        Thread.sleep(200);
+        assertThat(secondStarted).isFalse();
+    }
+
+    @Test
+    void cancelledCallReleasesItsPermit() {
+        AiScoringExecutor executor = executor(true, 1, 300);
+        List<Callable<String>> blocked = List.of(
+            () -> {
+                release.await();
+                return "result-0";
+            },
+            () -> "result-1");
+        assertThat(executor.executeAll(blocked, FALLBACK)).containsExactly(
+            "fallback-0:TimeoutException", "fallback-1:TimeoutException");
+
+        // The next request gets the only permit back
+        assertThat(executor.executeAll(List.of(() -> "result-0", () -> "result-1"), FALLBACK))
+            .containsExactly("result-0", "result-1");
+    }
+
+    private AiScoringExecutor executor(boolean parallelEnabled, int maxConcurrency, long deadlineMs) {
+        AiScoringExecutor executor = new AiScoringExecutor(parallelEnabled, maxConcurrency, deadlineMs);
+        executors.add(executor);
+        return executor;
+    }
+}
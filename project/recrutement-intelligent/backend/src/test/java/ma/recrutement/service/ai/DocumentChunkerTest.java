@@ -0,0 +1,133 @@
+package ma.recrutement.service.ai;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests du découpage des CV et offres en segments : sections, sections trop longues et plafond de segments.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class DocumentChunkerTest {
+
+    @Test
+    void shortOrUnchunkedTextIsASingleChunk() {
+        String longText = cv(section("EXPÉRIENCES", 3), section("Formation", 3), section("Compétences :", 3));
+
+        assertThat(new DocumentChunker(true, 2000, 16).chunk("Développeur Java")).containsExactly("Développeur Java");
+        assertThat(new DocumentChunker(false, 200, 16).chunk(longText)).containsExactly(longText);
+    }
+
+    @Test
+    void headingsStartNewSectionsWhichAreGroupedUpToMaxChars() {
+        String experiences = section("EXPÉRIENCES PROFESSIONNELLES", 2);
+        String formation = section("Formation", 2);
+        String competences = section("Langages maîtrisés :", 2);
+        String langues = section("Langues", 2);
+        DocumentChunker chunker = new DocumentChunker(true, 300, 16);
+
+        List<String> chunks = chunker.chunk(cv(experiences, formation, competences, langues));
+
+        // Two sections fit in one chunk, never split across chunks
+        assertThat(chunks).containsExactly(experiences + "\n" + formation, competences + "\n" + langues);
+        assertThat(chunks).allMatch(chunk -> chunk.length() <= 300);
+    }
+
+    @Test
+    void regularLinesAreNotHeadings() {
+        String intro = "Développeur Java depuis 2015.\nExpérience en banque et assurance, équipes agiles.\n"
+            + "Formation continue sur Kubernetes et les architectures orientées événements.";
+        String body = section("PROJETS", 3);
+        DocumentChunker chunker = new DocumentChunker(true, 200, 16);
+
+        List<String> chunks = chunker.chunk(intro + "\n" + body);
+
+        assertThat(chunks.get(0)).isEqualTo(intro);
+        assertThat(chunks.subList(1, chunks.size())).allMatch(chunk -> chunk.startsWith("PROJETS\n"));
+    }
+
+    @Test
+    void oversizedSectionIsSplitAndEveryPieceKeepsItsHeading() {
+        String heading = "EXPÉRIENCES";
+        String section = section(heading, 12);
+        DocumentChunker chunker = new DocumentChunker(true, 250, 16);
+
+        List<String> chunks = chunker.chunk(section);
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allMatch(chunk -> chunk.startsWith(heading + "\n") && chunk.length() <= 250);
+        // No line is lost or duplicated
+        assertThat(chunks.stream().map(chunk -> chunk.substring(heading.length() + 1)).collect(Collectors.joining("\n")))
+            .isEqualTo(section.substring(heading.length() + 1));
+    }
+
+    @Test
+    void lineLongerThanAChunkIsCutBetweenWords() {
+        String line = IntStream.range(0, 80).mapToObj(i -> "mot" + i).collect(Collectors.joining(" "));
+        DocumentChunker chunker = new DocumentChunker(true, 200, 16);
+
+        List<String> chunks = chunker.chunk("PROFIL\n" + line);
+
+        assertThat(chunks).hasSizeGreaterThan(1).allMatch(chunk -> chunk.startsWith("PROFIL\n") && chunk.length() <= 200);
+        assertThat(chunks.stream().map(chunk -> chunk.substring("PROFIL\n".length())).collect(Collectors.joining(" ")))
+            .isEqualTo(line);
+    }
+
+    @Test
+    void chunksBeyondMaxChunksAreDroppedWithAWarning() {
+        String[] sections = IntStream.range(0, 10).mapToObj(i -> section("SECTION " + (char) ('A' + i), 2))
+            .toArray(String[]::new);
+        Logger logger = (Logger) LoggerFactory.getLogger(DocumentChunker.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        List<String> capped;
+        try {
+            capped = new DocumentChunker(true, 200, 3).chunk(cv(sections), "CV of candidat 7");
+        } finally {
+            logger.detachAppender(appender);
+        }
+        List<String> uncapped = new DocumentChunker(true, 200, 16).chunk(cv(sections));
+
+        // The first chunks are kept, in text order: indexing then deletes the stored chunks from number 3 on
+        assertThat(uncapped).hasSizeGreaterThan(3);
+        assertThat(capped).containsExactlyElementsOf(uncapped.subList(0, 3));
+        int dropped = uncapped.subList(3, uncapped.size()).stream().mapToInt(String::length).sum();
+        assertThat(appender.list).singleElement().satisfies(event -> {
+            assertThat(event.getLevel()).isEqualTo(Level.WARN);
+            assertThat(event.getFormattedMessage()).contains("CV of candidat 7", dropped + " characters dropped");
+        });
+    }
+
+    @Test
+    void maxCharsIsClampedToAMinimum() {
+        String text = cv(section("EXPÉRIENCES", 2), section("FORMATION", 2));
+
+        assertThat(new DocumentChunker(true, 10, 16).chunk(text))
+            .isEqualTo(new DocumentChunker(true, 200, 16).chunk(text));
+    }
+
+    /**
+     * Section d'un CV : un titre suivi de lignes d'environ 60 caractères.
+     */
+    private static String section(String heading, int lines) {
+        return heading + "\n" + IntStream.range(0, lines)
+            .mapToObj(i -> "Ligne " + i + " de " + heading.toLowerCase() + ", réalisations et technologies.")
+            .collect(Collectors.joining("\n"));
+    }
+
+    private static String cv(String... sections) {
+        return String.join("\n", sections);
+    }
+}
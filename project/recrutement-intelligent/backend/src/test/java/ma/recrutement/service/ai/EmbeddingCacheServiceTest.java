@@ -0,0 +1,186 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.config.SpringAIConfig;
+import ma.recrutement.support.AbstractPostgresTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests d'intégration du cache des embeddings : aucun appel au modèle pour un texte inchangé,
+ * accès sur la connexion de l'appelant et borne de la table.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class EmbeddingCacheServiceTest extends AbstractPostgresTest {
+
+    private static final int DIMENSIONS = 1536;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    // Texts sent to the model, one list per call
+    private final List<List<String>> modelCalls = new ArrayList<>();
+    private final List<EmbeddingCacheService> caches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        newCache(1000);
+        jdbcTemplate.execute("TRUNCATE embedding_cache");
+    }
+
+    @AfterEach
+    void tearDown() {
+        caches.forEach(EmbeddingCacheService::shutdown);
+    }
+
+    @Test
+    void unchangedTextIsNeverSentToTheModelAgain() {
+        EmbeddingCacheService cache = newCache(1000);
+
+        List<float[]> first = cache.embed(List.of("Développeur Java", "Comptable", "Développeur Java"), countingEmbedder());
+        List<float[]> again = cache.embed(List.of("Développeur  Java\n", "Comptable"), countingEmbedder());
+        // A new instance (restart) only has the table
+        List<float[]> restarted = newCache(1000).embed(List.of("Comptable", "Développeur Java"), countingEmbedder());
+
+        assertThat(modelCalls).containsExactly(List.of("Développeur Java", "Comptable"));
+        assertThat(again.get(0)).isEqualTo(first.get(0));
+        assertThat(restarted.get(0)).isEqualTo(first.get(1));
+        assertThat(restarted.get(1)).isEqualTo(first.get(0));
+    }
+
+    @Test
+    void anotherModelOrDimensionNeverReusesAStoredEmbedding() {
+        newCache(1000).embed(List.of("Développeur Java"), countingEmbedder());
+
+        newCache(1000, "autre-modele", DIMENSIONS).embed(List.of("Développeur Java"), countingEmbedder());
+        newCache(1000, "test-model", 768).embed(List.of("Développeur Java"), countingEmbedder());
+        newCache(1000).embed(List.of("Développeur Java"), countingEmbedder());
+
+        assertThat(modelCalls).hasSize(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM embedding_cache", Long.class)).isEqualTo(3);
+    }
+
+    @Test
+    void reindexingUnchangedDocumentsMakesNoModelCall() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(EmbeddingCacheServiceTest::vector).toList();
+        });
+        SpringAIConfig.TransactionalPgVectorStore store = newStore(embeddingModel, newCache(1000));
+        jdbcTemplate.execute("TRUNCATE cv_embeddings");
+        List<Document> documents = List.of(cv(10L, "Java Spring"), cv(11L, "Comptable"));
+
+        // Indexing runs in the caller's transaction, as in MatchingEngineService
+        transactionTemplate.executeWithoutResult(status -> store.add(documents));
+        // Re-indexed after a restart: only the table remembers the embeddings
+        SpringAIConfig.TransactionalPgVectorStore restarted = newStore(embeddingModel, newCache(1000));
+        transactionTemplate.executeWithoutResult(status -> restarted.add(documents));
+
+        verify(embeddingModel, times(1)).embed(anyList());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cv_embeddings", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void failedLookupLeavesTheCallerTransactionUsable() {
+        EmbeddingCacheService cache = newCache(1000);
+        jdbcTemplate.execute("ALTER TABLE embedding_cache RENAME TO embedding_cache_indisponible");
+        try {
+            Integer one = transactionTemplate.execute(status -> {
+                List<float[]> vectors = cache.embed(List.of("Développeur Java"), countingEmbedder());
+                assertThat(vectors).hasSize(1);
+                // PostgreSQL would reject this statement if the failed lookup had aborted the transaction
+                return jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+            });
+
+            assertThat(one).isEqualTo(1);
+            assertThat(modelCalls).containsExactly(List.of("Développeur Java"));
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE embedding_cache_indisponible RENAME TO embedding_cache");
+        }
+    }
+
+    @Test
+    void oldestEntriesAreEvictedBeyondMaxRows() {
+        EmbeddingCacheService cache = newCache(2);
+        for (int i = 0; i < 5; i++) {
+            cache.embed(List.of("Texte " + i), countingEmbedder());
+        }
+
+        await().atMost(Duration.ofSeconds(10))
+            .until(() -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM embedding_cache", Long.class) == 2);
+
+        modelCalls.clear();
+        newCache(1000).embed(List.of("Texte 3", "Texte 4"), countingEmbedder());
+        newCache(1000).embed(List.of("Texte 0"), countingEmbedder());
+        assertThat(modelCalls).containsExactly(List.of("Texte 0"));
+    }
+
+    private EmbeddingCacheService newCache(int maxRows) {
+        return newCache(maxRows, "test-model", DIMENSIONS);
+    }
+
+    private EmbeddingCacheService newCache(int maxRows, String model, int dimensions) {
+        EmbeddingCacheService cache = new EmbeddingCacheService(dataSource, new DataSourceTransactionManager(dataSource),
+            true, 100, maxRows, model, dimensions);
+        caches.add(cache);
+        return cache;
+    }
+
+    private SpringAIConfig.TransactionalPgVectorStore newStore(EmbeddingModel embeddingModel, EmbeddingCacheService cache) {
+        VectorIndexService indexService = new VectorIndexService(dataSource, "HNSW", 16, 64, 40, 0, 0,
+            "NONE", 200, DIMENSIONS, 0);
+        return new SpringAIConfig.TransactionalPgVectorStore(dataSource, embeddingModel, indexService, cache,
+            DIMENSIONS, 100, 200000);
+    }
+
+    /**
+     * Modèle d'embedding factice qui enregistre chaque appel.
+     */
+    private Function<List<String>, List<float[]>> countingEmbedder() {
+        return texts -> {
+            modelCalls.add(List.copyOf(texts));
+            return texts.stream().map(EmbeddingCacheServiceTest::vector).toList();
+        };
+    }
+
+    private static Document cv(Long candidatId, String text) {
+        return new Document("cv-" + candidatId, text,
+            Map.of("type", "cv", "candidatId", candidatId.toString(), "chunk", "0"));
+    }
+
+    private static float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() - 0.5f;
+        }
+        return vector;
+    }
+}
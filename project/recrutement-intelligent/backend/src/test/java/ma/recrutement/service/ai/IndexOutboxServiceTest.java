@@ -0,0 +1,341 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.entity.IndexOutboxEvent;
+import ma.recrutement.entity.IndexOutboxEvent.StatutOutbox;
+import ma.recrutement.entity.IndexOutboxEvent.TypeEntite;
+import ma.recrutement.repository.IndexOutboxRepository;
+import ma.recrutement.repository.OffreEmploiRepository;
+import ma.recrutement.support.AbstractPostgresTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests d'intégration de l'outbox d'indexation : traitement après validation, reprise des réservations
+ * expirées, renouvellement des réservations en cours, nouvelles tentatives et regroupement des demandes répétées.
+ * Les demandes sont traitées par les workers de l'outbox : les données sont validées (pas de rollback).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IndexOutboxServiceTest extends AbstractPostgresTest {
+
+    private static final Long CANDIDAT_ID = 42L;
+
+    @Autowired
+    private IndexOutboxRepository indexOutboxRepository;
+
+    @Autowired
+    private OffreEmploiRepository offreEmploiRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private TransactionTemplate transactionTemplate;
+    private MatchingEngineService matchingEngineService;
+    private VectorIndexService vectorIndexService;
+    private IndexOutboxService outbox;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        matchingEngineService = mock(MatchingEngineService.class);
+        vectorIndexService = mock(VectorIndexService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (outbox != null) {
+            outbox.shutdown();
+        }
+        indexOutboxRepository.deleteAll();
+    }
+
+    @Test
+    void requestIsProcessedAfterCommit() {
+        outbox = newOutbox(1, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(1)).indexCv(CANDIDAT_ID);
+        verify(vectorIndexService, atLeastOnce()).createDeferredIndexes();
+    }
+
+    @Test
+    void rolledBackRequestIsNeverProcessed() {
+        outbox = newOutbox(1, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            outbox.enqueueCv(CANDIDAT_ID);
+            status.setRollbackOnly();
+        });
+
+        assertThat(indexOutboxRepository.count()).isZero();
+        verify(matchingEngineService, never()).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void failedRequestIsRetriedWithBackoff() {
+        doThrow(new IllegalStateException("embedding indisponible"))
+            .doThrow(new IllegalStateException("embedding indisponible"))
+            .doNothing()
+            .when(matchingEngineService).indexCv(CANDIDAT_ID);
+        outbox = newOutbox(1, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(3)).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void requestIsAbandonedAfterMaxAttempts() {
+        doThrow(new IllegalStateException("embedding indisponible")).when(matchingEngineService).indexCv(CANDIDAT_ID);
+        outbox = newOutbox(1, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> indexOutboxRepository.countByStatut(StatutOutbox.ECHEC) == 1);
+        IndexOutboxEvent event = indexOutboxRepository.findAll().get(0);
+        assertThat(event.getTentatives()).isEqualTo(3);
+        assertThat(event.getMessageErreur()).contains("embedding indisponible");
+        verify(matchingEngineService, times(3)).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void interruptedRequestIsResumedOnceItsLeaseExpires() {
+        // Left EN_COURS by a crash during its processing, long ago
+        indexOutboxRepository.save(IndexOutboxEvent.builder()
+            .typeEntite(TypeEntite.CV)
+            .entiteId(CANDIDAT_ID)
+            .statut(StatutOutbox.EN_COURS)
+            .prochaineTentative(LocalDateTime.now())
+            .dateReservation(LocalDateTime.now().minusHours(1))
+            .build());
+        doNothing().when(matchingEngineService).indexCv(CANDIDAT_ID);
+        outbox = newOutbox(1, 0);
+
+        outbox.start();
+
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(1)).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void requestInProgressOnAnotherInstanceIsNotTakenOver() throws Exception {
+        // Reserved just now by a live instance, with a newer request pending behind it
+        indexOutboxRepository.save(IndexOutboxEvent.builder()
+            .typeEntite(TypeEntite.CV)
+            .entiteId(CANDIDAT_ID)
+            .statut(StatutOutbox.EN_COURS)
+            .prochaineTentative(LocalDateTime.now())
+            .dateReservation(LocalDateTime.now())
+            .build());
+        outbox = newOutbox(1, 0);
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        outbox.start();
+        Thread.sleep(500);
+
+        assertThat(indexOutboxRepository.countByStatut(StatutOutbox.EN_COURS)).isEqualTo(1);
+        assertThat(indexOutboxRepository.countByStatut(StatutOutbox.EN_ATTENTE)).isEqualTo(1);
+        verify(matchingEngineService, never()).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void slowIndexationKeepsItsReservation() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            // Three times the lease
+            pause(1500);
+            running.decrementAndGet();
+            return null;
+        }).when(matchingEngineService).indexCv(CANDIDAT_ID);
+        // Two free workers: only an expired reservation could start the request a second time
+        outbox = newOutbox(2, 0, 500);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        awaitEmptyOutbox();
+        pause(300);
+        verify(matchingEngineService, times(1)).indexCv(CANDIDAT_ID);
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    void processedRequestPutBackInTheOutboxIsNotDeleted() {
+        IndexOutboxEvent remise = indexOutboxRepository.save(IndexOutboxEvent.builder()
+            .typeEntite(TypeEntite.CV)
+            .entiteId(CANDIDAT_ID)
+            .statut(StatutOutbox.EN_ATTENTE)
+            .prochaineTentative(LocalDateTime.now().plusHours(1))
+            .build());
+
+        Integer supprimees = transactionTemplate.execute(status -> indexOutboxRepository.supprimerTraitee(remise.getId()));
+
+        assertThat(supprimees).isZero();
+        assertThat(indexOutboxRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedRequestsAreCoalescedIntoOneIndexation() {
+        outbox = newOutbox(1, 500);
+        outbox.start();
+
+        for (int i = 0; i < 5; i++) {
+            transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+        }
+
+        // One pending request per entity, processed once at the end of the debounce window
+        assertThat(indexOutboxRepository.countByStatut(StatutOutbox.EN_ATTENTE)).isEqualTo(1);
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(1)).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void requestArrivingDuringAnIndexationWaitsForIt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return null;
+        }).when(matchingEngineService).indexCv(CANDIDAT_ID);
+        // Two free workers: only the in-flight rule keeps the second request waiting
+        outbox = newOutbox(2, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+        Thread.sleep(300);
+        assertThat(indexOutboxRepository.countByStatut(StatutOutbox.EN_ATTENTE)).isEqualTo(1);
+
+        release.countDown();
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(2)).indexCv(CANDIDAT_ID);
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedRequestIsSupersededByAPendingOne() {
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                // The entity changes while it is being indexed, then this indexation fails
+                transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+                throw new IllegalStateException("embedding indisponible");
+            }
+            return null;
+        }).when(matchingEngineService).indexCv(CANDIDAT_ID);
+        outbox = newOutbox(1, 0);
+        outbox.start();
+
+        transactionTemplate.executeWithoutResult(status -> outbox.enqueueCv(CANDIDAT_ID));
+
+        // No retry of the failed request: the pending one indexes the latest version
+        awaitEmptyOutbox();
+        verify(matchingEngineService, times(2)).indexCv(CANDIDAT_ID);
+    }
+
+    @Test
+    void retryRacingWithANewRequestIsSuperseded() throws Exception {
+        // Schema only (unique pending request index): no worker involved
+        outbox = newOutbox(1, 0);
+        IndexOutboxEvent enCours = indexOutboxRepository.save(IndexOutboxEvent.builder()
+            .typeEntite(TypeEntite.CV)
+            .entiteId(CANDIDAT_ID)
+            .statut(StatutOutbox.EN_COURS)
+            .prochaineTentative(LocalDateTime.now())
+            .build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            LocalDateTime maintenant = LocalDateTime.now();
+            Future<Integer> retry = transactionTemplate.execute(status -> {
+                indexOutboxRepository.enregistrerOuRegrouper(TypeEntite.CV.name(), CANDIDAT_ID, maintenant, maintenant, 0);
+                // The retry runs while the new request is not committed yet: it waits for it on the unique index
+                Future<Integer> pending = executor.submit(() -> transactionTemplate.execute(retryStatus ->
+                    indexOutboxRepository.replanifierOuRemplacer(enCours.getId(), 1, maintenant, "embedding indisponible")));
+                pause(300);
+                return pending;
+            });
+
+            assertThat(retry.get(10, TimeUnit.SECONDS)).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(indexOutboxRepository.findAll()).singleElement().satisfies(event -> {
+            assertThat(event.getStatut()).isEqualTo(StatutOutbox.EN_ATTENTE);
+            assertThat(event.getTentatives()).isZero();
+        });
+    }
+
+    private IndexOutboxService newOutbox(int workers, long debounceMs) {
+        return newOutbox(workers, debounceMs, 60000);
+    }
+
+    private IndexOutboxService newOutbox(int workers, long debounceMs, long leaseTimeoutMs) {
+        // 3 attempts, 50 ms backoff doubled up to 200 ms
+        return new IndexOutboxService(indexOutboxRepository, offreEmploiRepository, matchingEngineService,
+            vectorIndexService, transactionTemplate, dataSource, workers, 100, 3, 50, 200, 5000,
+            debounceMs, Math.max(debounceMs, 5000), leaseTimeoutMs);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitEmptyOutbox() {
+        await().atMost(Duration.ofSeconds(10)).until(() -> indexOutboxRepository.count() == 0);
+    }
+}
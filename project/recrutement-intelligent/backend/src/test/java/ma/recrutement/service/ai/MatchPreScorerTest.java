@@ -0,0 +1,72 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.Competence;
+import ma.recrutement.entity.OffreEmploi;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests du pré-scoring local des compétences.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class MatchPreScorerTest {
+
+    private final MatchPreScorer preScorer = new MatchPreScorer();
+
+    @Test
+    void shortDeclaredSkillDoesNotMatchInsideLongerSkills() {
+        OffreEmploi offre = offre("Docker, React, Django");
+
+        assertThat(preScorer.calculateSkillScore(offre, candidat(null, "C", "R", "Go"))).isZero();
+    }
+
+    @Test
+    void shortRequiredSkillDoesNotMatchInsideCvWords() {
+        OffreEmploi offre = offre("Go, Scala");
+
+        assertThat(preScorer.calculateSkillScore(offre, candidat("Expérience Google, Django et Docker"))).isZero();
+    }
+
+    @Test
+    void wholeWordsAndMultiWordSkillsStillMatch() {
+        OffreEmploi offre = offre("Java, Spring Boot, C++");
+
+        // Declared "Spring" is a word of "spring boot", "java ee" contains the word "java"
+        assertThat(preScorer.calculateSkillScore(offre, candidat(null, "Java EE", "Spring", "C++"))).isEqualTo(100);
+        // Found in the CV text only: 0.75 per skill
+        assertThat(preScorer.calculateSkillScore(offre, candidat("Développeur Java / Spring Boot, C++")))
+            .isEqualTo(75);
+    }
+
+    @Test
+    void containsTermRespectsWordBoundaries() {
+        assertThat(MatchPreScorer.containsTerm("docker", "c")).isFalse();
+        assertThat(MatchPreScorer.containsTerm("c++", "c")).isFalse();
+        assertThat(MatchPreScorer.containsTerm("c#", "c")).isFalse();
+        assertThat(MatchPreScorer.containsTerm("langage c, python", "c")).isTrue();
+        assertThat(MatchPreScorer.containsTerm("node.js", "node")).isTrue();
+        assertThat(MatchPreScorer.containsTerm("go go", "go")).isTrue();
+        assertThat(MatchPreScorer.containsTerm("django", "go")).isFalse();
+    }
+
+    private static OffreEmploi offre(String competences) {
+        return OffreEmploi.builder().titre("Développeur").competencesRequises(competences).build();
+    }
+
+    private static Candidat candidat(String cvText, String... competences) {
+        Candidat candidat = Candidat.builder().cvText(cvText).build();
+        List<Competence> declarees = new ArrayList<>();
+        for (String nom : competences) {
+            declarees.add(Competence.builder().nom(nom).candidat(candidat).build());
+        }
+        candidat.setCompetences(declarees);
+        return candidat;
+    }
+}
@@ -0,0 +1,231 @@
+package ma.recrutement.service.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ma.recrutement.dto.MatchingResultDTO;
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.MatchResult;
+import ma.recrutement.entity.OffreEmploi;
+import ma.recrutement.service.ai.MatchingEngineService.MatchContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests de l'analyse IA groupée : prompt, lecture de la réponse, repli sur des analyses individuelles
+ * et notification unique de chaque résultat.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class MatchingBatchAnalysisTest {
+
+    private static final String BATCH_PROMPT_START = "You are an expert HR analyst. Analyze the match between a job offer and each of";
+
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final MatchResultCacheService matchResultCacheService = mock(MatchResultCacheService.class);
+    // Prompts sent to the model, in call order
+    private final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+    private AiScoringExecutor aiScoringExecutor;
+    private MatchingEngineService engine;
+    private OffreEmploi offre;
+
+    @BeforeEach
+    void setUp() {
+        aiScoringExecutor = new AiScoringExecutor(true, 4, 10_000);
+        engine = new MatchingEngineService(null, chatClient, null, null, new ObjectMapper(), aiScoringExecutor,
+            matchResultCacheService, null, null, null, null, null);
+        ReflectionTestUtils.setField(engine, "batchSize", 5);
+        ReflectionTestUtils.setField(engine, "batchMaxCvChars", 100);
+        offre = OffreEmploi.builder().id(10L).titre("Développeur Java").competencesRequises("Java, Spring").build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiScoringExecutor.shutdown();
+    }
+
+    @Test
+    void batchPromptSendsTheOfferOnceAndTruncatesLongCvs() {
+        String longCv = "Développeur Java Spring. ".repeat(20);
+
+        String prompt = engine.buildBatchAnalysisPrompt(offre, List.of(candidat(1L, "CV court"), candidat(2L, longCv)));
+
+        assertThat(prompt.split("JOB OFFER:", -1)).hasSize(2);
+        assertThat(prompt).contains("CANDIDATE 1:", "- CV Text: CV court", "CANDIDATE 2:", "JSON array");
+        assertThat(prompt).doesNotContain(longCv.strip());
+        assertThat(prompt).contains("- CV Text: " + longCv.substring(0, 97) + "...");
+    }
+
+    @Test
+    void batchAnswerArrayIsExtractedFromMarkdownAndSurroundingText() {
+        Map<Long, Map<String, Object>> analyses = engine.parseBatchAIResponse("""
+            ```json
+            Voici l'analyse :
+            [
+              {"candidatId": 1, "skillScore": 80, "experienceScore": 70, "educationScore": 60},
+              {"candidatId": "2", "skillScore": 40}
+            ]
+            Bonne journée
+            ```""");
+
+        assertThat(analyses).containsOnlyKeys(1L, 2L);
+        assertThat(analyses.get(1L)).containsEntry("skillScore", 80).containsEntry("experienceScore", 70);
+        assertThat(analyses.get(2L)).containsEntry("skillScore", 40);
+    }
+
+    @Test
+    void garbledOrIncompleteEntriesAreSkipped() {
+        Map<Long, Map<String, Object>> analyses = engine.parseBatchAIResponse("""
+            [
+              {"candidatId": 1, "skillScore": 80},
+              {"skillScore": 70},
+              {"candidatId": null, "skillScore": 70},
+              {"candidatId": "abc", "skillScore": 70},
+              {"candidatId": 4, "recommendation": "sans scores"},
+              "candidat 5 : 90",
+              [6, 90]
+            ]""");
+
+        assertThat(analyses).containsOnlyKeys(1L);
+    }
+
+    @Test
+    void answerWithoutReadableArrayYieldsNoAnalysis() {
+        assertThat(engine.parseBatchAIResponse("Je ne peux pas analyser ces profils.")).isEmpty();
+        assertThat(engine.parseBatchAIResponse("[{\"candidatId\": 1, \"skillScore\": 80")).isEmpty();
+        assertThat(engine.parseBatchAIResponse("] [")).isEmpty();
+        assertThat(engine.parseBatchAIResponse("[{\"candidatId\": 1, \"skillScore\": 80},]")).isEmpty();
+    }
+
+    @Test
+    void candidateMissingFromTheBatchAnswerIsAnalyzedSingly() {
+        answer(prompt -> prompt.startsWith(BATCH_PROMPT_START)
+            ? "[" + analysis(1L, 80) + ", " + analysis(2L, 50) + "]"
+            : analysis(3L, 90));
+        List<MatchContext> contexts = List.of(context(1L, "CV 1"), context(2L, "CV 2"), context(3L, "CV 3"));
+
+        List<MatchingResultDTO> results = engine.analyzeAll(contexts, MatchingListener.NONE);
+
+        // Results keep the order of the contexts, whichever call produced them
+        assertThat(results).extracting(MatchingResultDTO::getCandidatId).containsExactly(1L, 2L, 3L);
+        assertThat(results).extracting(MatchingResultDTO::getScoreCompetences).containsExactly(80, 50, 90);
+        assertThat(prompts).hasSize(2);
+        assertThat(prompts.get(0)).startsWith(BATCH_PROMPT_START).contains("CANDIDATE 3:");
+        assertThat(prompts.get(1)).isEqualTo("prompt 3");
+    }
+
+    @Test
+    void unreadableBatchAnswerFallsBackToOneCallPerCandidate() {
+        answer(prompt -> prompt.startsWith(BATCH_PROMPT_START)
+            ? "Désolé, je ne peux pas répondre."
+            : analysis(Long.parseLong(prompt.substring("prompt ".length())), 70));
+        List<MatchContext> contexts = List.of(context(1L, "CV 1"), context(2L, "CV 2"), context(3L, "CV 3"));
+
+        List<MatchingResultDTO> results = engine.analyzeAll(contexts, MatchingListener.NONE);
+
+        assertThat(results).extracting(MatchingResultDTO::getCandidatId).containsExactly(1L, 2L, 3L);
+        assertThat(results).extracting(MatchingResultDTO::getScoreCompetences).containsOnly(70);
+        assertThat(prompts.subList(1, prompts.size())).containsExactlyInAnyOrder("prompt 1", "prompt 2", "prompt 3");
+        // Every single analysis is on the full inputs: all are cached
+        verify(matchResultCacheService, times(3)).save(any(MatchResult.class));
+    }
+
+    @Test
+    void batchAnalysisOfATruncatedCvIsNotCached() {
+        answer(prompt -> "[" + analysis(1L, 80) + ", " + analysis(2L, 60) + "]");
+        List<MatchContext> contexts = List.of(context(1L, "CV court"), context(2L, "Expérience Java. ".repeat(20)));
+
+        List<MatchingResultDTO> results = engine.analyzeAll(contexts, MatchingListener.NONE);
+
+        assertThat(results).extracting(MatchingResultDTO::getScoreCompetences).containsExactly(80, 60);
+        ArgumentCaptor<MatchResult> saved = ArgumentCaptor.forClass(MatchResult.class);
+        verify(matchResultCacheService).save(saved.capture());
+        assertThat(saved.getValue().getCandidatId()).isEqualTo(1L);
+    }
+
+    @Test
+    void lateAnswerAfterTheFallbackIsNotNotifiedTwice() throws InterruptedException {
+        aiScoringExecutor.shutdown();
+        aiScoringExecutor = new AiScoringExecutor(true, 4, 300);
+        engine = new MatchingEngineService(null, chatClient, null, null, new ObjectMapper(), aiScoringExecutor,
+            matchResultCacheService, null, null, null, null, null);
+        ReflectionTestUtils.setField(engine, "batchSize", 5);
+        ReflectionTestUtils.setField(engine, "batchMaxCvChars", 100);
+        // The model ignores the cancellation and answers after the deadline
+        answer(prompt -> {
+            long end = System.nanoTime() + 600_000_000L;
+            while (System.nanoTime() < end) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                    // keep answering late
+                }
+            }
+            return "[" + analysis(1L, 80) + ", " + analysis(2L, 60) + "]";
+        });
+        List<MatchingResultDTO> notified = Collections.synchronizedList(new ArrayList<>());
+        MatchingListener listener = new MatchingListener() {
+            @Override
+            public void onResult(MatchingResultDTO result) {
+                notified.add(result);
+            }
+        };
+
+        List<MatchingResultDTO> results = engine.analyzeAll(List.of(context(1L, "CV 1"), context(2L, "CV 2")), listener);
+        Thread.sleep(800);
+
+        assertThat(notified).extracting(MatchingResultDTO::getCandidatId).containsExactlyInAnyOrder(1L, 2L);
+        // The results returned are the ones notified
+        assertThat(notified).containsExactlyInAnyOrderElementsOf(results);
+    }
+
+    /**
+     * Répond à chaque prompt envoyé au modèle et l'enregistre.
+     */
+    private void answer(Function<String, String> responses) {
+        when(chatClient.prompt()).thenAnswer(invocation -> {
+            ChatClient.ChatClientRequestSpec request = mock(ChatClient.ChatClientRequestSpec.class);
+            when(request.user(anyString())).thenAnswer(user -> {
+                String prompt = user.getArgument(0);
+                prompts.add(prompt);
+                ChatClient.CallResponseSpec response = mock(ChatClient.CallResponseSpec.class);
+                when(response.content()).thenReturn(responses.apply(prompt));
+                ChatClient.ChatClientRequestSpec call = mock(ChatClient.ChatClientRequestSpec.class);
+                when(call.call()).thenReturn(response);
+                return call;
+            });
+            return request;
+        });
+    }
+
+    private static String analysis(Long candidatId, int skillScore) {
+        return "{\"candidatId\": " + candidatId + ", \"skillScore\": " + skillScore
+            + ", \"experienceScore\": 50, \"educationScore\": 50, \"recommendation\": \"Profil cohérent\"}";
+    }
+
+    private MatchContext context(Long candidatId, String cvText) {
+        return new MatchContext(offre, candidat(candidatId, cvText), "Entreprise", "prompt " + candidatId,
+            "empreinte-" + candidatId, 100, 50);
+    }
+
+    private static Candidat candidat(Long id, String cvText) {
+        return Candidat.builder().id(id).nom("Candidat").prenom("C" + id).cvText(cvText).build();
+    }
+}
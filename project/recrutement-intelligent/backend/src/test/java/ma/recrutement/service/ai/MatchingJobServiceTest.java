@@ -0,0 +1,66 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.entity.MatchingJob;
+import ma.recrutement.repository.MatchingJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests de l'accès aux jobs de matching : seul leur créateur ou un administrateur les consulte.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class MatchingJobServiceTest {
+
+    private final MatchingJobRepository matchingJobRepository = mock(MatchingJobRepository.class);
+    private MatchingJobService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new MatchingJobService(matchingJobRepository, null, null, null, 1, 300_000);
+        MatchingJob job = MatchingJob.builder().id(7L).offreId(1L).limite(10).creePar("recruteur@test.ma").build();
+        when(matchingJobRepository.findById(7L)).thenReturn(Optional.of(job));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        service.shutdown();
+    }
+
+    @Test
+    void jobIsReadByItsCreatorAndByAnAdministrator() {
+        authenticate("recruteur@test.ma", "ROLE_RECRUTEUR");
+        assertThat(service.getJob(7L).getId()).isEqualTo(7L);
+
+        authenticate("admin@test.ma", "ROLE_ADMINISTRATEUR");
+        assertThat(service.getJob(7L).getId()).isEqualTo(7L);
+    }
+
+    @Test
+    void otherRecruiterCannotReadTheJobOrItsResults() {
+        authenticate("concurrent@test.ma", "ROLE_RECRUTEUR");
+
+        assertThatThrownBy(() -> service.getJob(7L)).isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> service.getResultats(7L, 0, 10)).isInstanceOf(AccessDeniedException.class);
+    }
+
+    private static void authenticate(String email, String role) {
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken(email, null, List.of(new SimpleGrantedAuthority(role))));
+    }
+}
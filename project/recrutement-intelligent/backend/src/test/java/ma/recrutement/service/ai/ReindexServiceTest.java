@@ -0,0 +1,180 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.entity.ReindexRun;
+import ma.recrutement.entity.ReindexRun.ModeReindex;
+import ma.recrutement.entity.ReindexRun.StatutReindex;
+import ma.recrutement.repository.CandidatRepository;
+import ma.recrutement.repository.OffreEmploiRepository;
+import ma.recrutement.repository.ReindexRunRepository;
+import ma.recrutement.support.AbstractPostgresTest;
+import ma.recrutement.support.TestData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests d'intégration de la ré-indexation en masse : points de contrôle et reprise.
+ * Les ré-indexations s'exécutent sur leurs propres threads : les données sont validées (pas de rollback).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReindexServiceTest extends AbstractPostgresTest {
+
+    @Autowired
+    private ReindexRunRepository reindexRunRepository;
+
+    @Autowired
+    private CandidatRepository candidatRepository;
+
+    @Autowired
+    private OffreEmploiRepository offreEmploiRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MatchingEngineService matchingEngineService;
+    private VectorIndexService vectorIndexService;
+    private ReindexService reindexService;
+    private List<Long> candidatIds;
+    // Pages passed to indexCvs, in call order
+    private final List<List<Long>> pages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        candidatIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            candidatIds.add(candidatRepository.save(TestData.candidat(0, 0)).getId());
+        }
+        matchingEngineService = mock(MatchingEngineService.class);
+        vectorIndexService = mock(VectorIndexService.class);
+        // One worker, two candidates per page: one page per checkpoint
+        reindexService = new ReindexService(reindexRunRepository, candidatRepository, offreEmploiRepository,
+            matchingEngineService, vectorIndexService, new TransactionTemplate(transactionManager), 2, 1, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reindexService.shutdown();
+        reindexRunRepository.deleteAll();
+        candidatRepository.deleteAll();
+    }
+
+    @Test
+    void completeRunIndexesEveryPageAndRecordsTheLastId() {
+        recordPages(null);
+
+        Long runId = reindexService.demarrer(ModeReindex.COMPLET).getId();
+
+        ReindexRun run = awaitStatut(runId, StatutReindex.TERMINE);
+        assertThat(pages).containsExactly(candidatIds.subList(0, 2), candidatIds.subList(2, 4), candidatIds.subList(4, 5));
+        assertThat(run.getDernierCandidatId()).isEqualTo(candidatIds.get(4));
+        assertThat(run.getCandidatsTraites()).isEqualTo(5);
+        verify(vectorIndexService).createDeferredIndexes();
+    }
+
+    @Test
+    void failedRunResumesAfterItsLastCheckpoint() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        recordPages(fail);
+
+        Long runId = reindexService.demarrer(ModeReindex.COMPLET).getId();
+
+        ReindexRun failed = awaitStatut(runId, StatutReindex.ECHEC);
+        assertThat(failed.getDernierCandidatId()).isEqualTo(candidatIds.get(1));
+        assertThat(failed.getCandidatsTraites()).isEqualTo(2);
+        assertThat(failed.getMessageErreur()).contains("embedding indisponible");
+
+        fail.set(false);
+        pages.clear();
+        reindexService.reprendre(runId);
+
+        ReindexRun resumed = awaitStatut(runId, StatutReindex.TERMINE);
+        // The committed first page is not indexed again
+        assertThat(pages).containsExactly(candidatIds.subList(2, 4), candidatIds.subList(4, 5));
+        assertThat(resumed.getCandidatsTraites()).isEqualTo(5);
+    }
+
+    @Test
+    void interruptedRunIsResumedFromItsCheckpointOnceItsLeaseExpires() {
+        recordPages(null);
+        Long runId = reindexRunRepository.save(ReindexRun.builder()
+            .mode(ModeReindex.COMPLET)
+            .statut(StatutReindex.EN_COURS)
+            .totalCandidats(5L)
+            .candidatsTraites(3L)
+            .dernierCandidatId(candidatIds.get(2))
+            .dateHeartbeat(LocalDateTime.now().minusHours(1))
+            .build()).getId();
+
+        reindexService.resumeRuns();
+
+        ReindexRun run = awaitStatut(runId, StatutReindex.TERMINE);
+        assertThat(pages).containsExactly(candidatIds.subList(3, 5));
+        assertThat(run.getCandidatsTraites()).isEqualTo(5);
+        verify(matchingEngineService, never()).indexOffres(anyCollection());
+    }
+
+    @Test
+    void runInProgressOnAnotherInstanceIsNotTakenOver() {
+        recordPages(null);
+        Long runId = reindexRunRepository.save(ReindexRun.builder()
+            .mode(ModeReindex.COMPLET)
+            .statut(StatutReindex.EN_COURS)
+            .totalCandidats(5L)
+            .dateHeartbeat(LocalDateTime.now())
+            .build()).getId();
+
+        reindexService.resumeRuns();
+
+        assertThat(reindexRunRepository.findById(runId).orElseThrow().getStatut()).isEqualTo(StatutReindex.EN_COURS);
+        verify(matchingEngineService, never()).indexCvs(anyCollection());
+    }
+
+    /**
+     * Enregistre les pages indexées ; tant que {@code fail} est vrai, la deuxième page échoue.
+     */
+    private void recordPages(AtomicBoolean fail) {
+        when(matchingEngineService.indexCvs(anyCollection())).thenAnswer(invocation -> {
+            List<Long> page = List.copyOf((Collection<Long>) invocation.getArgument(0));
+            if (fail != null && fail.get() && page.contains(candidatIds.get(2))) {
+                throw new IllegalStateException("embedding indisponible");
+            }
+            synchronized (pages) {
+                pages.add(page);
+            }
+            return page.size();
+        });
+    }
+
+    private ReindexRun awaitStatut(Long runId, StatutReindex statut) {
+        await().atMost(Duration.ofSeconds(10))
+            .until(() -> reindexRunRepository.findById(runId).orElseThrow().getStatut() == statut);
+        return reindexRunRepository.findById(runId).orElseThrow();
+    }
+}
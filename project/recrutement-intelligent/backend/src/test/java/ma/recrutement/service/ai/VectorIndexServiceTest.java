@@ -0,0 +1,71 @@
+package ma.recrutement.service.ai;
+
+import ma.recrutement.support.AbstractPostgresTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests d'intégration de la gestion des index ANN.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class VectorIndexServiceTest extends AbstractPostgresTest {
+
+    private static final String TABLE = "ivfflat_vectors";
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private VectorIndexService indexService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id SERIAL, embedding vector(3))");
+        indexService = new VectorIndexService(dataSource, "IVFFLAT", 16, 64, 40, 0, 0, "NONE", 200, 3, 0);
+    }
+
+    @Test
+    void deferredIvfflatIndexIsCreatedOnceTheTableIsPopulated() {
+        insertRows(10);
+        indexService.ensureIndex(jdbcTemplate, TABLE);
+        assertThat(indexExists()).isFalse();
+
+        // Still too small: nothing is built
+        indexService.createDeferredIndexes();
+        assertThat(indexExists()).isFalse();
+
+        insertRows(990);
+        indexService.createDeferredIndexes();
+        assertThat(indexExists()).isTrue();
+    }
+
+    @Test
+    void noDeferredIndexMeansNoWork() {
+        insertRows(1000);
+        indexService.ensureIndex(jdbcTemplate, TABLE);
+        assertThat(indexExists()).isTrue();
+
+        jdbcTemplate.execute("DROP INDEX " + TABLE + "_embedding_idx");
+        indexService.createDeferredIndexes();
+        assertThat(indexExists()).isFalse();
+    }
+
+    private void insertRows(int count) {
+        jdbcTemplate.update("INSERT INTO " + TABLE + " (embedding) "
+            + "SELECT ARRAY[random(), random(), random()]::vector FROM generate_series(1, ?)", count);
+    }
+
+    private boolean indexExists() {
+        Boolean exists = jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM pg_class WHERE relname = ?)", Boolean.class, TABLE + "_embedding_idx");
+        return Boolean.TRUE.equals(exists);
+    }
+}
@@ -0,0 +1,80 @@
+package ma.recrutement.support;
+
+import ma.recrutement.entity.Candidat;
+import ma.recrutement.entity.Competence;
+import ma.recrutement.entity.Entreprise;
+import ma.recrutement.entity.Experience;
+import ma.recrutement.entity.OffreEmploi;
+import ma.recrutement.entity.Recruteur;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fabrique d'entités valides pour les tests (non persistées).
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+public final class TestData {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private TestData() {
+    }
+
+    public static Recruteur recruteur() {
+        long n = SEQUENCE.incrementAndGet();
+        return Recruteur.builder()
+            .email("recruteur" + n + "@test.ma")
+            .password("secret")
+            .nom("Recruteur")
+            .prenom("R" + n)
+            .build();
+    }
+
+    public static Entreprise entreprise(Recruteur recruteur) {
+        return Entreprise.builder()
+            .nom("Entreprise " + SEQUENCE.incrementAndGet())
+            .recruteur(recruteur)
+            .build();
+    }
+
+    public static OffreEmploi offre(Entreprise entreprise, String titre, String description, String competences) {
+        return OffreEmploi.builder()
+            .titre(titre)
+            .description(description)
+            .competencesRequises(competences)
+            .typeContrat(OffreEmploi.TypeContrat.CDI)
+            .statut(OffreEmploi.StatutOffre.PUBLIEE)
+            .entreprise(entreprise)
+            .recruteur(entreprise.getRecruteur())
+            .build();
+    }
+
+    /**
+     * Candidat avec un CV, des compétences et des expériences.
+     */
+    public static Candidat candidat(int competences, int experiences) {
+        long n = SEQUENCE.incrementAndGet();
+        Candidat candidat = Candidat.builder()
+            .email("candidat" + n + "@test.ma")
+            .password("secret")
+            .nom("Candidat")
+            .prenom("C" + n)
+            .cvText("Développeur Java Spring, " + n + " ans de projets")
+            .build();
+        for (int i = 0; i < competences; i++) {
+            candidat.ajouterCompetence(Competence.builder().nom("Compétence " + i).build());
+        }
+        for (int i = 0; i < experiences; i++) {
+            candidat.ajouterExperience(Experience.builder()
+                .titre("Poste " + i)
+                .entreprise("Société " + i)
+                .dateDebut(LocalDate.of(2015 + i, 1, 1))
+                .dateFin(LocalDate.of(2016 + i, 1, 1))
+                .build());
+        }
+        return candidat;
+    }
+}
@@ -0,0 +1,39 @@
+package ma.recrutement.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests de la mise en forme HTML des extraits surlignés.
+ *
+ * @author Recrutement Team
+ * @version 1.0.0
+ */
+class HighlightUtilTest {
+
+    @Test
+    void delimitersBecomeMarksAndTextIsEscaped() {
+        String headline = "<script>alert('x')</script> & \u0002Java\u0003 \"senior\"";
+
+        assertThat(HighlightUtil.toHtml(headline)).isEqualTo(
+            "&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt; &amp; <mark>Java</mark> &quot;senior&quot;");
+    }
+
+    @Test
+    void markupInsideAHighlightedTermIsEscaped() {
+        assertThat(HighlightUtil.toHtml("\u0002<img src=x onerror=alert(1)>\u0003"))
+            .isEqualTo("<mark>&lt;img src=x onerror=alert(1)&gt;</mark>");
+    }
+
+    @Test
+    void marksStayBalancedWhateverTheDelimiters() {
+        // Stray delimiters typed by the recruiter cannot open nested or unclosed tags
+        assertThat(HighlightUtil.toHtml("\u0003a \u0002b \u0002c")).isEqualTo("a <mark>b c</mark>");
+    }
+
+    @Test
+    void nullStaysNull() {
+        assertThat(HighlightUtil.toHtml(null)).isNull();
+    }
+}